@@ -0,0 +1,64 @@
+/*!
+ * \brief Holds the blocks of a chunk section, as the Java code sent them
+ *
+ * \author ddubois
+ * \date 18-Oct-16.
+ */
+
+#ifndef RENDERER_CHUNK_SECTION_H
+#define RENDERER_CHUNK_SECTION_H
+
+#include <cstdint>
+#include <cstring>
+#include <vector>
+#include "../mc_interface/mc_objects.h"
+
+namespace nova {
+    /*!
+     * \brief A 16x16x16 section of a chunk, stored as a palette of block states and a packed palette index per block
+     *
+     * This is the same layout the Java code uses, so building one is just two memcpys
+     */
+    struct chunk_section {
+        int bits_per_block = 0;
+        std::vector<int> palette;
+        std::vector<uint64_t> block_indices;
+
+        /*!
+         * \brief The section's quads, laid out as described on mc_chunk_section
+         */
+        std::vector<float> vertices;
+
+        chunk_section() = default;
+
+        explicit chunk_section(const mc_chunk_section &section) : bits_per_block(section.bits_per_block) {
+            palette.resize((size_t) section.palette_size);
+            std::memcpy(palette.data(), section.data, palette.size() * sizeof(int));
+
+            size_t palette_bytes = (palette.size() * sizeof(int) + 7) & ~(size_t) 7;
+            block_indices.resize((section.data_size - palette_bytes) / sizeof(uint64_t));
+            std::memcpy(block_indices.data(), section.data + palette_bytes, block_indices.size() * sizeof(uint64_t));
+
+            if(section.vertex_buffer != nullptr) {
+                vertices.assign(section.vertex_buffer, section.vertex_buffer + section.vertex_buffer_size);
+            }
+        }
+
+        /*!
+         * \brief Gets the block state ID of the block at the given position in the section
+         */
+        int get_block_state(int x, int y, int z) const {
+            if(bits_per_block == 0) {
+                return palette.empty() ? 0 : palette[0];
+            }
+
+            int index = (y * 16 + z) * 16 + x;
+            int blocks_per_word = 64 / bits_per_block;
+            uint64_t word = block_indices[index / blocks_per_word];
+            uint64_t mask = (1ull << bits_per_block) - 1;
+            return palette[(word >> ((index % blocks_per_word) * bits_per_block)) & mask];
+        }
+    };
+}
+
+#endif //RENDERER_CHUNK_SECTION_H
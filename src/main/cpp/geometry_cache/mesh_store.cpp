@@ -6,8 +6,9 @@
 */
 
 #include <algorithm>
+#include <iomanip>
+#include <sstream>
 #include <easylogging++.h>
-#include <regex>
 #include "mesh_store.h"
 #include "builders/gui_geometry_builder.h"
 #include "../../../render/objects/textures/texture_manager.h"
@@ -56,30 +57,55 @@ namespace nova {
         }
     }
 
-    void mesh_store::add_gui_buffers(mc_gui_send_buffer_command* command) {
-
-        std::string texture_name(command->texture_name);
-        texture_name = std::regex_replace(texture_name, std::regex("^textures/"), "");
-        texture_name = std::regex_replace(texture_name, std::regex(".png$"), "");
-        texture_name = "minecraft:" + texture_name;
-        const texture_manager::texture_location tex_location = nova_renderer::instance->get_texture_manager().get_texture_location(texture_name);
+    /*!
+     * \brief Copies vertices from Java, moving the UVs from the original texture into the texture atlas
+     */
+    std::vector<float> copy_gui_vertices(int texture_id, const float *vertices, int num_floats) {
+        const texture_manager::texture_location tex_location = nova_renderer::instance->get_texture_manager().get_texture_location(texture_id);
         glm::vec2 tex_size = tex_location.max - tex_location.min;
 
-        std::vector<float> vertex_buffer(command->vertex_buffer_size);
-        for (int i = 0; i + 4 < command->vertex_buffer_size; i += 5) {
-            vertex_buffer[i] = command->vertex_buffer[i];
-            vertex_buffer[i+1] = command->vertex_buffer[i+1];
-            vertex_buffer[i+2] = command->vertex_buffer[i+2];
-            vertex_buffer[i+3] = command->vertex_buffer[i+3] * tex_size.x + tex_location.min.x;
-            vertex_buffer[i+4] = command->vertex_buffer[i+4] * tex_size.y + tex_location.min.y;
+        std::vector<float> vertex_buffer(num_floats);
+        for (int i = 0; i + 4 < num_floats; i += 5) {
+            vertex_buffer[i] = vertices[i];
+            vertex_buffer[i+1] = vertices[i+1];
+            vertex_buffer[i+2] = vertices[i+2];
+            vertex_buffer[i+3] = vertices[i+3] * tex_size.x + tex_location.min.x;
+            vertex_buffer[i+4] = vertices[i+4] * tex_size.y + tex_location.min.y;
         }
-        std::vector<unsigned short> index_buffer(command->index_buffer_size);
-        for (int i = 0; i < command->index_buffer_size; i++) {
-            index_buffer[i] = (unsigned short)command->index_buffer[i];
+        return vertex_buffer;
+    }
+
+    std::vector<unsigned short> copy_gui_indices(const int *indices, int num_indices) {
+        std::vector<unsigned short> index_buffer(num_indices);
+        for (int i = 0; i < num_indices; i++) {
+            index_buffer[i] = (unsigned short)indices[i];
         }
+        return index_buffer;
+    }
+
+    void mesh_store::add_gui_buffers(mc_gui_send_buffer_command* command) {
+        add_gui_batch(command->texture_id, command->index_buffer, command->index_buffer_size, command->vertex_buffer, command->vertex_buffer_size);
+    }
+
+    void mesh_store::set_gui_buffers(mc_gui_send_buffers_command* command) {
+        remove_gui_render_objects();
+
+        auto batches = reinterpret_cast<mc_gui_batch*>(command->data);
+        auto indices = reinterpret_cast<int*>(command->data + command->index_data_offset);
+        auto vertices = reinterpret_cast<float*>(command->data + command->vertex_data_offset);
+
+        for(int i = 0; i < command->num_batches; i++) {
+            mc_gui_batch& batch = batches[i];
+            add_gui_batch(batch.texture_id, indices + batch.index_offset, batch.index_count, vertices + batch.vertex_offset, batch.vertex_count);
+        }
+    }
+
+    void mesh_store::add_gui_batch(int texture_id, const int *indices, int num_indices, const float *vertices, int num_floats) {
+        std::vector<float> vertex_buffer = copy_gui_vertices(texture_id, vertices, num_floats);
+        std::vector<unsigned short> index_buffer = copy_gui_indices(indices, num_indices);
 
         // debug
-        //print_buffers(texture_name, vertex_buffer, index_buffer);
+        //print_buffers(std::to_string(texture_id), vertex_buffer, index_buffer);
 
         mesh_definition cur_screen_buffer;
         cur_screen_buffer.vertex_data = vertex_buffer;
@@ -93,6 +119,23 @@ namespace nova {
         gui->is_solid = true;
 
         sort_render_object(gui);
+        gui_objects_by_texture[texture_id] = gui;
+    }
+
+    void mesh_store::update_gui_buffer_range(mc_gui_update_buffer_range_command* command) {
+        auto gui_object = gui_objects_by_texture.find(command->texture_id);
+        if(gui_object == gui_objects_by_texture.end()) {
+            LOG(WARNING) << "No GUI geometry for texture " << command->texture_id << ", can't update part of it";
+            return;
+        }
+
+        gl_mesh *mesh = gui_object->second->geometry;
+
+        std::vector<float> vertex_buffer = copy_gui_vertices(command->texture_id, command->vertex_buffer + command->vertex_offset, command->vertex_count);
+        mesh->update_data((unsigned int) command->vertex_offset, vertex_buffer);
+
+        std::vector<unsigned short> index_buffer = copy_gui_indices(command->index_buffer + command->index_offset, command->index_count);
+        mesh->update_index_array((unsigned int) command->index_offset, index_buffer);
     }
 
     void mesh_store::remove_gui_render_objects(){
@@ -108,6 +151,31 @@ namespace nova {
             }
         }
 
+        gui_objects_by_texture.clear();
+    }
+
+    /*!
+     * \brief Packs a section position into a single key. 26 bits is plenty for x and z, and y only goes up to 15
+     */
+    static int64_t chunk_section_key(int section_x, int section_y, int section_z) {
+        return ((int64_t) (section_x & 0x3FFFFFF) << 38) | ((int64_t) (section_z & 0x3FFFFFF) << 12) | (section_y & 0xFFF);
+    }
+
+    void mesh_store::add_chunk_section(mc_chunk_section *section) {
+        int64_t key = chunk_section_key(section->section_x, section->section_y, section->section_z);
+        chunk_sections[key] = chunk_section(*section);
+    }
+
+    void mesh_store::remove_chunk_section(int section_x, int section_y, int section_z) {
+        chunk_sections.erase(chunk_section_key(section_x, section_y, section_z));
+    }
+
+    const chunk_section* mesh_store::get_chunk_section(int section_x, int section_y, int section_z) {
+        auto section = chunk_sections.find(chunk_section_key(section_x, section_y, section_z));
+        if(section == chunk_sections.end()) {
+            return nullptr;
+        }
+        return &section->second;
     }
 
     void mesh_store::sort_render_object(render_object *object) {
@@ -17,6 +17,7 @@
 #include "../render/objects/shaders/shaderpack.h"
 #include "../mc_interface/mc_gui_objects.h"
 #include "../mc_interface/mc_objects.h"
+#include "chunk_section.h"
 
 namespace nova {
     /*!
@@ -29,6 +30,22 @@ namespace nova {
         void add_gui_geometry(mc_gui_screen& screen);
         void add_gui_buffers(mc_gui_send_buffer_command* command);
 
+        /*!
+         * \brief Removes all the GUI geometry and creates new geometry for each batch in the command
+         *
+         * \param command All the GUI batches of the current screen
+         */
+        void set_gui_buffers(mc_gui_send_buffers_command* command);
+
+        /*!
+         * \brief Overwrites part of the GUI geometry that add_gui_buffers created for the same texture
+         *
+         * Does nothing if there's no GUI geometry for that texture
+         *
+         * \param command The range to overwrite
+         */
+        void update_gui_buffer_range(mc_gui_update_buffer_range_command* command);
+
         /*!
          * \brief Sets the shaderpack reference to the given shaderpack
          *
@@ -53,12 +70,38 @@ namespace nova {
         */
         void remove_gui_render_objects();
 
+        /*!
+         * \brief Stores a copy of the given chunk section, replacing any section already at its position
+         *
+         * \param section The section to store
+         */
+        void add_chunk_section(mc_chunk_section* section);
+
+        /*!
+         * \brief Removes the chunk section at the given position, in sections, if there is one
+         */
+        void remove_chunk_section(int section_x, int section_y, int section_z);
+
+        /*!
+         * \brief Gets the chunk section at the given position, in sections
+         *
+         * \return The section, or nullptr if there isn't one there
+         */
+        const chunk_section* get_chunk_section(int section_x, int section_y, int section_z);
+
     private:
         std::unordered_map<std::string, std::vector<render_object*>> renderables_grouped_by_shader;
 
+        /*!
+         * \brief The GUI render object for each texture, so that ranges of their buffers can be updated
+         */
+        std::unordered_map<int, render_object*> gui_objects_by_texture;
+
         mc_gui_screen cur_gui_screen;
         shaderpack* shaders;
 
+        std::unordered_map<int64_t, chunk_section> chunk_sections;
+
         /*!
          * \brief Puts the provided render object into all the proper lists, so that it can be rendered by the right
          * shader
@@ -67,6 +110,11 @@ namespace nova {
          */
         void sort_render_object(render_object *object);
 
+        /*!
+         * \brief Creates a GUI render object from the given Java-side buffers
+         */
+        void add_gui_batch(int texture_id, const int *indices, int num_indices, const float *vertices, int num_floats);
+
 
         /*!
          * \brief Removes all the render_objects from the lists of render_objects that match the given fitler funciton
@@ -1,24 +1,34 @@
 #include "glad/glad.h"
 #include "InputHandler.h"
 #include "../render/nova_renderer.h"
+#include <algorithm>
+#include <chrono>
 
 namespace nova {
 
+	/*!
+	 * \brief The time to stamp an event with. steady_clock reads the same monotonic clock as Java's System.nanoTime on
+	 * Linux and Windows, so Java can compare the two directly
+	 */
+	static std::int64_t event_time_nanos() {
+		return std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now().time_since_epoch()).count();
+	}
 
 	void key_callback(GLFWwindow *window, int key, int scancode, int action, int mods) {
-		nova_renderer::instance->get_input_handler().queue_key_press_event({key,scancode,action,mods,1});
+		nova_renderer::instance->get_input_handler().queue_key_event({KEY_EVENT_PRESS, key, scancode, action, mods, 0, event_time_nanos()});
 	}
 
 	void key_character_callback(GLFWwindow *window, unsigned int key) {
-		nova_renderer::instance->get_input_handler().queue_key_char_event({  key,1 });
+		nova_renderer::instance->get_input_handler().queue_key_event({KEY_EVENT_CHAR, 0, 0, 0, 0, key, event_time_nanos()});
 	}
 
 	void mouse_button_callback(GLFWwindow *window, int button, int action, int mods) {
-		nova_renderer::instance->get_input_handler().queue_mouse_button_event({ button,action,mods ,1 });
+		nova_renderer::instance->get_input_handler().queue_mouse_event({MOUSE_EVENT_BUTTON, button, action, mods, 0, 0, event_time_nanos()});
 	}
 
 	void mouse_position_callback(GLFWwindow *window, double xpos, double ypos) {
-		nova_renderer::instance->get_input_handler().queue_mouse_position_event({(int)xpos,(int) nova_renderer::instance->get_game_window().get_size().y-(int) ypos,1 });
+		int window_height = (int) nova_renderer::instance->get_game_window().get_size().y;
+		nova_renderer::instance->get_input_handler().queue_mouse_event({MOUSE_EVENT_POSITION, 0, 0, 0, (int) xpos, window_height - (int) ypos, event_time_nanos()});
 	}
 
 
@@ -28,70 +38,33 @@ namespace nova {
 
 	input_handler::~input_handler() {};
 
-	void input_handler::queue_mouse_button_event(struct mouse_button_event e) {
-		std::lock_guard<std::mutex> lock_guard(lock_button);
-		mouse_button_event_queue.push(e);
-	};
-
-	struct mouse_button_event input_handler::dequeue_mouse_button_event() {
-		std::lock_guard<std::mutex> lock_guard(lock_button);
-		if (mouse_button_event_queue.size() != 0) {
-			struct mouse_button_event e = mouse_button_event_queue.front();
-			mouse_button_event_queue.pop();
-			return e;
-		}
-		return { 0,0,0,0 };
-	};
-
-
-	void input_handler::queue_mouse_position_event(struct mouse_position_event e) {
-		std::lock_guard<std::mutex> lock_guard(lock_position);
-		mouse_position_event_queue.push(e);
+	void input_handler::queue_mouse_event(struct mouse_event e) {
+		std::lock_guard<std::mutex> lock_guard(lock_mouse);
+		mouse_event_queue.push_back(e);
 	};
 
-	struct mouse_position_event input_handler::dequeue_mouse_position_event() {
-		std::lock_guard<std::mutex> lock_guard(lock_position);
-		if (mouse_position_event_queue.size() != 0) {
-			struct mouse_position_event e = mouse_position_event_queue.front();
-			mouse_position_event_queue.pop();
-			return e;
-		}
-		return { 0,0,0 };
-	}
-
-	void input_handler::queue_key_press_event(key_press_event e)
-	{
-		std::lock_guard<std::mutex> lock_guard(lock_key_press);
-		key_press_event_queue.push(e);
+	int input_handler::drain_mouse_events(struct mouse_event * events, int max_events) {
+		std::lock_guard<std::mutex> lock_guard(lock_mouse);
+		int num_events = (int) std::min(mouse_event_queue.size(), (std::size_t) std::max(max_events, 0));
+		std::copy(mouse_event_queue.begin(), mouse_event_queue.begin() + num_events, events);
+		mouse_event_queue.erase(mouse_event_queue.begin(), mouse_event_queue.begin() + num_events);
+		return num_events;
 	}
 
-	key_press_event input_handler::dequeue_key_press_event()
-	{
-		std::lock_guard<std::mutex> lock_guard(lock_key_press);
-		if (key_press_event_queue.size() != 0) {
-			struct key_press_event e = key_press_event_queue.front();
-			key_press_event_queue.pop();
-			e.key =(int) keymap[e.key];
-			return e;
+	void input_handler::queue_key_event(struct key_event e) {
+		std::lock_guard<std::mutex> lock_guard(lock_key);
+		if(e.type == KEY_EVENT_PRESS) {
+			e.key = (int) keymap[e.key];
 		}
-		return {0,0,0,0,0};
+		key_event_queue.push_back(e);
 	}
 
-	void input_handler::queue_key_char_event(key_char_event e)
-	{
-		std::lock_guard<std::mutex> lock_guard(lock_key_char);
-		key_char_event_queue.push(e);
-	}
-
-	key_char_event input_handler::dequeue_key_char_event()
-	{
-		std::lock_guard<std::mutex> lock_guard(lock_key_char);
-		if (key_char_event_queue.size() != 0) {
-			struct key_char_event e = key_char_event_queue.front();
-			key_char_event_queue.pop();
-			return e;
-		}
-		return {0,0};
+	int input_handler::drain_key_events(struct key_event * events, int max_events) {
+		std::lock_guard<std::mutex> lock_guard(lock_key);
+		int num_events = (int) std::min(key_event_queue.size(), (std::size_t) std::max(max_events, 0));
+		std::copy(key_event_queue.begin(), key_event_queue.begin() + num_events, events);
+		key_event_queue.erase(key_event_queue.begin(), key_event_queue.begin() + num_events);
+		return num_events;
 	}
 	
 
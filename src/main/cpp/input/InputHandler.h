@@ -4,7 +4,7 @@
 
 
 #include "GLFW/glfw3.h"
-#include <queue>
+#include <deque>
 #include <mutex>
 #include <unordered_map>
 #include "../mc_interface/mc_objects.h"
@@ -161,30 +161,37 @@ namespace nova {
 	public:
 		input_handler();
 		~input_handler();
-		void queue_mouse_button_event(struct mouse_button_event  e);
-		struct mouse_button_event dequeue_mouse_button_event();
-		void queue_mouse_position_event(struct mouse_position_event  e);
-		struct mouse_position_event dequeue_mouse_position_event();
+		void queue_mouse_event(struct mouse_event e);
 
-		void queue_key_press_event(struct key_press_event  e);
-		struct key_press_event dequeue_key_press_event();
-		void queue_key_char_event(struct key_char_event  e);
-		struct key_char_event dequeue_key_char_event();
+		/*!
+		 * \brief Moves the oldest queued mouse events into the given array
+		 *
+		 * \param events Where to put the events
+		 * \param max_events How many events fit in the array. Any events past that stay queued for the next call
+		 * \return How many events were moved
+		 */
+		int drain_mouse_events(struct mouse_event * events, int max_events);
+
+		void queue_key_event(struct key_event e);
+
+		/*!
+		 * \brief Moves the oldest queued keyboard events into the given array
+		 *
+		 * \param events Where to put the events
+		 * \param max_events How many events fit in the array. Any events past that stay queued for the next call
+		 * \return How many events were moved
+		 */
+		int drain_key_events(struct key_event * events, int max_events);
 
 	private:
 		std::unordered_map<int, lwjgl_keycodes> keymap;
-		std::queue<struct mouse_button_event> mouse_button_event_queue;
-		std::queue<struct mouse_position_event> mouse_position_event_queue;
-		std::mutex lock_button;
-		std::mutex lock_position;
+		std::deque<struct mouse_event> mouse_event_queue;
+		std::mutex lock_mouse;
 
-		std::queue<struct key_press_event> key_press_event_queue;
-		std::queue<struct key_char_event> key_char_event_queue;
-		std::mutex lock_key_press;
-		std::mutex lock_key_char;
+		std::deque<struct key_event> key_event_queue;
+		std::mutex lock_key;
 		void create_keymap();
 	};
 
-
 }
 #endif
@@ -10,6 +10,16 @@
 
 #include "mc_gui_objects.h"
 #include <cstdint>
+/*!
+ * \brief The ways the Java code can store an atlas's pixels. Matches BlockCompression.Format on the Java side
+ */
+enum atlas_format {
+    ATLAS_FORMAT_NONE = 0,  //!< Uncompressed, num_components bytes per pixel
+    ATLAS_FORMAT_BC1 = 1,   //!< DXT1, 8 bytes per 4x4 block
+    ATLAS_FORMAT_BC3 = 2,   //!< DXT5, 16 bytes per 4x4 block
+    ATLAS_FORMAT_BC7 = 3,   //!< BPTC, 16 bytes per 4x4 block
+};
+
 /*!
  * \brief Holds the information that comes from MC textures
  */
@@ -17,7 +27,9 @@ struct mc_atlas_texture {
     int width;
     int height;
     int num_components;
-    unsigned char * texture_data;
+    int num_mip_levels;             //!< How many mip levels texture_data holds, including the full size one
+    int format;                     //!< How texture_data is stored, one of the atlas_format values
+    unsigned char * texture_data;   //!< Every mip level, biggest first. Level n is max(1, width >> n) by max(1, height >> n)
 };
 
 /*!
@@ -25,6 +37,7 @@ struct mc_atlas_texture {
  */
 struct mc_texture_atlas_location {
     const char * name;  //!< The resource name of the texture. Should be identical to the string used to acwuire the texture
+    int id;             //!< The ID the Java code's TextureRegistry gave this texture
     float min_u;
     float max_u;
     float min_v;
@@ -32,21 +45,28 @@ struct mc_texture_atlas_location {
 };
 
 /*!
- * \brief Represents a block in Minecraft, along with any attributes it might have
- */
-struct mc_block {
-    bool is_on_fire;
-    int block_id;
-};
-
-/*!
- * \brief Represents a chunk in Minecraft. It's really just a large array of blocks and an ID so I don't have to rebuild
- * the geometry every frame
+ * \brief One 16x16x16 section of a chunk, with its blocks palette-packed into a single buffer
+ *
+ * data holds palette_size ints of block state IDs, then padding up to a multiple of eight bytes, then the palette index
+ * of every block packed into 64-bit words from the lowest bit up. Block (x, y, z) has index (y * 16 + z) * 16 + x.
+ * bits_per_block is 1, 2, 4, 8 or 16 so no index straddles two words, or 0 if the whole section is palette[0]
+ *
+ * vertex_buffer holds the section's greedy-meshed quads, four vertices per quad and no indices. Each vertex is nine
+ * floats: the position relative to the section's corner, texture coordinates in blocks that the shader wraps with
+ * fract(), and the min u, min v, width and height of the texture in the terrain atlas
  */
-struct mc_chunk {
-    long chunk_id;  //!< Unique identifier for the chunk
-    bool is_dirty;  //!< Has the chunk changed since it was last sent to Nova?
-    mc_block blocks[16 * 16 * 16];  //!< All the blocks in the chunk
+struct mc_chunk_section {
+    int section_x;
+    int section_y;
+    int section_z;
+
+    int bits_per_block;
+    int palette_size;
+    int data_size;          //!< How many bytes data holds
+    unsigned char * data;
+
+    int vertex_buffer_size; //!< How many floats vertex_buffer holds
+    float * vertex_buffer;  //!< Null if the section has no mesh
 };
 
 /*!
@@ -63,6 +83,12 @@ struct mc_render_world_params {
     double camera_x;
     double camera_y;
     double camera_z;
+
+    /*!
+     * \brief Which way the camera faces, in degrees, the same way Minecraft's entities store it
+     */
+    double camera_yaw;
+    double camera_pitch;
 };
 
 /*!
@@ -73,13 +99,53 @@ struct mc_render_gui_params {
 };
 
 struct mc_gui_send_buffer_command {
-    const char *texture_name;  //!< The resource name of the texture.
+    int texture_id;  //!< The ID of the texture, as given in mc_texture_atlas_location
 	int index_buffer_size;
 	int vertex_buffer_size;
 	int* index_buffer;
     float* vertex_buffer;
 };
 
+/*!
+ * \brief Where one texture's GUI geometry is inside an mc_gui_send_buffers_command
+ */
+struct mc_gui_batch {
+    int texture_id;     //!< The ID of the texture, as given in mc_texture_atlas_location
+    int index_offset;   //!< In ints from the start of the index data
+    int index_count;
+    int vertex_offset;  //!< In floats from the start of the vertex data
+    int vertex_count;   //!< In floats, not vertices
+};
+
+/*!
+ * \brief All the GUI geometry of a screen, in a single block of memory
+ *
+ * data starts with num_batches mc_gui_batch structs, followed by the indices of all the batches and then by the
+ * vertices of all the batches
+ */
+struct mc_gui_send_buffers_command {
+    int num_batches;
+    int index_data_offset;      //!< In bytes from the start of data
+    int vertex_data_offset;     //!< In bytes from the start of data
+    char* data;
+};
+
+/*!
+ * \brief Overwrites part of the buffers that an earlier mc_gui_send_buffer_command sent for the same texture
+ *
+ * The buffer pointers point to the start of the whole buffers on the Java side, the offsets say where the changed
+ * range starts. The range is copied to the same offsets in the GPU buffers.
+ */
+struct mc_gui_update_buffer_range_command {
+    int texture_id;  //!< The ID of the texture, as given in mc_texture_atlas_location
+    int index_offset;
+    int index_count;
+    int vertex_offset;          //!< In floats, not vertices
+    int vertex_count;           //!< In floats, not vertices
+    int* index_buffer;
+    float* vertex_buffer;
+};
+
 /*!
  * \brief Holds all the settings that are exposed from the Minecraft options menu
  */
@@ -103,17 +169,6 @@ struct mc_settings {
     bool has_blindness;         //!< Some potion effect I think
 };
 
-/*!
- * \brief Tells Nova to add this chunk to its list of potential chunks to render
- */
-struct mc_add_chunk_command {
-    mc_chunk new_chunk;
-
-    float chunk_x;
-    float chunk_y;
-    float chunk_z;
-};
-
 /*!
  * \brief Tells Nova to change to the give GUI screen
  */
@@ -123,32 +178,47 @@ struct mc_set_gui_screen_command {
 
 
 
-struct mouse_button_event {
-	int button;
-	int action;
-	int mods;
-	int filled;
+/*!
+ * \brief What a mouse_event is about. Matches the constants in Mouse on the Java side
+ */
+enum mouse_event_type {
+    MOUSE_EVENT_BUTTON = 0,     //!< A button was pressed or released. button, action and mods are set
+    MOUSE_EVENT_POSITION = 1,   //!< The cursor moved. xpos and ypos are set
 };
 
-
-struct mouse_position_event {
-	int xpos;
-	int ypos;
-	int filled;
+/*!
+ * \brief One mouse event, as drain_mouse_events hands it to Java. Button and position events share one queue so
+ * Java sees them in the order they happened
+ */
+struct mouse_event {
+    int type;       //!< A mouse_event_type
+    int button;
+    int action;
+    int mods;
+    int xpos;
+    int ypos;       //!< From the bottom of the window, like LWJGL
+    std::int64_t nanos;     //!< When GLFW told us about the event, from std::chrono::steady_clock
 };
 
-struct key_press_event {
-	int key;
-	int scancode;
-	int action;
-	int mods;
-	int filled;
-
+/*!
+ * \brief What a key_event is about. Matches the constants in Keyboard on the Java side
+ */
+enum key_event_type {
+    KEY_EVENT_PRESS = 0,        //!< A key was pressed, released or repeated. key, scancode, action and mods are set
+    KEY_EVENT_CHAR = 1,         //!< A character was typed. unicode_char is set
 };
 
-struct key_char_event {
-	std::uint64_t unicode_char;
-	int filled;
-
+/*!
+ * \brief One keyboard event, as drain_key_events hands it to Java. GLFW sends a key's character right after the key
+ * itself, so keeping presses and characters in one queue lets Java pair them back up
+ */
+struct key_event {
+    int type;                   //!< A key_event_type
+    int key;                    //!< Already translated to an LWJGL key code
+    int scancode;
+    int action;
+    int mods;
+    std::uint32_t unicode_char;
+    std::int64_t nanos;         //!< When GLFW told us about the event, from std::chrono::steady_clock
 };
 #endif //RENDERER_MC_OBJECTS_H
@@ -77,11 +77,41 @@ NOVA_API void send_change_gui_screen_command(mc_set_gui_screen_command * set_gui
 
 NOVA_API void send_gui_buffer_command(mc_gui_send_buffer_command * command);
 
+/*!
+ * \brief Replaces all the GUI geometry with the batches in the given command
+ *
+ * This lets Java send an entire screen with one call, rather than calling send_gui_buffer_command once per texture
+ *
+ * \param command The command holding every batch of the screen
+ */
+NOVA_API void send_gui_buffers_command(mc_gui_send_buffers_command * command);
+
+/*!
+ * \brief Overwrites a range of the GUI buffers for a texture without re-creating them
+ *
+ * \param command The command holding the range to update
+ */
+NOVA_API void update_gui_buffer_range(mc_gui_update_buffer_range_command * command);
+
 /*!
 * \brief Removes all gui render objects and thereby deletes all the buffers
 */
 NOVA_API void clear_gui_buffers();
 
+/*!
+ * \brief Adds a chunk section, or replaces the one already at the same position
+ *
+ * The section's data is copied, so the Java code can reuse its buffer as soon as this returns
+ *
+ * \param section The section to add
+ */
+NOVA_API void add_chunk_section(mc_chunk_section * section);
+
+/*!
+ * \brief Removes the chunk section at the given position, in sections. Does nothing if there isn't one there
+ */
+NOVA_API void remove_chunk_section(int section_x, int section_y, int section_z);
+
 /**
  * Settings updates
  */
@@ -96,13 +126,30 @@ NOVA_API void clear_gui_buffers();
  */
 NOVA_API void set_string_setting(const char * setting_name, const char * setting_value);
 
-NOVA_API struct mouse_button_event  get_next_mouse_button_event();
-
-NOVA_API struct mouse_position_event  get_next_mouse_position_event();
+/**
+ * Input
+ */
 
-NOVA_API struct key_press_event  get_next_key_press_event();
+/*!
+ * \brief Copies every queued mouse event, oldest first, into an array that Java owns
+ *
+ * Java calls this with a direct buffer once per batch rather than asking for events one at a time, so a fast mouse
+ * doesn't cost a trip through JNA for every little movement
+ *
+ * \param events Where to put the events
+ * \param max_events How many events fit in the array. Events that don't fit stay queued for the next call
+ * \return How many events were copied
+ */
+NOVA_API int drain_mouse_events(mouse_event * events, int max_events);
 
-NOVA_API struct key_char_event  get_next_key_char_event();
+/*!
+ * \brief Copies every queued keyboard event, oldest first, into an array that Java owns
+ *
+ * \param events Where to put the events
+ * \param max_events How many events fit in the array. Events that don't fit stay queued for the next call
+ * \return How many events were copied
+ */
+NOVA_API int drain_key_events(key_event * events, int max_events);
 
 };  // End extern C
     // I don't like doing this, but I just saw this closing curly brace and freaked out a little bit.
@@ -64,31 +64,36 @@ NOVA_API void send_gui_buffer_command(mc_gui_send_buffer_command * command) {
     nova_renderer::instance->get_mesh_store().add_gui_buffers(command);
 }
 
+NOVA_API void send_gui_buffers_command(mc_gui_send_buffers_command * command) {
+    nova_renderer::instance->get_mesh_store().set_gui_buffers(command);
+}
+
+NOVA_API void update_gui_buffer_range(mc_gui_update_buffer_range_command * command) {
+    nova_renderer::instance->get_mesh_store().update_gui_buffer_range(command);
+}
+
 NOVA_API void clear_gui_buffers() {
     nova_renderer::instance->get_mesh_store().remove_gui_render_objects();
 }
 
-NOVA_API void set_string_setting(const char * setting_name, const char * setting_value) {
-    settings& settings = nova_renderer::instance->get_render_settings();
-    settings.get_options()[setting_name] = setting_value;
-    settings.update_config_changed();
+NOVA_API void add_chunk_section(mc_chunk_section * section) {
+    nova_renderer::instance->get_mesh_store().add_chunk_section(section);
 }
 
-NOVA_API struct mouse_button_event  get_next_mouse_button_event() {
-	return INPUT_HANDLER.dequeue_mouse_button_event();
+NOVA_API void remove_chunk_section(int section_x, int section_y, int section_z) {
+    nova_renderer::instance->get_mesh_store().remove_chunk_section(section_x, section_y, section_z);
 }
 
-NOVA_API struct mouse_position_event  get_next_mouse_position_event() {
-	return INPUT_HANDLER.dequeue_mouse_position_event();
+NOVA_API void set_string_setting(const char * setting_name, const char * setting_value) {
+    settings& settings = nova_renderer::instance->get_render_settings();
+    settings.get_options()[setting_name] = setting_value;
+    settings.update_config_changed();
 }
 
-NOVA_API struct key_press_event get_next_key_press_event()
-{
-	return INPUT_HANDLER.dequeue_key_press_event();
+NOVA_API int drain_mouse_events(mouse_event * events, int max_events) {
+	return INPUT_HANDLER.drain_mouse_events(events, max_events);
 }
 
-NOVA_API struct key_char_event get_next_key_char_event()
-{
-	return  INPUT_HANDLER.dequeue_key_char_event();
+NOVA_API int drain_key_events(key_event * events, int max_events) {
+	return INPUT_HANDLER.drain_key_events(events, max_events);
 }
-
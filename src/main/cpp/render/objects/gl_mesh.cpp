@@ -80,6 +80,17 @@ namespace nova {
         num_indices = (unsigned int) data.size();
     }
 
+    void gl_mesh::update_data(unsigned int offset, std::vector<float> &data) {
+        glBindBuffer(GL_ARRAY_BUFFER, vertex_buffer);
+        glBufferSubData(GL_ARRAY_BUFFER, offset * sizeof(float), data.size() * sizeof(float), data.data());
+    }
+
+    void gl_mesh::update_index_array(unsigned int offset, std::vector<unsigned short> &data) {
+        glBindVertexArray(vertex_array);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indices);
+        glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, offset * sizeof(unsigned short), data.size() * sizeof(unsigned short), data.data());
+    }
+
     void gl_mesh::draw() const {
         if(num_indices > 0) {
             glDrawElements(GL_TRIANGLES, num_indices, GL_UNSIGNED_SHORT, 0);
@@ -55,6 +55,22 @@ namespace nova {
 
         void set_index_array(std::vector<unsigned short> data, usage data_usage);
 
+        /*!
+         * \brief Overwrites part of the vertex data that was uploaded with set_data
+         *
+         * \param offset The float to start writing at
+         * \param data The interleaved vertex data to write
+         */
+        void update_data(unsigned int offset, std::vector<float> &data);
+
+        /*!
+         * \brief Overwrites part of the index data that was uploaded with set_index_array
+         *
+         * \param offset The index to start writing at
+         * \param data The indices to write
+         */
+        void update_index_array(unsigned int offset, std::vector<unsigned short> &data);
+
         void set_active();
 
         void draw() const;
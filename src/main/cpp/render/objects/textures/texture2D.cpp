@@ -27,6 +27,39 @@ namespace nova {
         glBindTexture(GL_TEXTURE_2D, (GLuint) previous_texture);
     }
 
+    void texture2D::set_mip_level(int level, std::vector<float> &pixel_data, std::vector<int> &dimensions, GLenum format) {
+        if(dimensions.size() != 2) {
+            throw std::invalid_argument("Can't create a texture2D without 2 dimensions!");
+        }
+
+        GLint previous_texture;
+        glGetIntegerv(GL_TEXTURE_BINDING_2D, &previous_texture);
+        glBindTexture(GL_TEXTURE_2D, gl_name);
+        glTexImage2D(GL_TEXTURE_2D, level, format, dimensions[0], dimensions[1], 0, format, GL_FLOAT, pixel_data.data());
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, level);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST_MIPMAP_LINEAR);
+
+        glBindTexture(GL_TEXTURE_2D, (GLuint) previous_texture);
+    }
+
+    void texture2D::set_compressed_data(int level, const unsigned char *data, int size, std::vector<int> &dimensions, GLenum internal_format) {
+        if(dimensions.size() != 2) {
+            throw std::invalid_argument("Can't create a texture2D without 2 dimensions!");
+        }
+
+        GLint previous_texture;
+        glGetIntegerv(GL_TEXTURE_BINDING_2D, &previous_texture);
+        glBindTexture(GL_TEXTURE_2D, gl_name);
+        glCompressedTexImage2D(GL_TEXTURE_2D, level, internal_format, dimensions[0], dimensions[1], 0, size, data);
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, level);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, level == 0 ? GL_NEAREST : GL_NEAREST_MIPMAP_LINEAR);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+
+        glBindTexture(GL_TEXTURE_2D, (GLuint) previous_texture);
+    }
+
     void texture2D::bind(unsigned int binding) {
         if(binding != current_location) {
             glBindTextureUnit(binding, gl_name);
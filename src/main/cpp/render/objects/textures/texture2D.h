@@ -77,6 +77,32 @@ namespace nova {
          */
         virtual void set_data(std::vector<float> &pixel_data, std::vector<int> &dimensions, GLenum format);
 
+        /*!
+         * \brief Sets the data for one of this texture's smaller mip levels
+         *
+         * Call this after set_data, once for each level in order. The texture samples from every level up to the last
+         * one set
+         *
+         * \param level The mip level to set, starting at 1
+         * \param pixel_data The raw pixel_data
+         * \param dimensions The dimensions of this mip level
+         * \param format The format of the texture data. Should be the same as the format given to set_data
+         */
+        virtual void set_mip_level(int level, std::vector<float> &pixel_data, std::vector<int> &dimensions, GLenum format);
+
+        /*!
+         * \brief Sets one mip level of this texture to block compressed data
+         *
+         * The data goes to the GPU as-is. Set the levels in order, starting at 0
+         *
+         * \param level The mip level to set
+         * \param data The compressed blocks
+         * \param size How many bytes of data there are
+         * \param dimensions The dimensions of this mip level, in pixels
+         * \param internal_format The compressed format, like GL_COMPRESSED_RGBA_BPTC_UNORM
+         */
+        virtual void set_compressed_data(int level, const unsigned char *data, int size, std::vector<int> &dimensions, GLenum internal_format);
+
         virtual void set_filtering_parameters(texture_filtering_params &params);
 
         /*!
@@ -7,6 +7,14 @@
 #include <easylogging++.h>
 #include "texture_manager.h"
 
+// glad only has the core formats, S3TC comes from an extension every desktop driver has
+#ifndef GL_COMPRESSED_RGB_S3TC_DXT1_EXT
+#define GL_COMPRESSED_RGB_S3TC_DXT1_EXT 0x83F0
+#endif
+#ifndef GL_COMPRESSED_RGBA_S3TC_DXT5_EXT
+#define GL_COMPRESSED_RGBA_S3TC_DXT5_EXT 0x83F3
+#endif
+
 namespace nova {
     texture_manager::texture_manager() {
         LOG(INFO) << "Creating the Texture Manager";
@@ -35,9 +43,15 @@ namespace nova {
 
         atlases.clear();
         locations.clear();
+        locations_by_id.clear();
     }
 
     void texture_manager::add_texture(mc_atlas_texture &new_texture, texture_type data_type) {
+        if(new_texture.format != ATLAS_FORMAT_NONE) {
+            add_compressed_texture(new_texture, data_type);
+            return;
+        }
+
         // TODO:
         // Create an OpenGL texture from the given texture
         // Save it to the list of atlas textures
@@ -76,6 +90,23 @@ namespace nova {
         }
 
         texture.set_data(pixel_data, dimensions, format);
+
+        // The smaller mip levels come right after the full size one
+        unsigned char * level_data = new_texture.texture_data + new_texture.width * new_texture.height * new_texture.num_components;
+        for(int level = 1; level < new_texture.num_mip_levels; level++) {
+            int level_width = std::max(1, new_texture.width >> level);
+            int level_height = std::max(1, new_texture.height >> level);
+            int level_size = level_width * level_height * new_texture.num_components;
+
+            std::vector<float> level_pixels((size_t) level_size);
+            for(int i = 0; i < level_size; i++) {
+                level_pixels[i] = float(level_data[i]) / 255.0f;
+            }
+
+            std::vector<int> level_dimensions = {level_width, level_height};
+            texture.set_mip_level(level, level_pixels, level_dimensions, format);
+            level_data += level_size;
+        }
         LOG(DEBUG) << "Texture data sent to GPU";
 
         atlases[data_type] = texture;
@@ -86,6 +117,48 @@ namespace nova {
         texture.bind(bind_location);
     }
 
+    void texture_manager::add_compressed_texture(mc_atlas_texture &new_texture, texture_type data_type) {
+        GLenum internal_format;
+        int block_size;
+        switch(new_texture.format) {
+            case ATLAS_FORMAT_BC1:
+                internal_format = GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+                block_size = 8;
+                break;
+            case ATLAS_FORMAT_BC3:
+                internal_format = GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+                block_size = 16;
+                break;
+            case ATLAS_FORMAT_BC7:
+                internal_format = GL_COMPRESSED_RGBA_BPTC_UNORM;
+                block_size = 16;
+                break;
+            default:
+                LOG(ERROR) << "Unsupported atlas format " << new_texture.format;
+                return;
+        }
+
+        texture2D texture;
+
+        // The compressed levels follow each other with no space in between
+        unsigned char * level_data = new_texture.texture_data;
+        for(int level = 0; level < std::max(new_texture.num_mip_levels, 1); level++) {
+            int level_width = std::max(1, new_texture.width >> level);
+            int level_height = std::max(1, new_texture.height >> level);
+            int level_size = ((level_width + 3) / 4) * ((level_height + 3) / 4) * block_size;
+
+            std::vector<int> level_dimensions = {level_width, level_height};
+            texture.set_compressed_data(level, level_data, level_size, level_dimensions, internal_format);
+            level_data += level_size;
+        }
+        LOG(DEBUG) << "Compressed texture data sent to GPU";
+
+        atlases[data_type] = texture;
+
+        unsigned int bind_location = (unsigned int) data_type;
+        texture.bind(bind_location);
+    }
+
     void texture_manager::add_texture_location(mc_texture_atlas_location &location) {
         texture_location tex_loc = {
                 { location.min_u, location.min_v },
@@ -93,6 +166,13 @@ namespace nova {
         };
 
         locations[location.name] = tex_loc;
+
+        if(location.id >= 0) {
+            if(location.id >= (int) locations_by_id.size()) {
+                locations_by_id.resize((size_t) location.id + 1);
+            }
+            locations_by_id[location.id] = tex_loc;
+        }
     }
 
 
@@ -100,6 +180,14 @@ namespace nova {
         return locations[texture_name];
     }
 
+    const texture_manager::texture_location &texture_manager::get_texture_location(int texture_id) {
+        static const texture_location empty_location = {};
+        if(texture_id < 0 || texture_id >= (int) locations_by_id.size()) {
+            return empty_location;
+        }
+        return locations_by_id[texture_id];
+    }
+
     texture2D &texture_manager::get_texture_atlas(texture_type type) {
         return atlases[type];
     }
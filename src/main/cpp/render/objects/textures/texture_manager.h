@@ -142,6 +142,14 @@ namespace nova {
          */
         const texture_location &get_texture_location(const std::string &texture_name);
 
+        /*!
+         * \brief Retrieves the texture location for a texture with a specific ID
+         *
+         * \param texture_id The ID the Java code assigned to the texture
+         * \return The location of the requested texture, or an empty location if there's no texture with that ID
+         */
+        const texture_location &get_texture_location(int texture_id);
+
         /*!
          * \brief Returns a pointer to the specified atlas
          *
@@ -163,12 +171,22 @@ namespace nova {
     private:
         std::map<texture_type, texture2D> atlases;
 
+        /*!
+         * \brief Uploads an atlas that the Java code already block compressed, without touching its data
+         */
+        void add_compressed_texture(mc_atlas_texture &new_texture, texture_type data_type);
+
         /*!
          * \brief A map from the name of a texture according to Minecraft and the UV coordinates it takes up in its
          * texture atlas
          */
         std::map<std::string, texture_location> locations;
 
+        /*!
+         * \brief The same locations as above, indexed by the ID the Java code gave each texture
+         */
+        std::vector<texture_location> locations_by_id;
+
         int max_texture_size = -1;
     };
 }
@@ -1,14 +1,18 @@
 package com.continuum.nova;
 
 import com.continuum.nova.input.Mouse;
-import com.sun.jna.Memory;
 import com.sun.jna.Native;
+import com.sun.jna.Pointer;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiScreen;
 import net.minecraft.client.gui.ScaledResolution;
 import net.minecraft.util.ResourceLocation;
 import org.apache.commons.lang3.ArrayUtils;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
 
 public class NovaDraw {
@@ -23,11 +27,245 @@ public class NovaDraw {
         return mouseY;
     }
 
-    static HashMap<ResourceLocation, Buffers> buffers = new HashMap<>();
+    /**
+     * The batches, indexed by the texture's ID from {@link TextureRegistry}
+     */
+    static Buffers[] buffers = new Buffers[64];
+
+    /**
+     * The index pattern of a quad made of the four vertices top left, top right, bottom left, bottom right
+     */
+    private static final int[] QUAD_INDICES = new int[]{0, 1, 2, 2, 1, 3};
+
+    private static long allocationCount;
+
+    /**
+     * Where the GUI geometry is sent. Null means {@link NovaNative#INSTANCE}, tests put their own binding here
+     */
+    static NovaNative natives;
+
+    /**
+     * Counts the allocations NovaDraw makes itself: creating a batch for a texture it hasn't seen, growing the batch
+     * table, growing a batch's native buffers or the frame block, and starting to track a GUI element or one more of
+     * its ranges. Once every texture and element a screen uses has been seen and the buffers are big enough,
+     * rebuilding the screen shouldn't move this number.
+     * <p>
+     * It doesn't see garbage made by anything NovaDraw calls, like the screen's own drawNova code or
+     * {@link TextureRegistry}. Tests that want to prove a rebuild makes no garbage at all should measure the thread's
+     * allocated bytes as well.
+     *
+     * @return the number of allocations NovaDraw has made so far
+     */
+    public static long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /**
+     * Every GUI element drawn through {@link #drawElement(Element)} during the last full rebuild, and where its geometry
+     * went. The list holds the same elements as the map, so they can be walked every frame without an iterator
+     */
+    private static final Map<Element, TrackedElement> trackedElements = new IdentityHashMap<>();
+    private static final List<TrackedElement> trackedElementList = new ArrayList<>();
+
+    private static final List<TrackedElement> dirtyElements = new ArrayList<>();
+
+    /**
+     * The element that's currently being drawn, or null if we aren't inside drawElement
+     */
+    private static TrackedElement currentElement;
+
+    /**
+     * The screen the buffers were last built from
+     */
+    private static GuiScreen currentScreen;
+
+    /**
+     * How many full rebuilds there have been, so elements that weren't drawn in the latest one can be told apart
+     */
+    private static int rebuildCount;
+
+    /**
+     * Set when an element that wasn't drawn through drawElement is marked dirty, which only a full rebuild can handle
+     */
+    private static boolean needsRebuild;
+
+    /**
+     * True while a dirty element is being redrawn into its old ranges
+     */
+    private static boolean rewriting;
+
+    /**
+     * Set when a redrawn element touched a texture it didn't use before, so its geometry can't be patched in place
+     */
+    private static boolean rewriteFailed;
+
+    /**
+     * Size of one entry in the batch table at the start of the frame block, in ints
+     */
+    private static final int BATCH_HEADER_INTS = 5;
+
+    /**
+     * All the batches of a screen, copied into one native block so the whole screen can be sent with one call. It
+     * holds a table of batch headers, then every batch's indices, then every batch's vertices. Like the batches, it's
+     * kept around and only grows.
+     */
+    private static ByteBuffer frameBlock = newFrameBlock(64 * 1024);
+    private static IntBuffer frameBlockInts = frameBlock.asIntBuffer();
+    private static FloatBuffer frameBlockFloats = frameBlock.asFloatBuffer();
+    private static Pointer frameBlockPointer = Native.getDirectBufferPointer(frameBlock);
+
+    private static final NovaNative.mc_gui_send_buffers_command frameCommand = new NovaNative.mc_gui_send_buffers_command();
 
     static void clearBuffers() {
-        buffers.clear();
-        NovaNative.INSTANCE.clear_gui_buffers();
+        for (Buffers b : buffers) {
+            if(b != null) {
+                b.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the batch for the given texture, creating it the first time the texture is drawn with
+     */
+    private static Buffers getBuffers(ResourceLocation texture) {
+        return getBuffers(TextureRegistry.getId(texture));
+    }
+
+    private static Buffers getBuffers(int textureId) {
+        if(textureId >= buffers.length) {
+            buffers = Arrays.copyOf(buffers, Math.max(buffers.length * 2, textureId + 1));
+            allocationCount++;
+        }
+
+        Buffers b = buffers[textureId];
+        if(b == null) {
+            b = new Buffers(textureId);
+            buffers[textureId] = b;
+        }
+
+        if(currentElement != null) {
+            trackElementRange(b);
+        }
+        return b;
+    }
+
+    /**
+     * Remembers that the element that's currently being drawn writes into the given batch
+     */
+    private static void trackElementRange(Buffers b) {
+        TrackedElement tracked = currentElement;
+        for (int i = 0; i < tracked.numRanges; i++) {
+            if(tracked.ranges.get(i).buffers == b) {
+                return;
+            }
+        }
+
+        if(rewriting) {
+            // The element now draws with a texture it didn't use before. Write into the batch as normal and let
+            // novaDrawScreen fall back to a full rebuild
+            rewriteFailed = true;
+            return;
+        }
+
+        tracked.addRange(b);
+    }
+
+    /**
+     * A GUI element that can draw itself through NovaDraw on its own, so it can be redrawn without redrawing the
+     * whole screen
+     */
+    public interface Element {
+        void drawNova();
+
+        /**
+         * Sums up everything that changes how the element looks, e.g. whether a button is hovered or enabled. NovaDraw
+         * checks this every frame and redraws just this element when it changes, so a hover flip doesn't rebuild the
+         * screen. Elements that call {@link #markDirty(Element)} themselves can leave it at 0.
+         *
+         * @return anything that's different whenever the element would draw differently
+         */
+        default int getNovaDrawState() {
+            return 0;
+        }
+    }
+
+    /**
+     * Draws a single GUI element and remembers which parts of which batches it wrote. GuiScreen.drawNova should draw
+     * its buttons and other widgets through this method, once each per rebuild, so that they can later be updated
+     * without a full rebuild.
+     *
+     * @param element the element to draw
+     */
+    public static void drawElement(Element element) {
+        if(rewriting) {
+            // Part of an element that's being redrawn. It writes into that element's ranges, and if it doesn't fit
+            // there the redraw falls back to a full rebuild
+            element.drawNova();
+            return;
+        }
+
+        TrackedElement tracked = trackedElements.get(element);
+        if(tracked == null) {
+            tracked = new TrackedElement(element);
+            trackedElements.put(element, tracked);
+            trackedElementList.add(tracked);
+            allocationCount++;
+        }
+        tracked.numRanges = 0;
+        tracked.rebuild = rebuildCount;
+        tracked.state = element.getNovaDrawState();
+
+        TrackedElement outer = currentElement;
+        currentElement = tracked;
+        try {
+            element.drawNova();
+        } finally {
+            currentElement = outer;
+        }
+
+        for (int i = 0; i < tracked.numRanges; i++) {
+            tracked.ranges.get(i).end();
+        }
+    }
+
+    /**
+     * Tells NovaDraw that the given element looks different now in a way {@link Element#getNovaDrawState()} doesn't
+     * show. On the next novaDrawScreen only this element is redrawn, and only its part of the buffers is sent to the
+     * native code.
+     * <p>
+     * If the element's geometry changed size or it wasn't drawn with {@link #drawElement(Element)}, novaDrawScreen
+     * falls back to rebuilding the whole screen.
+     *
+     * @param element the element that changed
+     */
+    public static void markDirty(Element element) {
+        TrackedElement tracked = trackedElements.get(element);
+        if(tracked == null) {
+            needsRebuild = true;
+        } else {
+            markDirty(tracked);
+        }
+    }
+
+    private static void markDirty(TrackedElement tracked) {
+        if(!tracked.dirty) {
+            tracked.dirty = true;
+            dirtyElements.add(tracked);
+        }
+    }
+
+    /**
+     * Marks every tracked element whose draw state changed since it was last drawn
+     */
+    private static void markChangedElements() {
+        for (int i = 0; i < trackedElementList.size(); i++) {
+            TrackedElement tracked = trackedElementList.get(i);
+            int state = tracked.element.getNovaDrawState();
+            if(state != tracked.state) {
+                tracked.state = state;
+                markDirty(tracked);
+            }
+        }
     }
 
     /**
@@ -38,11 +276,20 @@ public class NovaDraw {
      * @param vertexbuffer vertex buffer data
      */
     public static void draw(ResourceLocation texture, Integer[] indexBuffer, Float[] vertexbuffer) {
-        if(buffers.containsKey(texture)) {
-            buffers.get(texture).add(indexBuffer, vertexbuffer);
-        } else {
-            buffers.put(texture, new Buffers().add(indexBuffer, vertexbuffer));
-        }
+        getBuffers(texture).add(indexBuffer, vertexbuffer);
+    }
+
+    /**
+     * Add data to the indexBuffer and vertexBuffer which is associated with the specified texture.
+     * <p>
+     * Prefer this over the boxed overloads, the data goes straight into the batch without any intermediate objects.
+     *
+     * @param texture      the texture by which the index buffers and vertex buffers are grouped
+     * @param indexBuffer  index buffer data
+     * @param vertexbuffer vertex buffer data, five floats (x, y, z, u, v) per vertex
+     */
+    public static void draw(ResourceLocation texture, int[] indexBuffer, float[] vertexbuffer) {
+        getBuffers(texture).add(indexBuffer, vertexbuffer);
     }
 
     /**
@@ -53,19 +300,15 @@ public class NovaDraw {
      * @param vertices    the vertices as Vertex objects
      */
     public static void draw(ResourceLocation texture, Integer[] indexBuffer, Vertex[] vertices) {
-        Float[] vertexbuffer = new Float[vertices.length * 5];
-        for (int v = 0; v < vertices.length; v++) {
-            vertexbuffer[v * 5] = vertices[v].x;
-            vertexbuffer[v * 5 + 1] = vertices[v].y;
-            vertexbuffer[v * 5 + 2] = vertices[v].z;
-            vertexbuffer[v * 5 + 3] = vertices[v].u;
-            vertexbuffer[v * 5 + 4] = vertices[v].v;
-        }
+        Buffers b = getBuffers(texture);
+        b.ensureCapacity(indexBuffer.length, vertices.length * 5);
 
-        if(buffers.containsKey(texture)) {
-            buffers.get(texture).add(indexBuffer, vertexbuffer);
-        } else {
-            buffers.put(texture, new Buffers().add(indexBuffer, vertexbuffer));
+        int indexOffset = b.getVertexCount();
+        for (int index : indexBuffer) {
+            b.putIndex(index + indexOffset);
+        }
+        for (Vertex vertex : vertices) {
+            b.putVertex(vertex.x, vertex.y, vertex.z, vertex.u, vertex.v);
         }
     }
 
@@ -88,26 +331,34 @@ public class NovaDraw {
      * @param texHeight texture / UV coordinates, relative to the original minecraft textures (not the texture atlas)
      */
     public static void drawRectangle(ResourceLocation texture, int x, int y, int width, int height, float texX, float texY, float texWidth, float texHeight) {
-        Integer[] indexBuffer = new Integer[]{0, 1, 2, 2, 1, 3};
-        Vertex[] vertices = new Vertex[]{
-                new Vertex(
-                        x, y,
-                        texX, texY
-                ),
-                new Vertex(
-                        x + width, y,
-                        texX + texWidth, texY
-                ),
-                new Vertex(
-                        x, y + height,
-                        texX, texY + texHeight
-                ),
-                new Vertex(
-                        x + width, y + height,
-                        texX + texWidth, texY + texHeight
-                )
-        };
-        draw(texture, indexBuffer, vertices);
+        drawQuad(texture, x, y, 0, width, height, texX, texY, texWidth, texHeight);
+    }
+
+    /**
+     * Writes a single axis-aligned quad straight into the batch of the given texture. This is what drawRectangle uses,
+     * exposed for callers that need a depth or sub-pixel positions.
+     *
+     * @param texture   the texture
+     * @param x         screen coordinates in pixel
+     * @param y         screen coordinates in pixel
+     * @param z         depth of the quad
+     * @param width     screen coordinates in pixel
+     * @param height    screen coordinates in pixel
+     * @param texX      texture / UV coordinates, relative to the original minecraft textures (not the texture atlas)
+     * @param texY      texture / UV coordinates, relative to the original minecraft textures (not the texture atlas)
+     * @param texWidth  texture / UV coordinates, relative to the original minecraft textures (not the texture atlas)
+     * @param texHeight texture / UV coordinates, relative to the original minecraft textures (not the texture atlas)
+     */
+    public static void drawQuad(ResourceLocation texture, float x, float y, float z, float width, float height, float texX, float texY, float texWidth, float texHeight) {
+        getBuffers(texture).addQuad(x, y, z, width, height, texX, texY, texWidth, texHeight);
+    }
+
+    /**
+     * Same as {@link #drawQuad(ResourceLocation, float, float, float, float, float, float, float, float, float)}, for
+     * callers that keep the texture's ID from {@link TextureRegistry#getId(ResourceLocation)} around.
+     */
+    public static void drawQuad(int textureId, float x, float y, float z, float width, float height, float texX, float texY, float texWidth, float texHeight) {
+        getBuffers(textureId).addQuad(x, y, z, width, height, texX, texY, texWidth, texHeight);
     }
 
     /**
@@ -133,22 +384,264 @@ public class NovaDraw {
 
     /**
      * This build the index and vertex buffers of the specified GUI screen, grouped by the original minecraft textures,
-     * if any state changes occured to any GUI element (hovered, visibility, completely different screen).
+     * if it's a different screen or checkStateChanged says the screen changed.
+     * <p>
+     * Otherwise only the elements that were drawn through {@link #drawElement(Element)} and changed since (their
+     * {@link Element#getNovaDrawState()} is different, or they were marked dirty) are redrawn, and only their ranges
+     * are sent to the native code. For that to help, a screen that draws its buttons through drawElement must leave
+     * their hover and enabled states out of checkStateChanged, or every hover flip still rebuilds everything.
      *
      * @param screen the gui screen
      */
     public static void novaDrawScreen(GuiScreen screen) {
         computeCorrectMousePosition();
+        drawScreen(screen);
+    }
+
+    /**
+     * Everything novaDrawScreen does apart from reading the mouse position, which needs a running Minecraft
+     */
+    static void drawScreen(GuiScreen screen) {
+        boolean stateChanged = screen.checkStateChanged();
+        if(screen != currentScreen || stateChanged || needsRebuild) {
+            rebuildScreen(screen);
+            return;
+        }
 
-        if(screen.checkStateChanged()) {
-            clearBuffers();
-            screen.drawNova();
+        markChangedElements();
+        if(!dirtyElements.isEmpty() && !redrawDirtyElements()) {
+            rebuildScreen(screen);
+        }
+    }
 
-            for (ResourceLocation texture : buffers.keySet()) {
-                Buffers b = buffers.get(texture);
-                NovaNative.INSTANCE.send_gui_buffer_command(b.toNativeCommand(texture));
+    private static NovaNative getNatives() {
+        return natives != null ? natives : NovaNative.INSTANCE;
+    }
+
+    private static void rebuildScreen(GuiScreen screen) {
+        clearBuffers();
+        clearDirtyElements();
+        needsRebuild = false;
+        currentScreen = screen;
+        rebuildCount++;
+
+        screen.drawNova();
+        forgetUndrawnElements();
+
+        getNatives().send_gui_buffers_command(buildFrameCommand());
+    }
+
+    private static void clearDirtyElements() {
+        for (int i = 0; i < dirtyElements.size(); i++) {
+            dirtyElements.get(i).dirty = false;
+        }
+        dirtyElements.clear();
+    }
+
+    /**
+     * Stops tracking the elements that weren't drawn in the latest rebuild, like the ones of the previous screen
+     */
+    private static void forgetUndrawnElements() {
+        for (int i = trackedElementList.size() - 1; i >= 0; i--) {
+            TrackedElement tracked = trackedElementList.get(i);
+            if(tracked.rebuild != rebuildCount) {
+                TrackedElement last = trackedElementList.remove(trackedElementList.size() - 1);
+                if(last != tracked) {
+                    trackedElementList.set(i, last);
+                }
+                trackedElements.remove(tracked.element);
+            }
+        }
+    }
+
+    /**
+     * Copies every non-empty batch into the frame block and fills in the command that points at it. The native code
+     * replaces all the GUI geometry it has with what's in the command.
+     *
+     * @return the native struct, reused between calls
+     */
+    private static NovaNative.mc_gui_send_buffers_command buildFrameCommand() {
+        int numBatches = 0;
+        int numIndices = 0;
+        int numVertexFloats = 0;
+        for (Buffers b : buffers) {
+            if(b != null && !b.isEmpty()) {
+                numBatches++;
+                numIndices += b.indexBuffer.position();
+                numVertexFloats += b.vertexBuffer.position();
+            }
+        }
+
+        int indexStart = numBatches * BATCH_HEADER_INTS;
+        int vertexStart = indexStart + numIndices;
+        ensureFrameBlockCapacity(vertexStart + numVertexFloats);
+
+        int header = 0;
+        int indexOffset = 0;
+        int vertexOffset = 0;
+        frameBlockInts.clear();
+        frameBlockFloats.clear();
+        for (Buffers b : buffers) {
+            if(b == null || b.isEmpty()) {
+                continue;
+            }
+
+            frameBlockInts.position(header);
+            frameBlockInts.put(b.textureId)
+                    .put(indexOffset).put(b.indexBuffer.position())
+                    .put(vertexOffset).put(b.vertexBuffer.position());
+            header += BATCH_HEADER_INTS;
+
+            frameBlockInts.position(indexStart + indexOffset);
+            frameBlockFloats.position(vertexStart + vertexOffset);
+            indexOffset += b.indexBuffer.position();
+            vertexOffset += b.vertexBuffer.position();
+            b.copyTo(frameBlockInts, frameBlockFloats);
+        }
+
+        frameCommand.num_batches = numBatches;
+        frameCommand.index_data_offset = indexStart * Integer.BYTES;
+        frameCommand.vertex_data_offset = vertexStart * Float.BYTES;
+        frameCommand.data = frameBlockPointer;
+        return frameCommand;
+    }
+
+    /**
+     * Makes sure the frame block can hold the given number of ints and floats
+     */
+    private static void ensureFrameBlockCapacity(int numWords) {
+        if(frameBlock.capacity() < numWords * Integer.BYTES) {
+            frameBlock = newFrameBlock(Math.max(frameBlock.capacity() * 2, numWords * Integer.BYTES));
+            frameBlockInts = frameBlock.asIntBuffer();
+            frameBlockFloats = frameBlock.asFloatBuffer();
+            frameBlockPointer = Native.getDirectBufferPointer(frameBlock);
+            allocationCount++;
+        }
+    }
+
+    private static ByteBuffer newFrameBlock(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Redraws every dirty element into the ranges it used last time and sends those ranges to the native code
+     *
+     * @return false if some element's geometry no longer fits its old ranges, meaning the screen needs a full rebuild
+     */
+    private static boolean redrawDirtyElements() {
+        for (int i = 0; i < dirtyElements.size(); i++) {
+            if(!redrawElement(dirtyElements.get(i))) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < dirtyElements.size(); i++) {
+            TrackedElement tracked = dirtyElements.get(i);
+            for (int r = 0; r < tracked.numRanges; r++) {
+                ElementRange range = tracked.ranges.get(r);
+                getNatives().update_gui_buffer_range(range.buffers.toRangeCommand(range));
             }
         }
+
+        clearDirtyElements();
+        return true;
+    }
+
+    private static boolean redrawElement(TrackedElement tracked) {
+        for (int i = 0; i < tracked.numRanges; i++) {
+            ElementRange range = tracked.ranges.get(i);
+            range.buffers.beginRewrite(range.indexStart, range.vertexStart);
+        }
+
+        currentElement = tracked;
+        rewriting = true;
+        rewriteFailed = false;
+        try {
+            tracked.element.drawNova();
+        } finally {
+            currentElement = null;
+            rewriting = false;
+        }
+
+        boolean fits = !rewriteFailed;
+        for (int i = 0; i < tracked.numRanges; i++) {
+            fits &= tracked.ranges.get(i).buffers.endRewrite(tracked.ranges.get(i));
+        }
+        return fits;
+    }
+
+    /**
+     * A GUI element drawn through {@link #drawElement(Element)}, with the ranges it wrote in the last full rebuild.
+     * Kept from one rebuild to the next, along with its ranges, for as long as the element keeps being drawn
+     */
+    static final class TrackedElement {
+        final Element element;
+
+        /**
+         * Only the first numRanges are in use, the rest are left over from earlier rebuilds
+         */
+        final List<ElementRange> ranges = new ArrayList<>();
+        int numRanges;
+
+        /**
+         * The element's draw state when it was last drawn
+         */
+        int state;
+
+        /**
+         * True while the element is in dirtyElements
+         */
+        boolean dirty;
+
+        /**
+         * The rebuild the element was last drawn in
+         */
+        int rebuild;
+
+        TrackedElement(Element element) {
+            this.element = element;
+        }
+
+        void addRange(Buffers b) {
+            if(numRanges < ranges.size()) {
+                ranges.get(numRanges).reset(b);
+            } else {
+                ranges.add(new ElementRange(b));
+                allocationCount++;
+            }
+            numRanges++;
+        }
+    }
+
+    /**
+     * The part of a single texture's batch that one GUI element wrote
+     */
+    static final class ElementRange {
+        Buffers buffers;
+
+        int indexStart;
+        int indexCount;
+        int vertexStart;    // in floats
+        int vertexCount;    // in floats
+
+        ElementRange(Buffers buffers) {
+            reset(buffers);
+        }
+
+        void reset(Buffers buffers) {
+            this.buffers = buffers;
+            begin();
+        }
+
+        void begin() {
+            indexStart = buffers.indexBuffer.position();
+            vertexStart = buffers.vertexBuffer.position();
+        }
+
+        void end() {
+            indexCount = buffers.indexBuffer.position() - indexStart;
+            vertexCount = buffers.vertexBuffer.position() - vertexStart;
+        }
     }
 
     public static class Vertex {
@@ -175,59 +668,210 @@ public class NovaDraw {
      * This class aggregates the index and vertex buffers of all GUI elements which share the same texture.
      * <p>
      * It is only used internally in NovaDraw.
+     * <p>
+     * The data lives in direct, native-ordered buffers which are kept around between rebuilds and only ever grow, so
+     * there's nothing to allocate per frame. Full rebuilds bulk-copy them into the frame block, range updates let the
+     * native code read them through a pointer.
      */
     static class Buffers {
-        public List<Integer> indexBuffer = new ArrayList<>();
-        public List<Float> vertexBuffer = new ArrayList<>();
+        private static final int INITIAL_INDEX_CAPACITY = 6 * 64;
+        private static final int INITIAL_VERTEX_CAPACITY = 4 * 5 * 64;
+
+        private IntBuffer indexBuffer = newIntBuffer(INITIAL_INDEX_CAPACITY);
+        private FloatBuffer vertexBuffer = newFloatBuffer(INITIAL_VERTEX_CAPACITY);
+
+        private Pointer indexPointer = Native.getDirectBufferPointer(indexBuffer);
+        private Pointer vertexPointer = Native.getDirectBufferPointer(vertexBuffer);
+
+        private final NovaNative.mc_gui_update_buffer_range_command rangeCommand = new NovaNative.mc_gui_update_buffer_range_command();
+
+        /**
+         * Where the end of the data is while an element is being rewritten in the middle of the buffers, -1 otherwise
+         */
+        private int rewriteIndexEnd = -1;
+        private int rewriteVertexEnd = -1;
+
+        private final int textureId;
+
+        Buffers(int textureId) {
+            this.textureId = textureId;
+            allocationCount++;
+        }
 
         public Buffers add(Integer[] indexBuffer, Float[] vertexBuffer) {
             //System.out.println("write index: " + Arrays.toString(indexBuffer));
             //System.out.println("write vertex: " + Arrays.toString(vertexBuffer));
+            ensureCapacity(indexBuffer.length, vertexBuffer.length);
 
             // add index buffer
-            int indexbuffer_size = this.vertexBuffer.size() / 5;
+            int indexbuffer_size = getVertexCount();
             for (int index : indexBuffer) {
-                this.indexBuffer.add(index + indexbuffer_size);
+                this.indexBuffer.put(index + indexbuffer_size);
             }
 
             // add vertex buffer
-            Collections.addAll(this.vertexBuffer, vertexBuffer);
+            for (float vertex : vertexBuffer) {
+                this.vertexBuffer.put(vertex);
+            }
 
             return this;
         }
 
+        public Buffers add(int[] indexBuffer, float[] vertexBuffer) {
+            ensureCapacity(indexBuffer.length, vertexBuffer.length);
+
+            int indexbuffer_size = getVertexCount();
+            for (int index : indexBuffer) {
+                this.indexBuffer.put(index + indexbuffer_size);
+            }
+
+            this.vertexBuffer.put(vertexBuffer);
+
+            return this;
+        }
+
+        /**
+         * Adds a quad with the vertices top left, top right, bottom left, bottom right
+         */
+        void addQuad(float x, float y, float z, float width, float height, float texX, float texY, float texWidth, float texHeight) {
+            ensureCapacity(QUAD_INDICES.length, 4 * 5);
+
+            int indexbuffer_size = getVertexCount();
+            for (int index : QUAD_INDICES) {
+                indexBuffer.put(index + indexbuffer_size);
+            }
+
+            putVertex(x, y, z, texX, texY);
+            putVertex(x + width, y, z, texX + texWidth, texY);
+            putVertex(x, y + height, z, texX, texY + texHeight);
+            putVertex(x + width, y + height, z, texX + texWidth, texY + texHeight);
+        }
+
+        /**
+         * Writes a single index. The caller has to make sure there's enough capacity
+         */
+        void putIndex(int index) {
+            indexBuffer.put(index);
+        }
+
+        /**
+         * Writes a single vertex. The caller has to make sure there's enough capacity
+         */
+        void putVertex(float x, float y, float z, float u, float v) {
+            vertexBuffer.put(x).put(y).put(z).put(u).put(v);
+        }
+
+        int getVertexCount() {
+            return vertexBuffer.position() / 5;
+        }
+
+        /**
+         * Forgets all the data in this buffer but keeps the native memory around for the next rebuild
+         */
+        public void clear() {
+            indexBuffer.clear();
+            vertexBuffer.clear();
+        }
+
+        public boolean isEmpty() {
+            return indexBuffer.position() == 0;
+        }
+
         /**
-         * Generate a native struct which can be sent to c++.
-         * <p>
-         * Native memory is allocated here so that the index and vertex buffers can be dynamically sized
-         * (this is the only way to achieve that, otherwise we would have to specify a fixed array size
-         * with a maximum number of vertices.)
+         * Moves the write position back to the given offsets so an element can overwrite its old geometry
+         */
+        void beginRewrite(int indexStart, int vertexStart) {
+            rewriteIndexEnd = indexBuffer.position();
+            rewriteVertexEnd = vertexBuffer.position();
+            indexBuffer.position(indexStart);
+            vertexBuffer.position(vertexStart);
+        }
+
+        /**
+         * Moves the write position back to the end of the data
          *
-         * @param texture the texture
-         * @return the native struct
+         * @param range the range that was just rewritten
+         * @return true if the rewrite exactly filled the range
          */
-        public NovaNative.mc_gui_send_buffer_command toNativeCommand(ResourceLocation texture) {
-            // create a new struct
-            NovaNative.mc_gui_send_buffer_command command = new NovaNative.mc_gui_send_buffer_command();
-            command.texture_name = texture.getResourcePath();
-
-            // assign the index buffer
-            command.index_buffer_size = this.indexBuffer.size();
-            command.index_buffer = new Memory(command.index_buffer_size * Native.getNativeSize(Integer.TYPE));
-            for (int i = 0; i < command.index_buffer_size; i++) {
-                Integer index = this.indexBuffer.get(i);
-                command.index_buffer.setInt(i * Native.getNativeSize(Integer.TYPE), (int) (index != null ? index : 0));
+        boolean endRewrite(ElementRange range) {
+            boolean fits = indexBuffer.position() == range.indexStart + range.indexCount
+                    && vertexBuffer.position() == range.vertexStart + range.vertexCount;
+
+            indexBuffer.position(Math.max(indexBuffer.position(), rewriteIndexEnd));
+            vertexBuffer.position(Math.max(vertexBuffer.position(), rewriteVertexEnd));
+            rewriteIndexEnd = -1;
+            rewriteVertexEnd = -1;
+            return fits;
+        }
+
+        /**
+         * Makes sure there's room for the given number of additional indices and vertex components, growing the
+         * native buffers if needed
+         */
+        void ensureCapacity(int extraIndices, int extraVertexComponents) {
+            if(indexBuffer.remaining() < extraIndices) {
+                IntBuffer newBuffer = newIntBuffer(Math.max(indexBuffer.capacity() * 2, indexBuffer.position() + extraIndices));
+                int position = indexBuffer.position();
+                indexBuffer.limit(Math.max(position, rewriteIndexEnd)).position(0);
+                newBuffer.put(indexBuffer).position(position);
+                indexBuffer = newBuffer;
+                indexPointer = Native.getDirectBufferPointer(indexBuffer);
+                allocationCount++;
             }
 
-            // assign the vertex buffer
-            command.vertex_buffer_size = this.vertexBuffer.size();
-            command.vertex_buffer = new Memory(command.vertex_buffer_size * Native.getNativeSize(Float.TYPE));
-            for (int i = 0; i < command.vertex_buffer_size; i++) {
-                Float vertex = this.vertexBuffer.get(i);
-                command.vertex_buffer.setFloat(i * Native.getNativeSize(Float.TYPE), (float) (vertex != null ? vertex : 0));
+            if(vertexBuffer.remaining() < extraVertexComponents) {
+                FloatBuffer newBuffer = newFloatBuffer(Math.max(vertexBuffer.capacity() * 2, vertexBuffer.position() + extraVertexComponents));
+                int position = vertexBuffer.position();
+                vertexBuffer.limit(Math.max(position, rewriteVertexEnd)).position(0);
+                newBuffer.put(vertexBuffer).position(position);
+                vertexBuffer = newBuffer;
+                vertexPointer = Native.getDirectBufferPointer(vertexBuffer);
+                allocationCount++;
             }
+        }
+
+        /**
+         * Bulk-copies this batch's indices and vertices to the current positions of the given buffers
+         */
+        void copyTo(IntBuffer indices, FloatBuffer vertices) {
+            int indexPosition = indexBuffer.position();
+            indexBuffer.flip();
+            indices.put(indexBuffer);
+            indexBuffer.limit(indexBuffer.capacity()).position(indexPosition);
+
+            int vertexPosition = vertexBuffer.position();
+            vertexBuffer.flip();
+            vertices.put(vertexBuffer);
+            vertexBuffer.limit(vertexBuffer.capacity()).position(vertexPosition);
+        }
+
+        /**
+         * Fill in the native struct that overwrites part of the buffers sent by an earlier send_gui_buffers_command.
+         * It points straight at our direct buffers and is reused.
+         *
+         * @param range the part of the buffers to send
+         * @return the native struct
+         */
+        public NovaNative.mc_gui_update_buffer_range_command toRangeCommand(ElementRange range) {
+            rangeCommand.texture_id = textureId;
+
+            rangeCommand.index_offset = range.indexStart;
+            rangeCommand.index_count = range.indexCount;
+            rangeCommand.index_buffer = indexPointer;
+
+            rangeCommand.vertex_offset = range.vertexStart;
+            rangeCommand.vertex_count = range.vertexCount;
+            rangeCommand.vertex_buffer = vertexPointer;
+
+            return rangeCommand;
+        }
+
+        private static IntBuffer newIntBuffer(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
 
-            return command;
+        private static FloatBuffer newFloatBuffer(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
         }
     }
 
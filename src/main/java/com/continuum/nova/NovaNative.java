@@ -1,47 +1,89 @@
 package com.continuum.nova;
 
+import com.continuum.nova.utils.BlockCompression;
 import com.sun.jna.*;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 public interface NovaNative extends Library {
-    NovaNative INSTANCE = (NovaNative) Native.loadLibrary("nova-renderer", NovaNative.class);
+    /**
+     * The binding all native calls go through. Direct-mapped unless the {@code nova.native.binding} system property
+     * says otherwise, see {@link NovaNativeDirect}
+     */
+    NovaNative INSTANCE = NovaNativeDirect.load();
 
     class mc_atlas_texture extends Structure {
         public int width;
         public int height;
         public int num_components;
+        public int num_mip_levels;  // Including the full size level. The levels follow each other in texture_data
+        public int format;          // The ordinal of a BlockCompression.Format
         public Pointer texture_data;
 
+        /**
+         * Creates an atlas texture from an array of pixels. The pixels are copied to native memory in one go
+         */
         public mc_atlas_texture(int width, int height, int num_components, byte[] texture_data) {
+            this(width, height, num_components, ByteBuffer.wrap(texture_data));
+        }
+
+        /**
+         * Creates an atlas texture from a buffer of pixels. A direct buffer (like a memory-mapped file) is handed to
+         * the native code as-is, so it has to stay reachable until add_texture returns
+         */
+        public mc_atlas_texture(int width, int height, int num_components, ByteBuffer texture_data) {
+            this(width, height, num_components, 1, texture_data);
+        }
+
+        /**
+         * Creates an atlas texture with mipmaps. The buffer holds every level, biggest first, as laid out by
+         * {@link MipChain}
+         */
+        public mc_atlas_texture(int width, int height, int num_components, int num_mip_levels, ByteBuffer texture_data) {
+            this(width, height, num_components, num_mip_levels, BlockCompression.Format.NONE, texture_data);
+        }
+
+        /**
+         * Creates an atlas texture with mipmaps that may be block compressed. Every level is in the given format
+         */
+        public mc_atlas_texture(int width, int height, int num_components, int num_mip_levels, BlockCompression.Format format, ByteBuffer texture_data) {
             this.width = width;
             this.height = height;
             this.num_components = num_components;
-            this.texture_data = new Memory(width * height * num_components * Native.getNativeSize(Byte.TYPE));
-
-            for(int i = 0; i < width * height * num_components; i++) {
-                this.texture_data.setByte(i, texture_data[i]);
+            this.num_mip_levels = num_mip_levels;
+            this.format = format.ordinal();
+
+            if(texture_data.isDirect()) {
+                this.texture_data = Native.getDirectBufferPointer(texture_data);
+            } else {
+                int size = BlockCompression.getChainSize(format, width, height, num_components, num_mip_levels);
+                Memory memory = new Memory(size * Native.getNativeSize(Byte.TYPE));
+                memory.write(0, texture_data.array(), texture_data.arrayOffset(), size);
+                this.texture_data = memory;
             }
         }
 
         @Override
         public List<String> getFieldOrder() {
-            return Arrays.asList("width", "height", "num_components", "texture_data");
+            return Arrays.asList("width", "height", "num_components", "num_mip_levels", "format", "texture_data");
         }
     }
 
     class mc_texture_atlas_location extends Structure {
         public String name;
+        public int id;  // From TextureRegistry
         public float min_u;
         public float max_u;
         public float min_v;
         public float max_v;
 
-        public mc_texture_atlas_location(String name, float min_u, float min_v, float max_u, float max_v) {
+        public mc_texture_atlas_location(String name, int id, float min_u, float min_v, float max_u, float max_v) {
             this.name = name;
+            this.id = id;
             this.min_u = min_u;
             this.max_u = max_u;
             this.min_v = min_v;
@@ -50,29 +92,31 @@ public interface NovaNative extends Library {
 
         @Override
         public List<String> getFieldOrder() {
-            return Arrays.asList("name", "min_u", "max_u", "min_v", "max_v");
+            return Arrays.asList("name", "id", "min_u", "max_u", "min_v", "max_v");
         }
     }
 
-    class mc_block extends Structure {
-        public boolean is_on_fire;
-        public int block_id;
+    /**
+     * One 16x16x16 section of a chunk, with its blocks palette-packed into a single buffer. See
+     * {@link com.continuum.nova.utils.ChunkSection} for the layout of the data
+     */
+    class mc_chunk_section extends Structure {
+        public int section_x;
+        public int section_y;
+        public int section_z;
 
-        @Override
-        public List<String> getFieldOrder() {
-            return Arrays.asList("is_on_fire", "block_id");
-        }
-    }
+        public int bits_per_block;
+        public int palette_size;
+        public int data_size;
+        public Pointer data;
 
-    class mc_chunk extends Structure {
-        public long chunk_id;
-
-        public boolean is_dirty;
-        public mc_block[] blocks = new mc_block[16 * 16 * 16];
+        public int vertex_buffer_size;
+        public Pointer vertex_buffer; // float[], see GreedyMesher for the layout. Null if the section has no mesh
 
         @Override
-        public List<String> getFieldOrder() {
-            return Arrays.asList("chunk_id", "is_dirty", "blocks");
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("section_x", "section_y", "section_z", "bits_per_block", "palette_size", "data_size", "data",
+                    "vertex_buffer_size", "vertex_buffer");
         }
     }
 
@@ -114,10 +158,16 @@ public interface NovaNative extends Library {
         public double camera_y;
         public double camera_z;
 
+        /**
+         * Which way the camera faces, in degrees, the same way Minecraft's entities store it
+         */
+        public double camera_yaw;
+        public double camera_pitch;
+
         @Override
         protected List<String> getFieldOrder() {
             return Arrays.asList(
-                    "camera_x", "camera_y", "camera_z"
+                    "camera_x", "camera_y", "camera_z", "camera_yaw", "camera_pitch"
             );
         }
     }
@@ -151,19 +201,6 @@ public interface NovaNative extends Library {
         }
     }
 
-    class mc_add_chunk_command extends Structure {
-        public mc_chunk new_chunk;
-
-        public float chunk_x;
-        public float chunk_y;
-        public float chunk_z;
-
-        @Override
-        protected List<String> getFieldOrder() {
-            return Arrays.asList("new_chunk", "chunk_x", "chunk_y", "chunk_z");
-        }
-    }
-
     class mc_set_gui_screen_command extends Structure {
         public mc_gui_screen screen;
 
@@ -174,7 +211,7 @@ public interface NovaNative extends Library {
     }
 
     class mc_gui_send_buffer_command extends Structure {
-        public String texture_name;
+        public int texture_id;
         public int index_buffer_size;
         public int vertex_buffer_size;
         public Pointer index_buffer; // int[]
@@ -182,49 +219,39 @@ public interface NovaNative extends Library {
 
         @Override
         protected List<String> getFieldOrder() {
-            return Arrays.asList("texture_name", "index_buffer_size", "vertex_buffer_size", "index_buffer", "vertex_buffer");
+            return Arrays.asList("texture_id", "index_buffer_size", "vertex_buffer_size", "index_buffer", "vertex_buffer");
         }
     }
 
-    class mouse_button_event extends Structure implements Structure.ByValue {
-        public int button;
-        public int action;
-        public int mods;
-        public int filled;
-        @Override
-        protected List<String> getFieldOrder() {
-            return Arrays.asList("button", "action", "mods","filled");
-        }
-    }
+    /**
+     * Every GUI batch of a screen in one block of native memory. The block starts with num_batches headers of five
+     * ints each (texture_id, index_offset, index_count, vertex_offset, vertex_count), followed by all the indices and
+     * then all the vertices. The offsets in the headers are in ints/floats from the start of the index/vertex data.
+     */
+    class mc_gui_send_buffers_command extends Structure {
+        public int num_batches;
+        public int index_data_offset; // in bytes from the start of data
+        public int vertex_data_offset; // in bytes from the start of data
+        public Pointer data;
 
-    class mouse_position_event extends Structure implements Structure.ByValue {
-        public int xpos;
-        public int ypos;
-        public int filled;
         @Override
         protected List<String> getFieldOrder() {
-            return Arrays.asList("xpos", "ypos","filled");
+            return Arrays.asList("num_batches", "index_data_offset", "vertex_data_offset", "data");
         }
     }
 
-    class key_press_event extends Structure implements Structure.ByValue {
-        public int key;
-        public int scancode;
-        public int action;
-        public int mods;
-        public int filled;
-        @Override
-        protected List<String> getFieldOrder() {
-            return Arrays.asList("key", "scancode", "action","mods","filled");
-        }
-    }
+    class mc_gui_update_buffer_range_command extends Structure {
+        public int texture_id;
+        public int index_offset;
+        public int index_count;
+        public int vertex_offset;
+        public int vertex_count;
+        public Pointer index_buffer; // int[], the whole buffer. The native code reads from index_offset
+        public Pointer vertex_buffer; // float[], the whole buffer. The native code reads from vertex_offset
 
-    class key_char_event extends Structure implements Structure.ByValue {
-        public long unicode_char;
-        public int filled;
         @Override
         protected List<String> getFieldOrder() {
-            return Arrays.asList("unicode_char","filled");
+            return Arrays.asList("texture_id", "index_offset", "index_count", "vertex_offset", "vertex_count", "index_buffer", "vertex_buffer");
         }
     }
 
@@ -265,13 +292,33 @@ public interface NovaNative extends Library {
 
     void send_gui_buffer_command(mc_gui_send_buffer_command command);
 
-    mouse_button_event get_next_mouse_button_event();
-
-    mouse_position_event get_next_mouse_position_event();
-
-    key_press_event get_next_key_press_event();
-
-    key_char_event get_next_key_char_event();
+    void send_gui_buffers_command(mc_gui_send_buffers_command command);
+
+    void update_gui_buffer_range(mc_gui_update_buffer_range_command command);
+
+    void add_chunk_section(mc_chunk_section section);
+
+    void remove_chunk_section(int section_x, int section_y, int section_z);
+
+    /**
+     * Copies the queued mouse events, oldest first, into a buffer. See {@link com.continuum.nova.input.Mouse} for the
+     * layout of each event
+     *
+     * @param events Where to put the events
+     * @param max_events How many events fit in the buffer. Any more stay queued for the next call
+     * @return How many events were copied
+     */
+    int drain_mouse_events(Pointer events, int max_events);
+
+    /**
+     * Copies the queued keyboard events, oldest first, into a buffer. See {@link com.continuum.nova.input.Keyboard}
+     * for the layout of each event
+     *
+     * @param events Where to put the events
+     * @param max_events How many events fit in the buffer. Any more stay queued for the next call
+     * @return How many events were copied
+     */
+    int drain_key_events(Pointer events, int max_events);
 
     void clear_gui_buffers();
 
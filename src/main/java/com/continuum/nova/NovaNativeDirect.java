@@ -0,0 +1,163 @@
+package com.continuum.nova;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Direct-mapped binding to the native code.
+ * <p>
+ * The interface-mapped binding that {@link Native#loadLibrary(String, Class)} hands back dispatches every call through
+ * a reflective proxy, which is a lot of overhead for the functions we call every frame (execute_frame, should_close and
+ * all the input polling). This class registers static native methods with {@link Native#register(Class, String)} so
+ * calls go straight through JNI instead, and then exposes them through the {@link NovaNative} interface so the rest of
+ * the code doesn't care which binding it talks to.
+ * <p>
+ * Use the system property {@code nova.native.binding} to pick a binding at startup: {@code direct} (the default) uses
+ * this class, {@code interface} uses the old proxy-based binding. Either one can be wrapped in
+ * {@link NovaNativePipelined} to run the native code on a render thread of its own, except on macOS.
+ */
+final class NovaNativeDirect implements NovaNative {
+    static final String BINDING_PROPERTY = "nova.native.binding";
+
+    /**
+     * Creates whichever binding the {@code nova.native.binding} system property asks for
+     *
+     * @return The binding that all native calls should go through
+     */
+    static NovaNative load() {
+        String binding = System.getProperty(BINDING_PROPERTY, "direct");
+        NovaNative natives;
+        if(binding.equalsIgnoreCase("interface")) {
+            natives = (NovaNative) Native.loadLibrary("nova-renderer", NovaNative.class);
+        } else {
+            natives = new NovaNativeDirect();
+        }
+
+        if(Boolean.getBoolean(NovaNativePipelined.PIPELINE_PROPERTY) && NovaNativePipelined.isSupported()) {
+            return new NovaNativePipelined(natives);
+        }
+        return natives;
+    }
+
+    @Override
+    public void initialize() {
+        Natives.initialize();
+    }
+
+    @Override
+    public void execute_frame() {
+        Natives.execute_frame();
+    }
+
+    @Override
+    public void add_texture(mc_atlas_texture texture, int texture_type) {
+        Natives.add_texture(texture, texture_type);
+    }
+
+    @Override
+    public void add_texture_location(mc_texture_atlas_location location) {
+        Natives.add_texture_location(location);
+    }
+
+    @Override
+    public int get_max_texture_size() {
+        return Natives.get_max_texture_size();
+    }
+
+    @Override
+    public void reset_texture_manager() {
+        Natives.reset_texture_manager();
+    }
+
+    @Override
+    public boolean should_close() {
+        return Natives.should_close();
+    }
+
+    @Override
+    public void send_change_gui_screen_command(mc_set_gui_screen_command set_gui_screen) {
+        Natives.send_change_gui_screen_command(set_gui_screen);
+    }
+
+    @Override
+    public void send_gui_buffer_command(mc_gui_send_buffer_command command) {
+        Natives.send_gui_buffer_command(command);
+    }
+
+    @Override
+    public void send_gui_buffers_command(mc_gui_send_buffers_command command) {
+        Natives.send_gui_buffers_command(command);
+    }
+
+    @Override
+    public void update_gui_buffer_range(mc_gui_update_buffer_range_command command) {
+        Natives.update_gui_buffer_range(command);
+    }
+
+    @Override
+    public void add_chunk_section(mc_chunk_section section) {
+        Natives.add_chunk_section(section);
+    }
+
+    @Override
+    public void remove_chunk_section(int section_x, int section_y, int section_z) {
+        Natives.remove_chunk_section(section_x, section_y, section_z);
+    }
+
+    @Override
+    public int drain_mouse_events(Pointer events, int max_events) {
+        return Natives.drain_mouse_events(events, max_events);
+    }
+
+    @Override
+    public int drain_key_events(Pointer events, int max_events) {
+        return Natives.drain_key_events(events, max_events);
+    }
+
+    @Override
+    public void clear_gui_buffers() {
+        Natives.clear_gui_buffers();
+    }
+
+    /**
+     * Holds the actual native methods. They live in their own class because a static method can't share a signature
+     * with the instance method that implements the interface.
+     */
+    private static final class Natives {
+        static {
+            Native.register(Natives.class, "nova-renderer");
+        }
+
+        static native void initialize();
+
+        static native void execute_frame();
+
+        static native void add_texture(mc_atlas_texture texture, int texture_type);
+
+        static native void add_texture_location(mc_texture_atlas_location location);
+
+        static native int get_max_texture_size();
+
+        static native void reset_texture_manager();
+
+        static native boolean should_close();
+
+        static native void send_change_gui_screen_command(mc_set_gui_screen_command set_gui_screen);
+
+        static native void send_gui_buffer_command(mc_gui_send_buffer_command command);
+
+        static native void send_gui_buffers_command(mc_gui_send_buffers_command command);
+
+        static native void update_gui_buffer_range(mc_gui_update_buffer_range_command command);
+
+        static native void add_chunk_section(mc_chunk_section section);
+
+        static native void remove_chunk_section(int section_x, int section_y, int section_z);
+
+        static native int drain_mouse_events(Pointer events, int max_events);
+
+        static native int drain_key_events(Pointer events, int max_events);
+
+        static native void clear_gui_buffers();
+    }
+}
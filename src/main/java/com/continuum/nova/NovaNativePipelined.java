@@ -0,0 +1,656 @@
+package com.continuum.nova;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Binding that runs the native code on a render thread of its own, so Minecraft's client thread doesn't have to wait
+ * for the native code to draw a frame before it can get on with the next one.
+ * <p>
+ * The calls the client thread makes during a frame (chunk sections, GUI buffers) aren't run straight away. They're
+ * recorded into a frame packet, along with a copy of every buffer they point at, so the client thread can reuse its
+ * buffers right away. {@link #execute_frame()} hands the packet to the render thread, which replays the calls and then
+ * renders the frame. Once a packet is handed over, the client thread never touches it again until the render thread is
+ * done with it.
+ * <p>
+ * At most {@code nova.render.framesInFlight} frames, 2 by default, can be waiting or rendering at once. Past that,
+ * {@link #execute_frame()} blocks until the render thread catches up. How often and for how long it blocks is what
+ * {@link #getFramesBlocked()} and {@link #getBlockedNanos()} report. If they keep growing, the native code is the
+ * bottleneck.
+ * <p>
+ * Some calls aren't recorded, because they return something or hand over big one-off data like textures. Those calls
+ * wait for the render thread to finish everything queued before them, run on the render thread, and return its
+ * result. {@link #should_close()} doesn't wait. It returns what the render thread saw after the last frame it rendered.
+ * The input drains are thread safe in the native code, so they go straight through and input never queues up behind
+ * frames.
+ * <p>
+ * The GL context belongs to the thread that initializes the native code, which is why {@link #initialize()} starts the
+ * render thread and initializes the native code on it. That moves GLFW onto the render thread too: initializing it,
+ * creating the window and polling for events. GLFW documents those as main thread only. Windows and X11 cope as long as
+ * it's always the same thread, but macOS doesn't, so this binding isn't used there. See {@link #isSupported()}.
+ * <p>
+ * If the render thread dies, for instance from a JNA error after the native code touched bad memory, every call that
+ * would wait for it throws an {@link IllegalStateException} with the cause, instead of waiting forever.
+ * <p>
+ * Set the system property {@code nova.render.thread} to true to use this binding. Every call except the input drains
+ * has to come from the same thread, normally the client thread.
+ */
+public final class NovaNativePipelined implements NovaNative {
+    static final String PIPELINE_PROPERTY = "nova.render.thread";
+    static final String FRAMES_IN_FLIGHT_PROPERTY = "nova.render.framesInFlight";
+
+    private static final Logger LOG = LogManager.getLogger(NovaNativePipelined.class);
+
+    private static final int DEFAULT_FRAMES_IN_FLIGHT = 2;
+
+    /**
+     * How many frames to submit between logging the stats
+     */
+    private static final int STATS_INTERVAL = 1000;
+
+    /**
+     * The recorded calls, each one an op followed by its arguments. Offsets are in bytes from the start of the packet's
+     * data, or -1 for a null pointer
+     */
+    private static final int OP_ADD_CHUNK_SECTION = 0;      // x, y, z, bits per block, palette size, data size, data offset, vertex floats, vertex offset
+    private static final int OP_REMOVE_CHUNK_SECTION = 1;   // x, y, z
+    private static final int OP_SEND_GUI_BUFFER = 2;        // texture ID, index count, vertex float count, index offset, vertex offset
+    private static final int OP_SEND_GUI_BUFFERS = 3;       // batches, index data offset, vertex data offset, data offset
+    private static final int OP_UPDATE_GUI_BUFFER_RANGE = 4; // texture ID, index offset, index count, vertex offset, vertex count, index data offset, vertex data offset
+    private static final int OP_CLEAR_GUI_BUFFERS = 5;
+
+    private final NovaNative natives;
+    private final int maxFramesInFlight;
+
+    /**
+     * One permit per frame that may be in flight. The client thread takes one for each frame it submits and the render
+     * thread gives it back once the frame is rendered
+     */
+    private final Semaphore frameSlots;
+
+    /**
+     * Frame packets and waiting calls, run in order by the render thread
+     */
+    private final BlockingQueue<Runnable> work = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<FramePacket> freePackets = new ConcurrentLinkedQueue<>();
+    private final Thread renderThread;
+
+    /**
+     * The packet the current frame's calls go into. Only used by the client thread
+     */
+    private FramePacket recording;
+
+    private volatile boolean shouldClose;
+
+    /**
+     * Whatever killed the render thread, or null while it's running
+     */
+    private volatile Throwable failure;
+
+    private volatile long framesSubmitted;
+    private volatile long framesBlocked;
+    private volatile long blockedNanos;
+    private volatile long framesRendered;
+    private volatile long renderNanos;
+
+    /**
+     * Reused for every replayed call, only touched by the render thread
+     */
+    private final mc_chunk_section sectionCommand = new mc_chunk_section();
+    private final mc_gui_send_buffer_command bufferCommand = new mc_gui_send_buffer_command();
+    private final mc_gui_send_buffers_command buffersCommand = new mc_gui_send_buffers_command();
+    private final mc_gui_update_buffer_range_command rangeCommand = new mc_gui_update_buffer_range_command();
+
+    /**
+     * @param natives The binding that actually calls the native code. Only the render thread uses it, apart from the
+     *                input drains
+     */
+    NovaNativePipelined(NovaNative natives) {
+        this.natives = natives;
+        maxFramesInFlight = Math.max(1, Integer.getInteger(FRAMES_IN_FLIGHT_PROPERTY, DEFAULT_FRAMES_IN_FLIGHT));
+        frameSlots = new Semaphore(maxFramesInFlight);
+
+        renderThread = new Thread(this::runRenderThread, "Nova render thread");
+        renderThread.setDaemon(true);
+    }
+
+    /**
+     * @return False on platforms where GLFW can't leave the main thread, after logging why
+     */
+    static boolean isSupported() {
+        String os = System.getProperty("os.name", "");
+        if(os.toLowerCase(Locale.ROOT).startsWith("mac")) {
+            LOG.error(PIPELINE_PROPERTY + " is set, but GLFW only works on the main thread on macOS. Running the native code on the client thread instead");
+            return false;
+        }
+        return true;
+    }
+
+    private void runRenderThread() {
+        try {
+            while(true) {
+                work.take().run();
+            }
+
+        } catch(InterruptedException e) {
+            LOG.warn("Render thread interrupted, stopping");
+            die(e);
+
+        } catch(Throwable t) {
+            // Errors, like JNA's invalid memory access, mean the native code can't be trusted any more
+            LOG.error("The render thread died", t);
+            die(t);
+        }
+    }
+
+    /**
+     * Makes sure nothing waits for the render thread once it's gone. Runs on the render thread as it stops
+     */
+    private void die(Throwable cause) {
+        failure = cause;
+
+        // Calls added after this see the failure themselves
+        Runnable waiting;
+        while((waiting = work.poll()) != null) {
+            if(waiting instanceof FutureTask) {
+                ((FutureTask<?>) waiting).cancel(false);
+            }
+        }
+
+        // Wakes up execute_frame if it's blocked, so it can throw
+        frameSlots.release(maxFramesInFlight);
+    }
+
+    /**
+     * @throws IllegalStateException If the render thread has died
+     */
+    private void checkRenderThread() {
+        Throwable cause = failure;
+        if(cause != null) {
+            throw new IllegalStateException("The render thread has died", cause);
+        }
+    }
+
+    /**
+     * @return How many frames can be waiting or rendering at once before {@link #execute_frame()} blocks
+     */
+    public int getMaxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    /**
+     * @return How many frames are waiting or rendering right now
+     */
+    public int getFramesInFlight() {
+        return maxFramesInFlight - frameSlots.availablePermits();
+    }
+
+    public long getFramesSubmitted() {
+        return framesSubmitted;
+    }
+
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /**
+     * @return How many times {@link #execute_frame()} had to wait for the render thread because too many frames were
+     * in flight
+     */
+    public long getFramesBlocked() {
+        return framesBlocked;
+    }
+
+    /**
+     * @return How long {@link #execute_frame()} has spent waiting for the render thread, in total
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * @return How long the render thread has spent replaying and rendering frames, in total
+     */
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+
+    @Override
+    public void initialize() {
+        renderThread.start();
+        callAndWait(() -> {
+            natives.initialize();
+            shouldClose = natives.should_close();
+            return null;
+        });
+    }
+
+    @Override
+    public void execute_frame() {
+        FramePacket packet = getRecording();
+        recording = null;
+        packet.endsFrame = true;
+        checkRenderThread();
+
+        if(!frameSlots.tryAcquire()) {
+            long startTime = System.nanoTime();
+            frameSlots.acquireUninterruptibly();
+            framesBlocked++;
+            blockedNanos += System.nanoTime() - startTime;
+        }
+
+        // The render thread might have let us through by dying
+        checkRenderThread();
+
+        work.add(packet);
+        framesSubmitted++;
+
+        if(framesSubmitted % STATS_INTERVAL == 0) {
+            logStats();
+        }
+    }
+
+    private void logStats() {
+        long submitted = framesSubmitted;
+        long rendered = framesRendered;
+        LOG.debug(String.format("Submitted %d frames, %d blocked for %.3f ms on average. Rendering took %.3f ms per frame",
+                submitted, framesBlocked, framesBlocked == 0 ? 0 : blockedNanos / 1e6 / framesBlocked,
+                rendered == 0 ? 0 : renderNanos / 1e6 / rendered));
+    }
+
+    @Override
+    public boolean should_close() {
+        return shouldClose;
+    }
+
+    @Override
+    public void add_texture(mc_atlas_texture texture, int texture_type) {
+        callAndWait(() -> {
+            natives.add_texture(texture, texture_type);
+            return null;
+        });
+    }
+
+    @Override
+    public void add_texture_location(mc_texture_atlas_location location) {
+        callAndWait(() -> {
+            natives.add_texture_location(location);
+            return null;
+        });
+    }
+
+    @Override
+    public int get_max_texture_size() {
+        return callAndWait(natives::get_max_texture_size);
+    }
+
+    @Override
+    public void reset_texture_manager() {
+        callAndWait(() -> {
+            natives.reset_texture_manager();
+            return null;
+        });
+    }
+
+    @Override
+    public void send_change_gui_screen_command(mc_set_gui_screen_command set_gui_screen) {
+        callAndWait(() -> {
+            natives.send_change_gui_screen_command(set_gui_screen);
+            return null;
+        });
+    }
+
+    @Override
+    public void send_gui_buffer_command(mc_gui_send_buffer_command command) {
+        FramePacket packet = getRecording();
+        int indexOffset = packet.copy(command.index_buffer, 0, (long) command.index_buffer_size * Integer.BYTES);
+        int vertexOffset = packet.copy(command.vertex_buffer, 0, (long) command.vertex_buffer_size * Float.BYTES);
+
+        packet.put(OP_SEND_GUI_BUFFER);
+        packet.put(command.texture_id);
+        packet.put(command.index_buffer_size);
+        packet.put(command.vertex_buffer_size);
+        packet.put(indexOffset);
+        packet.put(vertexOffset);
+    }
+
+    @Override
+    public void send_gui_buffers_command(mc_gui_send_buffers_command command) {
+        // The command doesn't say how big its block is, but the batch headers do
+        int numVertexFloats = 0;
+        for(int i = 0; i < command.num_batches; i++) {
+            int header = i * 5 * Integer.BYTES;
+            int vertexOffset = command.data.getInt(header + 3 * Integer.BYTES);
+            int vertexCount = command.data.getInt(header + 4 * Integer.BYTES);
+            numVertexFloats = Math.max(numVertexFloats, vertexOffset + vertexCount);
+        }
+
+        FramePacket packet = getRecording();
+        int dataOffset = packet.copy(command.data, 0, command.vertex_data_offset + (long) numVertexFloats * Float.BYTES);
+
+        packet.put(OP_SEND_GUI_BUFFERS);
+        packet.put(command.num_batches);
+        packet.put(command.index_data_offset);
+        packet.put(command.vertex_data_offset);
+        packet.put(dataOffset);
+    }
+
+    @Override
+    public void update_gui_buffer_range(mc_gui_update_buffer_range_command command) {
+        // Only the range gets copied, not the whole buffer
+        FramePacket packet = getRecording();
+        int indexOffset = packet.copy(command.index_buffer, (long) command.index_offset * Integer.BYTES,
+                (long) command.index_count * Integer.BYTES);
+        int vertexOffset = packet.copy(command.vertex_buffer, (long) command.vertex_offset * Float.BYTES,
+                (long) command.vertex_count * Float.BYTES);
+
+        packet.put(OP_UPDATE_GUI_BUFFER_RANGE);
+        packet.put(command.texture_id);
+        packet.put(command.index_offset);
+        packet.put(command.index_count);
+        packet.put(command.vertex_offset);
+        packet.put(command.vertex_count);
+        packet.put(indexOffset);
+        packet.put(vertexOffset);
+    }
+
+    @Override
+    public void add_chunk_section(mc_chunk_section section) {
+        FramePacket packet = getRecording();
+        int dataOffset = packet.copy(section.data, 0, section.data_size);
+        int vertexOffset = packet.copy(section.vertex_buffer, 0, (long) section.vertex_buffer_size * Float.BYTES);
+
+        packet.put(OP_ADD_CHUNK_SECTION);
+        packet.put(section.section_x);
+        packet.put(section.section_y);
+        packet.put(section.section_z);
+        packet.put(section.bits_per_block);
+        packet.put(section.palette_size);
+        packet.put(section.data_size);
+        packet.put(dataOffset);
+        packet.put(section.vertex_buffer_size);
+        packet.put(vertexOffset);
+    }
+
+    @Override
+    public void remove_chunk_section(int section_x, int section_y, int section_z) {
+        FramePacket packet = getRecording();
+        packet.put(OP_REMOVE_CHUNK_SECTION);
+        packet.put(section_x);
+        packet.put(section_y);
+        packet.put(section_z);
+    }
+
+    @Override
+    public void clear_gui_buffers() {
+        getRecording().put(OP_CLEAR_GUI_BUFFERS);
+    }
+
+    @Override
+    public int drain_mouse_events(Pointer events, int max_events) {
+        return natives.drain_mouse_events(events, max_events);
+    }
+
+    @Override
+    public int drain_key_events(Pointer events, int max_events) {
+        return natives.drain_key_events(events, max_events);
+    }
+
+    private FramePacket getRecording() {
+        if(recording == null) {
+            recording = freePackets.poll();
+            if(recording == null) {
+                recording = new FramePacket();
+            }
+        }
+
+        return recording;
+    }
+
+    /**
+     * Runs a call on the render thread once everything before it has run, and waits for it to finish
+     */
+    private <T> T callAndWait(Callable<T> call) {
+        checkRenderThread();
+
+        // Whatever this frame recorded so far has to happen first
+        if(recording != null && !recording.isEmpty()) {
+            recording.endsFrame = false;
+            work.add(recording);
+            recording = null;
+        }
+
+        FutureTask<T> task = new FutureTask<>(call);
+        work.add(task);
+        if(failure != null) {
+            // The render thread died after the check above, and might not have seen the task
+            task.cancel(false);
+        }
+
+        try {
+            return task.get();
+
+        } catch(CancellationException e) {
+            // Only die() cancels tasks
+            checkRenderThread();
+            throw e;
+
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the render thread", e);
+
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Native call failed on the render thread", cause);
+        }
+    }
+
+    /**
+     * Replays a packet's calls and renders its frame, if it ends one. Runs on the render thread
+     */
+    private void replay(FramePacket packet) {
+        long startTime = System.nanoTime();
+        try {
+            int[] ops = packet.ops;
+            int i = 0;
+            while(i < packet.numOps) {
+                switch(ops[i++]) {
+                    case OP_ADD_CHUNK_SECTION:
+                        sectionCommand.section_x = ops[i++];
+                        sectionCommand.section_y = ops[i++];
+                        sectionCommand.section_z = ops[i++];
+                        sectionCommand.bits_per_block = ops[i++];
+                        sectionCommand.palette_size = ops[i++];
+                        sectionCommand.data_size = ops[i++];
+                        sectionCommand.data = packet.getPointer(ops[i++]);
+                        sectionCommand.vertex_buffer_size = ops[i++];
+                        sectionCommand.vertex_buffer = packet.getPointer(ops[i++]);
+                        natives.add_chunk_section(sectionCommand);
+                        break;
+
+                    case OP_REMOVE_CHUNK_SECTION:
+                        natives.remove_chunk_section(ops[i], ops[i + 1], ops[i + 2]);
+                        i += 3;
+                        break;
+
+                    case OP_SEND_GUI_BUFFER:
+                        bufferCommand.texture_id = ops[i++];
+                        bufferCommand.index_buffer_size = ops[i++];
+                        bufferCommand.vertex_buffer_size = ops[i++];
+                        bufferCommand.index_buffer = packet.getPointer(ops[i++]);
+                        bufferCommand.vertex_buffer = packet.getPointer(ops[i++]);
+                        natives.send_gui_buffer_command(bufferCommand);
+                        break;
+
+                    case OP_SEND_GUI_BUFFERS:
+                        buffersCommand.num_batches = ops[i++];
+                        buffersCommand.index_data_offset = ops[i++];
+                        buffersCommand.vertex_data_offset = ops[i++];
+                        buffersCommand.data = packet.getPointer(ops[i++]);
+                        natives.send_gui_buffers_command(buffersCommand);
+                        break;
+
+                    case OP_UPDATE_GUI_BUFFER_RANGE:
+                        rangeCommand.texture_id = ops[i++];
+                        rangeCommand.index_offset = ops[i++];
+                        rangeCommand.index_count = ops[i++];
+                        rangeCommand.vertex_offset = ops[i++];
+                        rangeCommand.vertex_count = ops[i++];
+
+                        // The native code reads from index_offset and vertex_offset into the buffers, and only the
+                        // range was copied, so point that far before the copy
+                        rangeCommand.index_buffer = packet.getPointer(ops[i++], -(long) rangeCommand.index_offset * Integer.BYTES);
+                        rangeCommand.vertex_buffer = packet.getPointer(ops[i++], -(long) rangeCommand.vertex_offset * Float.BYTES);
+                        natives.update_gui_buffer_range(rangeCommand);
+                        break;
+
+                    case OP_CLEAR_GUI_BUFFERS:
+                        natives.clear_gui_buffers();
+                        break;
+
+                    default:
+                        throw new IllegalStateException("Unknown op " + ops[i - 1] + " in frame packet");
+                }
+            }
+
+            if(packet.endsFrame) {
+                natives.execute_frame();
+                shouldClose = natives.should_close();
+            }
+
+        } catch(RuntimeException e) {
+            LOG.error("Could not render a frame", e);
+
+        } catch(Error e) {
+            // This stops the render thread. Record it before the slot is given back, so an execute_frame waiting for
+            // the slot throws instead of queueing a frame nobody will render
+            failure = e;
+            throw e;
+
+        } finally {
+            if(packet.endsFrame) {
+                renderNanos += System.nanoTime() - startTime;
+                framesRendered++;
+                frameSlots.release();
+            }
+
+            packet.clear();
+            freePackets.add(packet);
+        }
+    }
+
+    /**
+     * The calls the client thread made during one frame, with copies of all the data they point at. Packets are reused
+     * from frame to frame, so their buffers only grow until they're big enough for a typical frame
+     */
+    private final class FramePacket implements Runnable {
+        private int[] ops = new int[256];
+        private int numOps;
+
+        private ByteBuffer data = newData(64 * 1024);
+        private Pointer dataPointer = Native.getDirectBufferPointer(data);
+        private int dataSize;
+
+        /**
+         * True if the render thread should render a frame after replaying the calls. False for the calls that had to
+         * be sent early because something needed to wait for the render thread
+         */
+        private boolean endsFrame;
+
+        @Override
+        public void run() {
+            replay(this);
+        }
+
+        void put(int value) {
+            if(numOps == ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[numOps++] = value;
+        }
+
+        /**
+         * Copies some native memory into the packet. Every copy starts on an eight byte boundary
+         *
+         * @return Where the copy starts in the packet's data, or -1 if the source is null
+         */
+        int copy(Pointer source, long sourceOffset, long bytes) {
+            if(source == null) {
+                return -1;
+            }
+
+            int offset = (dataSize + 7) & ~7;
+            ensureDataCapacity(offset + (int) bytes);
+
+            data.clear();
+            data.position(offset);
+            data.put(source.getByteBuffer(sourceOffset, bytes));
+            dataSize = offset + (int) bytes;
+            return offset;
+        }
+
+        /**
+         * @param offset An offset from {@link #copy(Pointer, long, long)}
+         * @return A pointer to that offset in the packet's data, or null for -1
+         */
+        Pointer getPointer(int offset) {
+            return getPointer(offset, 0);
+        }
+
+        Pointer getPointer(int offset, long adjustment) {
+            return offset < 0 ? null : dataPointer.share(offset + adjustment);
+        }
+
+        boolean isEmpty() {
+            return numOps == 0;
+        }
+
+        void clear() {
+            numOps = 0;
+            dataSize = 0;
+            endsFrame = false;
+        }
+
+        /**
+         * Grows the data buffer if needed. Offsets stay valid, only the pointer changes, which is why pointers into
+         * the data are only made once the packet gets replayed
+         */
+        private void ensureDataCapacity(int bytes) {
+            if(data.capacity() >= bytes) {
+                return;
+            }
+
+            ByteBuffer grown = newData(Math.max(data.capacity() * 2, bytes));
+            data.clear();
+            data.limit(dataSize);
+            grown.put(data);
+
+            data = grown;
+            dataPointer = Native.getDirectBufferPointer(data);
+        }
+
+        private ByteBuffer newData(int bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+}
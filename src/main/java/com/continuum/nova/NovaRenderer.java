@@ -1,6 +1,13 @@
 package com.continuum.nova;
 
+import com.continuum.nova.chunks.BlockTextures;
+import com.continuum.nova.chunks.ChunkSectionTracker;
+import com.continuum.nova.input.InputPump;
+import com.continuum.nova.utils.AtlasCache;
 import com.continuum.nova.utils.AtlasGenerator;
+import com.continuum.nova.utils.BlockCompression;
+import com.continuum.nova.utils.MipChain;
+import com.continuum.nova.utils.PixelSwizzle;
 import com.continuum.nova.utils.RenderCommandBuilder;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiScreen;
@@ -9,7 +16,10 @@ import net.minecraft.client.renderer.texture.TextureMap;
 import net.minecraft.client.resources.IResource;
 import net.minecraft.client.resources.IResourceManager;
 import net.minecraft.client.resources.IResourceManagerReloadListener;
+import net.minecraft.entity.Entity;
 import net.minecraft.util.ResourceLocation;
+import net.minecraft.world.World;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -17,12 +27,25 @@ import javax.annotation.Nonnull;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 public class NovaRenderer implements IResourceManagerReloadListener {
     public static final String MODID = "Nova Renderer";
@@ -34,8 +57,46 @@ public class NovaRenderer implements IResourceManagerReloadListener {
 
     private static final List<ResourceLocation> TERRAIN_ALBEDO_TEXTURES_LOCATIONS = new ArrayList<>();
 
+    /**
+     * Decodes textures and packs atlases during resource reloads. Bounded so a reload doesn't take every core away from
+     * the game. Nothing that runs on it may touch Minecraft's resource manager
+     */
+    private static final ForkJoinPool TEXTURE_DECODE_POOL = new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    /**
+     * How many mip levels to build for the packed atlases, including the full size one. Set it with the
+     * {@code nova.atlas.mipLevels} system property. The default of 1 means no mipmaps
+     */
+    private static final int ATLAS_MIP_LEVELS = Math.max(1, Integer.getInteger("nova.atlas.mipLevels", 1));
+
+    /**
+     * What to compress the packed atlases to. Set it with the {@code nova.atlas.compression} system property to one of
+     * none, bc1, bc3 or bc7. Atlases with transparency use bc3 when bc1 is asked for
+     */
+    private static final BlockCompression.Format ATLAS_COMPRESSION = readAtlasCompression();
+
+    /**
+     * Just wide enough that none of the mip levels bleed between textures. No mipmaps, no padding
+     */
+    private static final int ATLAS_PADDING = MipChain.getRequiredPadding(ATLAS_MIP_LEVELS);
+
+    /**
+     * Where packed atlases are kept between runs, relative to Minecraft's data directory
+     */
+    private static final String ATLAS_CACHE_DIRECTORY = "nova/atlas-cache";
+
+    private AtlasCache atlasCache;
+
     private boolean firstLoad = true;
 
+    private ChunkSectionTracker chunkTracker;
+
+    /**
+     * Made from the block models, which are only reloaded after us, so this is rebuilt on the first frame after a reload
+     */
+    private BlockTextures blockTextures;
+    private NovaNative.mc_render_world_params renderWorldParams = new NovaNative.mc_render_world_params();
+
     private TextureMap guiAtlas = new TextureMap("textures");
     private Map<ResourceLocation, TextureAtlasSprite> guiSpriteLocations = new HashMap<>();
 
@@ -54,6 +115,7 @@ public class NovaRenderer implements IResourceManagerReloadListener {
         }
 
         NovaNative.INSTANCE.reset_texture_manager();
+        blockTextures = null;
         int maxAtlasSize = NovaNative.INSTANCE.get_max_texture_size();
         addTextures(TERRAIN_ALBEDO_TEXTURES_LOCATIONS, NovaNative.TextureType.TERRAIN_COLOR, resourceManager, maxAtlasSize);
 
@@ -76,13 +138,18 @@ public class NovaRenderer implements IResourceManagerReloadListener {
             spriteLocations.put(location, textureAtlasSprite);
         }));
 
-        NovaNative.mc_atlas_texture guiAtlasTexture = getFullImage(atlas.getWidth(), atlas.getHeight(), spriteLocations.values());
+        ByteBuffer imageData = getFullImage(atlas.getWidth(), atlas.getHeight(), spriteLocations.values());
 
-        NovaNative.INSTANCE.add_texture(guiAtlasTexture, textureType.ordinal());
+        // Timed the same way as uploadAtlas, so the two can be compared
+        long startTime = System.nanoTime();
+        NovaNative.mc_atlas_texture atlasTexture = new NovaNative.mc_atlas_texture(atlas.getWidth(), atlas.getHeight(), 4, imageData);
+        NovaNative.INSTANCE.add_texture(atlasTexture, textureType.ordinal());
+        logUploadTime(textureType, atlas.getWidth(), atlas.getHeight(), startTime);
 
         for(TextureAtlasSprite sprite : spriteLocations.values()) {
             NovaNative.mc_texture_atlas_location location = new NovaNative.mc_texture_atlas_location(
                     sprite.getIconName(),
+                    TextureRegistry.intern(sprite.getIconName()),
                     sprite.getMinU(),
                     sprite.getMinV(),
                     sprite.getMaxU(),
@@ -93,103 +160,301 @@ public class NovaRenderer implements IResourceManagerReloadListener {
         }
     }
 
-    private NovaNative.mc_atlas_texture getFullImage(int atlasWidth, int atlasHeight, Collection<TextureAtlasSprite> sprites) {
-        byte[] imageData = new byte[atlasWidth * atlasHeight * 4];
-
-        for(TextureAtlasSprite sprite : sprites) {
-            LOG.debug("Looking at sprite " + sprite.getIconName());
-            int startY = sprite.getOriginY() * atlasWidth * 4;
-            int startPos = sprite.getOriginX() * 4 + startY;
-
-            int[] data = sprite.getFrameTextureData(0)[0];
-            for(int y = 0; y < sprite.getIconHeight(); y++) {
-                for(int x = 0; x < sprite.getIconWidth(); x++) {
-                    // Reverse the order of the color channels
-                    int pixel = data[y * sprite.getIconWidth() + x];
-
-                    byte red    = (byte)( pixel        & 0xFF);
-                    byte green  = (byte)((pixel >>  8) & 0xFF);
-                    byte blue   = (byte)((pixel >> 16) & 0xFF);
-                    byte alpha  = (byte)((pixel >> 24) & 0xFF);
-
-                    int imageDataBasePos = startPos + x * 4 + y * atlasWidth * 4;
-                    imageData[imageDataBasePos]     =blue ;
-                    imageData[imageDataBasePos + 1] = green;
-                    imageData[imageDataBasePos + 2] = red;
-                    imageData[imageDataBasePos + 3] = alpha;
+    private ByteBuffer getFullImage(int atlasWidth, int atlasHeight, Collection<TextureAtlasSprite> sprites) {
+        ByteBuffer imageData = ByteBuffer.allocateDirect(atlasWidth * atlasHeight * 4);
+
+        PixelSwizzle.forEachRowBand(atlasWidth, atlasHeight, (startRow, endRow) -> {
+            IntBuffer target = PixelSwizzle.target(imageData);
+            int[] scratch = new int[Math.max(atlasWidth, 1)];
+            for(TextureAtlasSprite sprite : sprites) {
+                int firstRow = Math.max(startRow, sprite.getOriginY());
+                int lastRow = Math.min(endRow, sprite.getOriginY() + sprite.getIconHeight());
+
+                int[] data = sprite.getFrameTextureData(0)[0];
+                for(int y = firstRow; y < lastRow; y++) {
+                    int spriteRow = y - sprite.getOriginY();
+                    int dstOffset = y * atlasWidth + sprite.getOriginX();
+                    PixelSwizzle.argbToRgba(data, spriteRow * sprite.getIconWidth(), target, dstOffset, sprite.getIconWidth(), scratch);
                 }
             }
-        }
+        });
 
-        return new NovaNative.mc_atlas_texture(
-                atlasWidth,
-                atlasHeight,
-                4,
-                imageData
-        );
+        return imageData;
     }
 
     private void addTextures(List<ResourceLocation> locations, NovaNative.TextureType textureType,  IResourceManager resourceManager, int maxAtlasSize) {
+        List<RawTexture> rawTextures = readTextures(locations, resourceManager);
+
+        List<String> names = new ArrayList<>(rawTextures.size());
+        List<byte[]> contents = new ArrayList<>(rawTextures.size());
+        for(RawTexture rawTexture : rawTextures) {
+            names.add(rawTexture.location.toString());
+            contents.add(rawTexture.data);
+        }
         AtlasGenerator gen = new AtlasGenerator();
-        List<AtlasGenerator.ImageName> images = new ArrayList<>();
+        String settings = textureType.name() + ":" + maxAtlasSize + ":" + ATLAS_PADDING + ":" + ATLAS_MIP_LEVELS + ":" + ATLAS_COMPRESSION + ":" + gen.getPacker().getName();
+        String cacheKey = AtlasCache.computeKey(settings, names, contents);
+
+        AtlasCache atlasCache = getAtlasCache();
+        List<AtlasCache.Entry> cachedAtlases = atlasCache.load(cacheKey);
+        if(cachedAtlases != null) {
+            for(AtlasCache.Entry atlas : cachedAtlases) {
+                uploadAtlas(atlas, textureType);
+            }
+            return;
+        }
 
-        for(ResourceLocation textureLocation : locations) {
-            try {
-                IResource texture = resourceManager.getResource(textureLocation);
-                BufferedInputStream in = new BufferedInputStream(texture.getInputStream());
-                BufferedImage image = ImageIO.read(in);
+        List<AtlasGenerator.ImageName> images = decodeTextures(rawTextures);
 
-                if(image != null) {
-                    images.add(new AtlasGenerator.ImageName(image, textureLocation.toString()));
-                }
-            } catch(IOException e) {
-                LOG.warn("IOException when loading texture " + textureLocation.toString(), e);
+        // Only the decoded images are needed from here on
+        rawTextures.clear();
+        contents.clear();
+
+        AtlasCache.Writer cacheWriter = atlasCache.beginStore(cacheKey);
+        boolean committed = false;
+        try {
+            if(streamAtlases(gen, images, maxAtlasSize, textureType, cacheWriter)) {
+                cacheWriter.commit();
+                committed = true;
+            }
+        } finally {
+            // Also when an upload throws, so the half-written entry doesn't sit on disk
+            if(!committed) {
+                cacheWriter.abort();
             }
         }
+    }
 
-        List<AtlasGenerator.Texture> atlases = gen.Run(maxAtlasSize, maxAtlasSize, 0, images);
-
-        for(AtlasGenerator.Texture texture : atlases) {
+    /**
+     * Packs the images on the decode pool, and composes and uploads each atlas on this thread as soon as it's packed. The
+     * next atlas gets packed while the last one uploads, and at most one packed atlas waits for its turn, so only a couple
+     * of atlases are ever in memory at once
+     *
+     * @return True if every atlas made it to the native code
+     */
+    private boolean streamAtlases(AtlasGenerator gen, List<AtlasGenerator.ImageName> images, int maxAtlasSize,
+                                  NovaNative.TextureType textureType, AtlasCache.Writer cacheWriter) {
+        BlockingQueue<AtlasGenerator.Texture> packedAtlases = new ArrayBlockingQueue<>(1);
+        AtomicBoolean stopPacking = new AtomicBoolean();
+
+        Future<?> packing = TEXTURE_DECODE_POOL.submit(() -> gen.Run(maxAtlasSize, maxAtlasSize, ATLAS_PADDING, images, atlas -> {
             try {
-                BufferedImage image = texture.getImage();
-                byte[] imageData = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-                LOG.info("The image has " + imageData.length + " separate pixels");
-
-                for(int i = 0; i < imageData.length; i += 4) {
-                    byte a = imageData[i];
-                    byte b = imageData[i + 1];
-                    byte g = imageData[i + 2];
-                    byte r = imageData[i + 3];
-                    imageData[i] = r;
-                    imageData[i + 1] = g;
-                    imageData[i + 2] = b;
-                    imageData[i + 3] = a;
+                while(!packedAtlases.offer(atlas, 100, TimeUnit.MILLISECONDS)) {
+                    if(stopPacking.get()) {
+                        throw new CancellationException("Nobody is uploading atlases anymore");
+                    }
                 }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while handing off an atlas");
+            }
+        }));
 
-                NovaNative.mc_atlas_texture atlasTex = new NovaNative.mc_atlas_texture(
-                        image.getWidth(),
-                        image.getHeight(),
-                        image.getColorModel().getNumComponents(),
-                        imageData
-                );
-                NovaNative.INSTANCE.add_texture(atlasTex, textureType.ordinal());
-                Map<String, Rectangle> rectangleMap = texture.getRectangleMap();
-
-                for(String texName : rectangleMap.keySet()) {
-                    Rectangle rect = rectangleMap.get(texName);
-                    NovaNative.mc_texture_atlas_location atlasLoc = new NovaNative.mc_texture_atlas_location(
-                            texName,
-                            rect.x / (float) image.getWidth(),
-                            rect.y / (float) image.getHeight(),
-                            rect.width / (float) image.getWidth(),
-                            rect.height / (float) image.getHeight()
-                    );
-                    NovaNative.INSTANCE.add_texture_location(atlasLoc);
+        try {
+            int atlasIndex = 0;
+            while(true) {
+                AtlasGenerator.Texture texture = packedAtlases.poll(100, TimeUnit.MILLISECONDS);
+                if(texture != null) {
+                    uploadPackedAtlas(texture, atlasIndex++, textureType, cacheWriter);
+                } else if(packing.isDone() && packedAtlases.isEmpty()) {
+                    break;
                 }
-            } catch(AtlasGenerator.Texture.WrongNumComponentsException e) {
-                LOG.error("Could not process a texture", e);
             }
+
+            packing.get();
+            return true;
+
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while loading textures", e);
+        } catch(ExecutionException e) {
+            LOG.error("Could not pack textures", e);
+        } finally {
+            stopPacking.set(true);
         }
+
+        return false;
+    }
+
+    /**
+     * Composes a freshly packed atlas, sends it to the native code and writes it to the atlas cache
+     */
+    private void uploadPackedAtlas(AtlasGenerator.Texture texture, int atlasIndex, NovaNative.TextureType textureType, AtlasCache.Writer cacheWriter) {
+        // Small atlases run out of levels before large ones do
+        int numMipLevels = Math.min(ATLAS_MIP_LEVELS, MipChain.getFullChainLength(texture.getWidth(), texture.getHeight()));
+        ByteBuffer pixels = texture.getPixels(numMipLevels);
+        if(AtlasGenerator.DUMP_ATLASES) {
+            texture.writeDebugImage(pixels, new File("atlas_" + textureType.name().toLowerCase() + "_" + atlasIndex + ".png"));
+        }
+
+        BlockCompression.Format format = BlockCompression.chooseFormat(ATLAS_COMPRESSION, pixels, texture.getWidth() * texture.getHeight());
+        if(format != BlockCompression.Format.NONE) {
+            long startTime = System.nanoTime();
+            pixels = BlockCompression.compress(pixels, texture.getWidth(), texture.getHeight(), numMipLevels, format);
+            LOG.info(String.format("Compressed atlas %d to %s in %.2f ms", atlasIndex, format, (System.nanoTime() - startTime) / 1e6));
+        }
+
+        AtlasCache.Entry atlas = new AtlasCache.Entry(
+                texture.getWidth(),
+                texture.getHeight(),
+                AtlasGenerator.Texture.NUM_COMPONENTS,
+                numMipLevels,
+                format,
+                pixels,
+                texture.getRectangleMap()
+        );
+        uploadAtlas(atlas, textureType);
+        cacheWriter.add(atlas);
+    }
+
+    /**
+     * Sends an atlas and the locations of all the textures in it to the native code
+     */
+    private void uploadAtlas(AtlasCache.Entry atlas, NovaNative.TextureType textureType) {
+        long startTime = System.nanoTime();
+        NovaNative.mc_atlas_texture atlasTex = new NovaNative.mc_atlas_texture(
+                atlas.width,
+                atlas.height,
+                atlas.numComponents,
+                atlas.numMipLevels,
+                atlas.format,
+                atlas.pixels
+        );
+        NovaNative.INSTANCE.add_texture(atlasTex, textureType.ordinal());
+        logUploadTime(textureType, atlas.width, atlas.height, startTime);
+
+        for(Map.Entry<String, Rectangle> entry : atlas.rectangles.entrySet()) {
+            String texName = entry.getKey();
+            Rectangle rect = entry.getValue();
+            int id = TextureRegistry.intern(texName);
+            float minU = rect.x / (float) atlas.width;
+            float minV = rect.y / (float) atlas.height;
+            float width = rect.width / (float) atlas.width;
+            float height = rect.height / (float) atlas.height;
+
+            NovaNative.mc_texture_atlas_location atlasLoc = new NovaNative.mc_texture_atlas_location(texName, id, minU, minV, width, height);
+            NovaNative.INSTANCE.add_texture_location(atlasLoc);
+            TextureRegistry.setAtlasLocation(id, minU, minV, width, height);
+        }
+    }
+
+    /**
+     * Logs how long it took to get an atlas to the native code. Per megapixel, so uploads of different sizes can be
+     * compared
+     */
+    private static void logUploadTime(NovaNative.TextureType textureType, int width, int height, long startTime) {
+        double millis = (System.nanoTime() - startTime) / 1e6;
+        double megapixels = width * (double) height / 1e6;
+        LOG.info(String.format("Uploaded a %dx%d %s atlas in %.2f ms (%.2f ms per megapixel)", width, height, textureType,
+                millis, megapixels > 0 ? millis / megapixels : 0));
+    }
+
+    /**
+     * Reads the {@code nova.atlas.compression} system property. A typo there shouldn't keep the renderer from loading,
+     * so anything that isn't a format we know means no compression
+     */
+    private static BlockCompression.Format readAtlasCompression() {
+        String name = System.getProperty("nova.atlas.compression", "none");
+        try {
+            return BlockCompression.Format.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch(IllegalArgumentException e) {
+            LOG.warn("Unknown atlas compression '" + name + "', expected one of none, bc1, bc3 or bc7. Atlases won't be compressed");
+            return BlockCompression.Format.NONE;
+        }
+    }
+
+    private AtlasCache getAtlasCache() {
+        if(atlasCache == null) {
+            atlasCache = new AtlasCache(new File(Minecraft.getMinecraft().mcDataDir, ATLAS_CACHE_DIRECTORY));
+        }
+        return atlasCache;
+    }
+
+    /**
+     * The contents of a texture file, before decoding
+     */
+    private static class RawTexture {
+        final ResourceLocation location;
+        final byte[] data;
+
+        RawTexture(ResourceLocation location, byte[] data) {
+            this.location = location;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Reads the given textures one after the other, on the calling thread. Minecraft's resource manager isn't thread
+     * safe (resource packs open their zip files lazily), so only decoding fans out to the decode pool. The textures
+     * are in the same order as the locations, so the atlases we pack from them come out the same every time
+     *
+     * @param locations The textures to read
+     * @param resourceManager The resource manager to load the textures from
+     * @return The file contents of each texture. Textures that couldn't be loaded are left out
+     */
+    private List<RawTexture> readTextures(List<ResourceLocation> locations, IResourceManager resourceManager) {
+        List<RawTexture> rawTextures = new ArrayList<>(locations.size());
+        for(ResourceLocation location : locations) {
+            RawTexture rawTexture = readTexture(location, resourceManager);
+            if(rawTexture != null) {
+                rawTextures.add(rawTexture);
+            }
+        }
+        return rawTextures;
+    }
+
+    private RawTexture readTexture(ResourceLocation textureLocation, IResourceManager resourceManager) {
+        try {
+            IResource texture = resourceManager.getResource(textureLocation);
+            try(InputStream in = texture.getInputStream()) {
+                return new RawTexture(textureLocation, IOUtils.toByteArray(in));
+            }
+        } catch(IOException e) {
+            LOG.warn("IOException when loading texture " + textureLocation.toString(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Decodes the given textures in parallel, keeping them in the same order
+     *
+     * @param rawTextures The textures to decode
+     * @return The decoded images. Textures that couldn't be decoded are left out
+     */
+    private List<AtlasGenerator.ImageName> decodeTextures(List<RawTexture> rawTextures) {
+        return runOnDecodePool(() -> rawTextures.parallelStream()
+                .map(this::decodeTexture)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())
+        );
+    }
+
+    private AtlasGenerator.ImageName decodeTexture(RawTexture rawTexture) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(rawTexture.data));
+
+            if(image != null) {
+                return new AtlasGenerator.ImageName(image, rawTexture.location.toString());
+            }
+        } catch(IOException e) {
+            LOG.warn("IOException when loading texture " + rawTexture.location.toString(), e);
+        }
+
+        return null;
+    }
+
+    private <T> List<T> runOnDecodePool(Callable<List<T>> task) {
+        try {
+            return TEXTURE_DECODE_POOL.submit(task).get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while loading textures", e);
+        } catch(ExecutionException e) {
+            LOG.error("Could not load textures", e);
+        }
+
+        return new ArrayList<>();
     }
 
     public void preInit() {
@@ -199,15 +464,55 @@ public class NovaRenderer implements IResourceManagerReloadListener {
         LOG.info("PID: " + pid);
         NovaNative.INSTANCE.initialize();
         LOG.info("Native code initialized");
+
+        if(InputPump.isEnabled()) {
+            InputPump.start();
+        }
     }
 
     public void updateCameraAndRender(float renderPartialTicks, long systemNanoTime, Minecraft mc) {
         if(NovaNative.INSTANCE.should_close()) {
             Minecraft.getMinecraft().shutdown();
         }
+        updateChunkSections(mc);
         NovaNative.INSTANCE.execute_frame();
     }
 
+    /**
+     * Sends the chunk sections that changed since the last frame, following the world and the camera around
+     */
+    private void updateChunkSections(Minecraft mc) {
+        World world = mc.theWorld;
+        if(chunkTracker != null && chunkTracker.getWorld() != world) {
+            chunkTracker.release();
+            chunkTracker = null;
+        }
+
+        Entity viewEntity = mc.getRenderViewEntity();
+        if(world == null || viewEntity == null) {
+            return;
+        }
+
+        if(chunkTracker == null) {
+            chunkTracker = new ChunkSectionTracker(world);
+            chunkTracker.setBlockTextures(blockTextures);
+        }
+
+        if(blockTextures == null) {
+            blockTextures = BlockTextures.build(mc.getBlockRendererDispatcher().getBlockModelShapes());
+            chunkTracker.setBlockTextures(blockTextures);
+        }
+
+        renderWorldParams.camera_x = viewEntity.posX;
+        renderWorldParams.camera_y = viewEntity.posY;
+        renderWorldParams.camera_z = viewEntity.posZ;
+        renderWorldParams.camera_yaw = viewEntity.rotationYaw;
+        renderWorldParams.camera_pitch = viewEntity.rotationPitch;
+
+        chunkTracker.setFieldOfView(mc.gameSettings.fovSetting, (float) mc.displayWidth / Math.max(mc.displayHeight, 1));
+        chunkTracker.update(renderWorldParams, mc.gameSettings.renderDistanceChunks);
+    }
+
     public void setGuiScreen(GuiScreen guiScreenIn) {
         /*
         LOG.info("Changing GUI screen");
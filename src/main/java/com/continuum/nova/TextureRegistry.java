@@ -0,0 +1,140 @@
+package com.continuum.nova;
+
+import net.minecraft.util.ResourceLocation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out a small, dense int ID for every texture Nova knows about.
+ * <p>
+ * The IDs are assigned when the atlases are built in {@link NovaRenderer} and sent to the native code along with each
+ * texture's atlas location. After that both sides can refer to a texture by its ID, which means NovaDraw can keep its
+ * batches in an array and the native commands don't need to carry the texture's name.
+ * <p>
+ * A texture keeps its ID for as long as the game runs, so IDs stay valid across resource pack reloads.
+ */
+public final class TextureRegistry {
+    private static final Map<String, Integer> idsByName = new HashMap<>();
+
+    /**
+     * Saves us from building the texture's name on every draw. Keyed by equality rather than identity, because some of
+     * Minecraft's GUI code makes a new ResourceLocation every time it draws, and those should neither miss nor pile
+     * up. It only ever holds one entry per distinct texture
+     */
+    private static final Map<ResourceLocation, Integer> idsByLocation = new HashMap<>();
+
+    /**
+     * Where each texture is in its atlas, four floats per ID: min u, min v, width and height, all from 0 to 1. NaN for
+     * textures that aren't in an atlas
+     */
+    private static float[] atlasLocations = new float[0];
+
+    private static int nextId;
+
+    private TextureRegistry() {
+    }
+
+    /**
+     * Gets the ID for the texture with the given name, assigning a new one if this is the first time we've seen it
+     *
+     * @param textureName the name of the texture, either with or without the textures/ prefix and the .png suffix
+     * @return the ID of the texture
+     */
+    public static int intern(String textureName) {
+        String name = normalize(textureName);
+        Integer id = idsByName.get(name);
+        if(id == null) {
+            id = nextId++;
+            idsByName.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Gets the ID for the given texture, assigning a new one if this is the first time we've seen it
+     *
+     * @param texture the texture
+     * @return the ID of the texture
+     */
+    public static int getId(ResourceLocation texture) {
+        Integer id = idsByLocation.get(texture);
+        if(id == null) {
+            id = intern(texture.getResourceDomain() + ":" + texture.getResourcePath());
+            idsByLocation.put(texture, id);
+        }
+        return id;
+    }
+
+    /**
+     * Remembers where a texture ended up in its atlas, so Java code that builds geometry can use the same texture
+     * coordinates the native code has
+     *
+     * @param id the ID of the texture
+     * @param minU the left side of the texture in the atlas, from 0 to 1
+     * @param minV the top of the texture in the atlas, from 0 to 1
+     * @param width the width of the texture, as a fraction of the atlas width
+     * @param height the height of the texture, as a fraction of the atlas height
+     */
+    public static void setAtlasLocation(int id, float minU, float minV, float width, float height) {
+        if(id * 4 + 4 > atlasLocations.length) {
+            int oldLength = atlasLocations.length;
+            atlasLocations = Arrays.copyOf(atlasLocations, Math.max(id * 4 + 4, oldLength * 2));
+            Arrays.fill(atlasLocations, oldLength, atlasLocations.length, Float.NaN);
+        }
+
+        atlasLocations[id * 4] = minU;
+        atlasLocations[id * 4 + 1] = minV;
+        atlasLocations[id * 4 + 2] = width;
+        atlasLocations[id * 4 + 3] = height;
+    }
+
+    /**
+     * Copies where a texture is in its atlas into the given array
+     *
+     * @param id the ID of the texture
+     * @param location where to put the min u, min v, width and height of the texture
+     * @param offset where in the array to put them
+     * @return false if the texture isn't in an atlas, in which case the array isn't touched
+     */
+    public static boolean getAtlasLocation(int id, float[] location, int offset) {
+        if(id < 0 || id * 4 + 4 > atlasLocations.length || Float.isNaN(atlasLocations[id * 4])) {
+            return false;
+        }
+
+        System.arraycopy(atlasLocations, id * 4, location, offset, 4);
+        return true;
+    }
+
+    /**
+     * @return one more than the biggest ID handed out so far
+     */
+    public static int size() {
+        return nextId;
+    }
+
+    /**
+     * Turns the different ways Minecraft names a texture ("minecraft:textures/gui/widgets.png", "gui/widgets", ...)
+     * into the single "minecraft:gui/widgets" form
+     */
+    private static String normalize(String textureName) {
+        String domain = "minecraft";
+        String path = textureName;
+
+        int colon = textureName.indexOf(':');
+        if(colon >= 0) {
+            domain = textureName.substring(0, colon);
+            path = textureName.substring(colon + 1);
+        }
+
+        if(path.startsWith("textures/")) {
+            path = path.substring("textures/".length());
+        }
+        if(path.endsWith(".png")) {
+            path = path.substring(0, path.length() - ".png".length());
+        }
+
+        return domain + ":" + path;
+    }
+}
@@ -0,0 +1,127 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.TextureRegistry;
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.client.renderer.BlockModelShapes;
+import net.minecraft.client.renderer.texture.TextureAtlasSprite;
+import net.minecraft.util.EnumBlockRenderType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What the mesher needs to know about every block state, looked up ahead of time so the chunk builder threads never
+ * have to touch Minecraft's block or model code.
+ * <p>
+ * For now every meshed block is a full cube with the same texture on all six sides, the block model's particle
+ * texture. Blocks that aren't full cubes, or that Minecraft doesn't render with a model, aren't meshed at all.
+ * <p>
+ * A BlockTextures never changes after it's built, so it can be shared between threads freely. Build a new one whenever
+ * the models or the atlases change.
+ */
+public final class BlockTextures {
+    private static final Logger LOG = LogManager.getLogger(BlockTextures.class);
+
+    /**
+     * Index into atlasLocations for each block state ID, or -1 if the state isn't meshed
+     */
+    private final int[] textureIndices;
+
+    /**
+     * Whether each block state ID hides the faces of the blocks next to it
+     */
+    private final boolean[] opaque;
+
+    /**
+     * Four floats per texture: min u, min v, width and height in the atlas
+     */
+    private final float[] atlasLocations;
+
+    /**
+     * Uses the given arrays as they are. {@link #build(BlockModelShapes)} is how the client makes one, this is for
+     * building one by hand
+     */
+    BlockTextures(int[] textureIndices, boolean[] opaque, float[] atlasLocations) {
+        this.textureIndices = textureIndices;
+        this.opaque = opaque;
+        this.atlasLocations = atlasLocations;
+    }
+
+    /**
+     * Looks up every block state's texture. Has to run on the client thread, after the models and the terrain atlas are
+     * loaded
+     *
+     * @param modelShapes Minecraft's block models
+     * @return Everything the mesher needs to know about every block state
+     */
+    public static BlockTextures build(BlockModelShapes modelShapes) {
+        int maxStateId = 0;
+        for(IBlockState state : Block.BLOCK_STATE_IDS) {
+            maxStateId = Math.max(maxStateId, Block.BLOCK_STATE_IDS.get(state));
+        }
+
+        int[] textureIndices = new int[maxStateId + 1];
+        boolean[] opaque = new boolean[maxStateId + 1];
+        Arrays.fill(textureIndices, -1);
+
+        // -1 for textures that aren't in an atlas, so there's nothing to draw them with
+        Map<Integer, Integer> textureIndicesById = new HashMap<>();
+        float[] atlasLocations = new float[64];
+        int numTextures = 0;
+
+        for(IBlockState state : Block.BLOCK_STATE_IDS) {
+            int stateId = Block.BLOCK_STATE_IDS.get(state);
+            opaque[stateId] = state.isOpaqueCube();
+
+            if(state.getRenderType() != EnumBlockRenderType.MODEL || !state.isFullCube()) {
+                continue;
+            }
+
+            TextureAtlasSprite sprite = modelShapes.getTexture(state);
+            if(sprite == null) {
+                continue;
+            }
+
+            int textureId = TextureRegistry.intern(sprite.getIconName());
+            Integer textureIndex = textureIndicesById.get(textureId);
+            if(textureIndex == null) {
+                if(numTextures * 4 + 4 > atlasLocations.length) {
+                    atlasLocations = Arrays.copyOf(atlasLocations, atlasLocations.length * 2);
+                }
+
+                textureIndex = TextureRegistry.getAtlasLocation(textureId, atlasLocations, numTextures * 4) ? numTextures++ : -1;
+                textureIndicesById.put(textureId, textureIndex);
+            }
+
+            textureIndices[stateId] = textureIndex;
+        }
+
+        LOG.info("Found " + numTextures + " block textures, " + (textureIndicesById.size() - numTextures) + " more aren't in an atlas");
+        return new BlockTextures(textureIndices, opaque, Arrays.copyOf(atlasLocations, numTextures * 4));
+    }
+
+    /**
+     * @return The texture to mesh the given block state with, or -1 if it isn't meshed
+     */
+    public int getTextureIndex(int stateId) {
+        return stateId < textureIndices.length ? textureIndices[stateId] : -1;
+    }
+
+    /**
+     * @return True if the given block state hides the faces of the blocks next to it
+     */
+    public boolean isOpaque(int stateId) {
+        return stateId < opaque.length && opaque[stateId];
+    }
+
+    /**
+     * @return The min u, min v, width and height of every texture, four floats per texture index
+     */
+    float[] getAtlasLocations() {
+        return atlasLocations;
+    }
+}
@@ -0,0 +1,383 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.NovaNative;
+import com.continuum.nova.utils.ChunkSection;
+import com.continuum.nova.utils.RenderCommandBuilder;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Packs and meshes chunk sections on a pool of worker threads, so loading chunks doesn't stall the client thread.
+ * <p>
+ * Sections closest to the camera are packed first, and sections the camera can see come before the ones it can't.
+ * Everything that talks to the builder ({@link #submit},
+ * {@link #cancelIf}, {@link #reprioritize} and {@link #drainFinished}) has to be called from the same thread, which is
+ * also the only thread that hands finished sections to the native code. The workers only ever touch the blocks they're
+ * given and their own section.
+ */
+public class ChunkSectionBuilder {
+    private static final Logger LOG = LogManager.getLogger(ChunkSectionBuilder.class);
+
+    /**
+     * Leaves a core for the client thread and one for the native code's render thread
+     */
+    private static final int NUM_THREADS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 2, 4));
+
+    private static final ThreadPoolExecutor BUILD_POOL = createBuildPool();
+
+    /**
+     * Radius of the sphere around a section, for checking if any of it is in view
+     */
+    private static final double SECTION_RADIUS = Math.sqrt(3) * ChunkSection.SIZE / 2;
+
+    /**
+     * How much further away a section the camera can't see counts as. Low enough that the sections right behind the
+     * camera still beat the ones at the edge of the render distance, since turning around is quick
+     */
+    private static final double OUT_OF_VIEW_PENALTY = 4;
+
+    private static final ThreadLocal<int[]> STATE_IDS = ThreadLocal.withInitial(() -> new int[ChunkSection.NUM_BLOCKS]);
+    private static final ThreadLocal<GreedyMesher> MESHERS = ThreadLocal.withInitial(GreedyMesher::new);
+
+    /**
+     * Receives each section once it's packed, or once packing it failed
+     */
+    public interface BuiltSectionHandler {
+        /**
+         * @param key The key the section was submitted with
+         * @param command The packed section. Only valid until this method returns
+         */
+        void onSectionBuilt(long key, NovaNative.mc_chunk_section command);
+
+        /**
+         * Called when packing or meshing a section threw. Nothing was sent, so the section stays as it was until it's
+         * submitted again
+         *
+         * @param key The key the section was submitted with
+         */
+        void onSectionFailed(long key);
+    }
+
+    /**
+     * The newest task for each section that hasn't been handed off yet
+     */
+    private final Map<Long, Task> pendingTasks = new HashMap<>();
+    private final Queue<Task> finishedTasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Sections whose buffers can be reused, so building a section doesn't allocate a new direct buffer every time
+     */
+    private final Queue<ChunkSection> freeSections = new ConcurrentLinkedQueue<>();
+
+    private double cameraX;
+    private double cameraY;
+    private double cameraZ;
+
+    private double lookX;
+    private double lookY;
+    private double lookZ = 1;
+
+    /**
+     * Sine and cosine of the angle between the view direction and the edge of the view. The defaults are for an angle
+     * of pi, which covers every direction, so nothing counts as out of view until {@link #setView} is called
+     */
+    private double viewSin = 0;
+    private double viewCos = -1;
+
+    private long nextSequence;
+
+    /**
+     * How to mesh sections. Null until the block textures are known, in which case sections are sent without a mesh
+     */
+    private BlockTextures blockTextures;
+
+    /**
+     * Totals for the sections built since the builder was last idle, so the cost of meshing shows up in the log
+     */
+    private final AtomicLong numBuilt = new AtomicLong();
+    private final AtomicLong numQuads = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final AtomicLong meshNanos = new AtomicLong();
+
+    private static ThreadPoolExecutor createBuildPool() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Nova chunk builder " + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        pool.prestartAllCoreThreads();
+        return pool;
+    }
+
+    /**
+     * Sets how to mesh the sections submitted from now on
+     */
+    public void setBlockTextures(BlockTextures blockTextures) {
+        this.blockTextures = blockTextures;
+    }
+
+    /**
+     * Queues a section to be packed and meshed. If the section was already queued, the old task is cancelled, since its
+     * blocks may be out of date
+     *
+     * @param key Identifies the section. Handed back to the {@link BuiltSectionHandler}
+     * @param storage The section's blocks
+     * @param neighbours The blocks of the six sections around it, in the order of
+     *                   {@link GreedyMesher#NEIGHBOUR_OFFSETS}, with null for empty ones
+     */
+    public void submit(long key, ExtendedBlockStorage storage, ExtendedBlockStorage[] neighbours, int sectionX, int sectionY, int sectionZ) {
+        cancel(key);
+
+        Task task = new Task(key, storage, neighbours, blockTextures, sectionX, sectionY, sectionZ, nextSequence++);
+        task.priority = getPriority(sectionX, sectionY, sectionZ);
+        pendingTasks.put(key, task);
+        BUILD_POOL.execute(task);
+    }
+
+    /**
+     * Cancels the section with the given key, if it's queued or being packed
+     */
+    public void cancel(long key) {
+        Task task = pendingTasks.remove(key);
+        if(task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    /**
+     * Cancels every section whose key matches the given filter
+     */
+    public void cancelIf(LongPredicate filter) {
+        for(Iterator<Map.Entry<Long, Task>> itr = pendingTasks.entrySet().iterator(); itr.hasNext(); ) {
+            Map.Entry<Long, Task> entry = itr.next();
+            if(filter.test(entry.getKey())) {
+                entry.getValue().cancelled = true;
+                itr.remove();
+            }
+        }
+    }
+
+    public void cancelAll() {
+        cancelIf(key -> true);
+    }
+
+    /**
+     * Sets where the camera is, so new sections are ordered by their distance to it
+     */
+    public void setCamera(double x, double y, double z) {
+        cameraX = x;
+        cameraY = y;
+        cameraZ = z;
+    }
+
+    /**
+     * Sets what the camera can see, as a cone around the view direction that holds the whole view frustum
+     *
+     * @param lookX The x component of the view direction. The view direction has to be normalized
+     * @param lookY The y component of the view direction
+     * @param lookZ The z component of the view direction
+     * @param halfAngle The angle between the view direction and the corners of the view, in radians
+     */
+    public void setView(double lookX, double lookY, double lookZ, double halfAngle) {
+        this.lookX = lookX;
+        this.lookY = lookY;
+        this.lookZ = lookZ;
+        viewSin = Math.sin(halfAngle);
+        viewCos = Math.cos(halfAngle);
+    }
+
+    /**
+     * Reorders the sections that are still queued by their distance to the camera. Call this after the camera moves
+     * or turns a fair way, otherwise the sections are packed in the order that was right when they were submitted
+     */
+    public void reprioritize() {
+        List<Runnable> queued = new ArrayList<>();
+        BUILD_POOL.getQueue().drainTo(queued);
+
+        for(Runnable runnable : queued) {
+            Task task = (Task) runnable;
+            if(task.getBuilder() == this) {
+                task.priority = getPriority(task.sectionX, task.sectionY, task.sectionZ);
+            }
+
+            if(!task.cancelled) {
+                BUILD_POOL.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Hands every section that's finished packing to the given handler, and tells it about the ones that failed.
+     * Sections that were cancelled or resubmitted after they started packing are dropped
+     *
+     * @return How many sections were handed off
+     */
+    public int drainFinished(BuiltSectionHandler handler) {
+        int numHandled = 0;
+
+        Task task;
+        while((task = finishedTasks.poll()) != null) {
+            if(pendingTasks.get(task.key) == task) {
+                pendingTasks.remove(task.key);
+
+                if(!task.failed) {
+                    handler.onSectionBuilt(task.key, task.result.getCommand());
+                    numHandled++;
+                } else {
+                    handler.onSectionFailed(task.key);
+                }
+            }
+
+            if(task.result != null) {
+                freeSections.add(task.result);
+            }
+        }
+
+        if(pendingTasks.isEmpty() && numBuilt.get() > 0) {
+            logStats();
+        }
+
+        return numHandled;
+    }
+
+    private void logStats() {
+        long sections = numBuilt.getAndSet(0);
+        long quads = numQuads.getAndSet(0);
+        double buildMillis = buildNanos.getAndSet(0) / 1e6;
+        double meshMillis = meshNanos.getAndSet(0) / 1e6;
+
+        LOG.debug(String.format("Built %d chunk sections: %.1f quads, %.3f ms packing and %.3f ms meshing per section",
+                sections, quads / (double) sections, (buildMillis - meshMillis) / sections, meshMillis / sections));
+    }
+
+    /**
+     * @return How many sections are queued or being packed
+     */
+    public int getNumPending() {
+        return pendingTasks.size();
+    }
+
+    /**
+     * @return The squared distance from the camera to the section's center, scaled up if the camera can't see the
+     * section
+     */
+    double getPriority(int sectionX, int sectionY, int sectionZ) {
+        double dx = sectionX * ChunkSection.SIZE + ChunkSection.SIZE / 2 - cameraX;
+        double dy = sectionY * ChunkSection.SIZE + ChunkSection.SIZE / 2 - cameraY;
+        double dz = sectionZ * ChunkSection.SIZE + ChunkSection.SIZE / 2 - cameraZ;
+        double distanceSquared = dx * dx + dy * dy + dz * dz;
+
+        // Distance from the section's center to the side of the view cone, negative inside it
+        double alongView = dx * lookX + dy * lookY + dz * lookZ;
+        double acrossView = Math.sqrt(Math.max(distanceSquared - alongView * alongView, 0));
+        boolean inView = acrossView * viewCos - alongView * viewSin <= SECTION_RADIUS;
+
+        return inView ? distanceSquared : distanceSquared * OUT_OF_VIEW_PENALTY;
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        final long key;
+        final ExtendedBlockStorage storage;
+        final ExtendedBlockStorage[] neighbours;
+        final BlockTextures blockTextures;
+        final int sectionX;
+        final int sectionY;
+        final int sectionZ;
+
+        /**
+         * Breaks ties between sections at the same distance, so they're packed in the order they were submitted
+         */
+        final long sequence;
+
+        /**
+         * Lower goes first. Only changed while the task isn't in the queue
+         */
+        double priority;
+
+        volatile boolean cancelled;
+
+        /**
+         * Written by the worker before the task goes in finishedTasks, which publishes them to the client thread
+         */
+        ChunkSection result;
+        boolean failed;
+
+        Task(long key, ExtendedBlockStorage storage, ExtendedBlockStorage[] neighbours, BlockTextures blockTextures,
+             int sectionX, int sectionY, int sectionZ, long sequence) {
+            this.key = key;
+            this.storage = storage;
+            this.neighbours = neighbours;
+            this.blockTextures = blockTextures;
+            this.sectionX = sectionX;
+            this.sectionY = sectionY;
+            this.sectionZ = sectionZ;
+            this.sequence = sequence;
+        }
+
+        ChunkSectionBuilder getBuilder() {
+            return ChunkSectionBuilder.this;
+        }
+
+        @Override
+        public void run() {
+            if(cancelled) {
+                return;
+            }
+
+            ChunkSection section = freeSections.poll();
+            if(section == null) {
+                section = new ChunkSection();
+            }
+
+            try {
+                long startTime = System.nanoTime();
+                int[] stateIds = STATE_IDS.get();
+                RenderCommandBuilder.makeChunkSection(storage, sectionX, sectionY, sectionZ, section, stateIds);
+
+                if(blockTextures != null) {
+                    long meshStartTime = System.nanoTime();
+                    GreedyMesher mesher = MESHERS.get();
+                    numQuads.addAndGet(mesher.mesh(stateIds, neighbours, blockTextures));
+                    section.setVertices(mesher.getVertices(), mesher.getNumFloats());
+                    meshNanos.addAndGet(System.nanoTime() - meshStartTime);
+                }
+
+                buildNanos.addAndGet(System.nanoTime() - startTime);
+                numBuilt.incrementAndGet();
+                result = section;
+
+            } catch(RuntimeException e) {
+                // The client thread can change the blocks while we read them, or a block state can be bad. Either way
+                // don't take the worker down, and let the handler decide whether to try again
+                LOG.error("Could not build chunk section (" + sectionX + ", " + sectionY + ", " + sectionZ + ")", e);
+                freeSections.add(section);
+                failed = true;
+            }
+
+            finishedTasks.add(this);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byDistance = Double.compare(priority, other.priority);
+            return byDistance != 0 ? byDistance : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.NovaNative;
+import com.continuum.nova.utils.RenderCommandBuilder;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the native code's copy of the world's chunk sections up to date, without rebuilding every section whenever
+ * something changes.
+ * <p>
+ * The tracker listens to the world the same way Minecraft's RenderGlobal does. Block updates and chunk loads mark the
+ * 16x16x16 sections they touch as dirty, and {@link #update(NovaNative.mc_render_world_params, int)} re-extracts only
+ * the dirty sections. It also remembers which sections the native code has, so it can tell the native code to drop
+ * sections that leave the render distance or become empty.
+ * <p>
+ * Packing happens on a {@link ChunkSectionBuilder}'s worker threads. Everything else runs on the client thread, which
+ * is where the client world sends its events, and which is the only thread that sends sections to the native code.
+ */
+public class ChunkSectionTracker implements IWorldEventListener {
+    private static final Logger LOG = LogManager.getLogger(ChunkSectionTracker.class);
+
+    private static final int NUM_SECTIONS_PER_CHUNK = 16;
+
+    /**
+     * Re-sort the builder's queue once the camera turns more than 45 degrees from the direction it was last sorted for
+     */
+    private static final double RESORT_COS_ANGLE = Math.cos(Math.toRadians(45));
+
+    /**
+     * How many times in a row a section may fail to build before it's left alone until its blocks change again
+     */
+    private static final int MAX_BUILD_ATTEMPTS = 3;
+
+    private final World world;
+
+    /**
+     * Sections that have to be re-extracted, by {@link #key(int, int, int)}. Kept in the order they were marked, so
+     * sections that come into range are queued nearest first
+     */
+    private final Set<Long> dirtySections = new LinkedHashSet<>();
+
+    /**
+     * Sections the native code has a copy of. Empty sections are never sent
+     */
+    private final Set<Long> sentSections = new HashSet<>();
+
+    /**
+     * How many times in a row each section has failed to build. Sections that built fine aren't in here
+     */
+    private final Map<Long, Integer> failedBuilds = new HashMap<>();
+
+    private final ChunkSectionBuilder builder = new ChunkSectionBuilder();
+    private final SectionSpiral spiral = new SectionSpiral();
+
+    private final ChunkSectionBuilder.BuiltSectionHandler sectionHandler = new ChunkSectionBuilder.BuiltSectionHandler() {
+        @Override
+        public void onSectionBuilt(long key, NovaNative.mc_chunk_section command) {
+            NovaNative.INSTANCE.add_chunk_section(command);
+            sentSections.add(key);
+            failedBuilds.remove(key);
+        }
+
+        @Override
+        public void onSectionFailed(long key) {
+            int attempts = failedBuilds.merge(key, 1, Integer::sum);
+            if(attempts < MAX_BUILD_ATTEMPTS) {
+                // Goes back in the queue with the next update
+                dirtySections.add(key);
+            } else {
+                LOG.warn("Giving up on chunk section (" + keyX(key) + ", " + keyY(key) + ", " + keyZ(key) + ") after "
+                        + attempts + " failed builds, until its blocks change");
+                failedBuilds.remove(key);
+            }
+        }
+    };
+
+    /**
+     * Angle from the view direction to the corners of the view, in radians. Covers everything until
+     * {@link #setFieldOfView(float, float)} is called
+     */
+    private double viewHalfAngle = Math.PI;
+
+    /**
+     * The view direction the builder's queue was last sorted for
+     */
+    private double sortedLookX;
+    private double sortedLookY;
+    private double sortedLookZ;
+
+    private int centerX;
+    private int centerZ;
+
+    /**
+     * Negative until the first update, so the first update loads everything in range
+     */
+    private int renderDistance = -1;
+
+    /**
+     * Starts tracking the given world. Call {@link #release()} when done with it
+     *
+     * @param world The world to track
+     */
+    public ChunkSectionTracker(World world) {
+        this.world = world;
+        world.addEventListener(this);
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Sets how to mesh sections, and rebuilds every section that's already been sent with the new textures
+     */
+    public void setBlockTextures(BlockTextures blockTextures) {
+        builder.setBlockTextures(blockTextures);
+        dirtySections.addAll(sentSections);
+    }
+
+    /**
+     * Sets how much the camera sees, so the sections in view can be built first
+     *
+     * @param fovDegrees The vertical field of view, in degrees
+     * @param aspectRatio The width of the view divided by its height
+     */
+    public void setFieldOfView(float fovDegrees, float aspectRatio) {
+        double halfHeight = Math.tan(Math.toRadians(fovDegrees) / 2);
+        double halfDiagonal = halfHeight * Math.sqrt(1 + aspectRatio * aspectRatio);
+        viewHalfAngle = Math.atan(halfDiagonal);
+    }
+
+    /**
+     * Moves the render distance to the camera, queues every dirty section in range to be packed, and sends the
+     * sections that finished packing since the last update to the native code
+     *
+     * @param camera Where the camera is. Sections closer to it are packed first
+     * @param renderDistance How many chunks away from the camera to keep sections for
+     */
+    public void update(NovaNative.mc_render_world_params camera, int renderDistance) {
+        // Minecraft's yaw starts at +z and turns towards -x, and positive pitch looks down
+        double yaw = Math.toRadians(camera.camera_yaw);
+        double pitch = Math.toRadians(camera.camera_pitch);
+        double lookX = -Math.sin(yaw) * Math.cos(pitch);
+        double lookY = -Math.sin(pitch);
+        double lookZ = Math.cos(yaw) * Math.cos(pitch);
+
+        builder.setCamera(camera.camera_x, camera.camera_y, camera.camera_z);
+        builder.setView(lookX, lookY, lookZ, viewHalfAngle);
+
+        int centerX = (int) Math.floor(camera.camera_x) >> 4;
+        int centerY = (int) Math.floor(camera.camera_y) >> 4;
+        int centerZ = (int) Math.floor(camera.camera_z) >> 4;
+        boolean moved = centerX != this.centerX || centerZ != this.centerZ || renderDistance != this.renderDistance;
+        if(moved) {
+            moveRenderDistance(centerX, centerY, centerZ, renderDistance);
+        }
+
+        boolean turned = lookX * sortedLookX + lookY * sortedLookY + lookZ * sortedLookZ < RESORT_COS_ANGLE;
+        if(moved || turned) {
+            builder.reprioritize();
+            sortedLookX = lookX;
+            sortedLookY = lookY;
+            sortedLookZ = lookZ;
+        }
+
+        if(!dirtySections.isEmpty()) {
+            submitDirtySections();
+        }
+
+        int numSent = builder.drainFinished(sectionHandler);
+        if(numSent > 0) {
+            LOG.debug("Sent " + numSent + " chunk sections, " + builder.getNumPending() + " still being built");
+        }
+    }
+
+    private void submitDirtySections() {
+        int numRemoved = 0;
+        for(long key : dirtySections) {
+            int sectionX = keyX(key);
+            int sectionY = keyY(key);
+            int sectionZ = keyZ(key);
+
+            ExtendedBlockStorage storage = RenderCommandBuilder.getSectionStorage(world, sectionX, sectionY, sectionZ);
+            if(storage != null) {
+                builder.submit(key, storage, getNeighbours(sectionX, sectionY, sectionZ), sectionX, sectionY, sectionZ);
+
+            } else {
+                builder.cancel(key);
+                if(sentSections.remove(key)) {
+                    // The section used to have blocks, but doesn't anymore
+                    NovaNative.INSTANCE.remove_chunk_section(sectionX, sectionY, sectionZ);
+                    numRemoved++;
+                }
+            }
+        }
+
+        LOG.debug("Queued " + dirtySections.size() + " dirty chunk sections, removed " + numRemoved + " empty ones");
+        dirtySections.clear();
+    }
+
+    /**
+     * Looks up the sections around a section, which the mesher needs to tell which faces on the edge are hidden
+     */
+    private ExtendedBlockStorage[] getNeighbours(int sectionX, int sectionY, int sectionZ) {
+        ExtendedBlockStorage[] neighbours = new ExtendedBlockStorage[GreedyMesher.NEIGHBOUR_OFFSETS.length];
+        for(int i = 0; i < neighbours.length; i++) {
+            int[] offset = GreedyMesher.NEIGHBOUR_OFFSETS[i];
+            neighbours[i] = RenderCommandBuilder.getSectionStorage(world, sectionX + offset[0], sectionY + offset[1], sectionZ + offset[2]);
+        }
+        return neighbours;
+    }
+
+    /**
+     * Stops listening to the world and removes all of its sections from the native code
+     */
+    public void release() {
+        world.removeEventListener(this);
+        builder.cancelAll();
+
+        for(long key : sentSections) {
+            NovaNative.INSTANCE.remove_chunk_section(keyX(key), keyY(key), keyZ(key));
+        }
+
+        sentSections.clear();
+        dirtySections.clear();
+        failedBuilds.clear();
+    }
+
+    /**
+     * Removes sections that are no longer in range and marks the non-empty sections that just came into range as dirty,
+     * nearest first
+     */
+    private void moveRenderDistance(int newCenterX, int centerY, int newCenterZ, int newRenderDistance) {
+        int oldCenterX = centerX;
+        int oldCenterZ = centerZ;
+        int oldRenderDistance = renderDistance;
+
+        centerX = newCenterX;
+        centerZ = newCenterZ;
+        renderDistance = newRenderDistance;
+
+        int numRemoved = 0;
+        for(Iterator<Long> itr = sentSections.iterator(); itr.hasNext(); ) {
+            long key = itr.next();
+            if(!isInRange(keyX(key), keyZ(key))) {
+                NovaNative.INSTANCE.remove_chunk_section(keyX(key), keyY(key), keyZ(key));
+                itr.remove();
+                numRemoved++;
+            }
+        }
+
+        dirtySections.removeIf(key -> !isInRange(keyX(key), keyZ(key)));
+        failedBuilds.keySet().removeIf(key -> !isInRange(keyX(key), keyZ(key)));
+        builder.cancelIf(key -> !isInRange(keyX(key), keyZ(key)));
+
+        int numAdded = 0;
+        spiral.reset(centerX, centerY, centerZ, renderDistance);
+        while(spiral.next()) {
+            int x = spiral.getX();
+            int z = spiral.getZ();
+            boolean wasInRange = oldRenderDistance >= 0 && Math.abs(x - oldCenterX) <= oldRenderDistance && Math.abs(z - oldCenterZ) <= oldRenderDistance;
+            if(wasInRange) {
+                spiral.skipColumn();
+                continue;
+            }
+
+            // Sections in chunks that aren't loaded yet are marked dirty when the chunk loads
+            if(RenderCommandBuilder.getSectionStorage(world, x, spiral.getY(), z) != null) {
+                dirtySections.add(key(x, spiral.getY(), z));
+                numAdded++;
+            }
+        }
+
+        LOG.debug("Render distance moved to chunk (" + centerX + ", " + centerZ + "), added " + numAdded + " and removed " + numRemoved + " chunk sections");
+    }
+
+    private boolean isInRange(int sectionX, int sectionZ) {
+        return Math.abs(sectionX - centerX) <= renderDistance && Math.abs(sectionZ - centerZ) <= renderDistance;
+    }
+
+    /**
+     * Marks every section that holds a block in the given range of block positions as dirty
+     */
+    private void markBlocksDirty(int x1, int y1, int z1, int x2, int y2, int z2) {
+        int minY = Math.max(y1 >> 4, 0);
+        int maxY = Math.min(y2 >> 4, NUM_SECTIONS_PER_CHUNK - 1);
+
+        for(int x = x1 >> 4; x <= x2 >> 4; x++) {
+            for(int z = z1 >> 4; z <= z2 >> 4; z++) {
+                if(renderDistance >= 0 && !isInRange(x, z)) {
+                    // It'll be marked dirty when it comes into range
+                    continue;
+                }
+
+                for(int y = minY; y <= maxY; y++) {
+                    dirtySections.add(key(x, y, z));
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs a section position into a single key, the same way the native code's chunk_section_key does. 26 bits is
+     * plenty for x and z, and y only goes up to 15
+     */
+    private static long key(int sectionX, int sectionY, int sectionZ) {
+        return ((long) (sectionX & 0x3FFFFFF) << 38) | ((long) (sectionZ & 0x3FFFFFF) << 12) | (sectionY & 0xFFF);
+    }
+
+    private static int keyX(long key) {
+        return (int) (key >> 38);
+    }
+
+    private static int keyY(long key) {
+        return (int) (key & 0xFFF);
+    }
+
+    private static int keyZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    @Override
+    public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        // A block on the edge of a section changes which faces of the neighbouring section are visible, so its
+        // neighbours are dirty too
+        markBlocksDirty(pos.getX() - 1, pos.getY() - 1, pos.getZ() - 1, pos.getX() + 1, pos.getY() + 1, pos.getZ() + 1);
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+        // Called when a chunk is loaded or unloaded, among other things
+        markBlocksDirty(x1 - 1, y1 - 1, z1 - 1, x2 + 1, y2 + 1, z2 + 1);
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+        // Sections don't carry light yet
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent soundIn, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent soundIn, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double xCoord, double yCoord, double zCoord, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entityIn) {
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entityIn) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos blockPosIn, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+}
@@ -0,0 +1,269 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.utils.ChunkSection;
+import net.minecraft.block.Block;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+import java.util.Arrays;
+
+/**
+ * Turns the blocks of a chunk section into as few quads as it can.
+ * <p>
+ * Faces between two blocks where the neighbour is opaque are dropped, then the faces left in each 16x16 slice of the
+ * section are merged into rectangles wherever they share a texture. A flat floor of one block becomes a single quad
+ * instead of 256 of them.
+ * <p>
+ * A merged quad covers more than one block, so its texture has to repeat. Each vertex has:
+ * <ul>
+ *     <li>Its position relative to the section's corner, 3 floats from 0 to 16</li>
+ *     <li>Its texture coordinates in blocks, 2 floats. These go past 1 on merged quads; the shader wraps them with
+ *     fract()</li>
+ *     <li>The texture's location in the atlas, 4 floats: min u, min v, width and height. The shader maps the wrapped
+ *     texture coordinates into this rectangle</li>
+ * </ul>
+ * There are four vertices per quad and no index buffer. Quads wind counter-clockwise when looked at from the side they
+ * face.
+ * <p>
+ * A mesher keeps all its scratch space between sections, so give each thread its own.
+ */
+public class GreedyMesher {
+    public static final int FLOATS_PER_VERTEX = 9;
+    public static final int VERTICES_PER_QUAD = 4;
+
+    private static final int SIZE = ChunkSection.SIZE;
+
+    /**
+     * The section's blocks with a one block border holding the neighbouring sections' blocks
+     */
+    private static final int PADDED_SIZE = SIZE + 2;
+
+    /**
+     * How far apart neighbouring blocks are in the padded array along x, y and z
+     */
+    private static final int[] STRIDES = {1, PADDED_SIZE * PADDED_SIZE, PADDED_SIZE};
+
+    /**
+     * Offsets to the neighbouring sections, in the order {@link #mesh} wants them: -x, +x, -y, +y, -z, +z. Face i of a
+     * block faces the same way as neighbour i
+     */
+    public static final int[][] NEIGHBOUR_OFFSETS = {{-1, 0, 0}, {1, 0, 0}, {0, -1, 0}, {0, 1, 0}, {0, 0, -1}, {0, 0, 1}};
+
+    private static final int AIR = 0;
+
+    private final int[] states = new int[PADDED_SIZE * PADDED_SIZE * PADDED_SIZE];
+
+    /**
+     * The texture index of each visible face in the slice being merged, or -1
+     */
+    private final int[] mask = new int[SIZE * SIZE];
+
+    private final int[] borderPos = new int[3];
+    private final int[] neighbourPos = new int[3];
+    private final float[] corner = new float[3];
+
+    private float[] vertices = new float[1024 * VERTICES_PER_QUAD * FLOATS_PER_VERTEX];
+    private int numFloats;
+    private int numQuads;
+
+    /**
+     * Meshes a section
+     *
+     * @param stateIds The block state ID of every block in the section, in (y * 16 + z) * 16 + x order
+     * @param neighbours The blocks of the six neighbouring sections, in the order of {@link #NEIGHBOUR_OFFSETS}. Null
+     *                   for a neighbour that's empty or not loaded, which counts as all air
+     * @param textures What each block state looks like
+     * @return How many quads the section turned into. Get them from {@link #getVertices()}
+     */
+    public int mesh(int[] stateIds, ExtendedBlockStorage[] neighbours, BlockTextures textures) {
+        fillStates(stateIds, neighbours);
+
+        numFloats = 0;
+        numQuads = 0;
+        for(int face = 0; face < 6; face++) {
+            meshFace(face, textures);
+        }
+
+        return numQuads;
+    }
+
+    /**
+     * @return The vertices of the last section meshed. Only the first {@link #getNumFloats()} floats are used, and
+     * they're overwritten by the next call to {@link #mesh}
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getNumFloats() {
+        return numFloats;
+    }
+
+    private void fillStates(int[] stateIds, ExtendedBlockStorage[] neighbours) {
+        for(int y = 0; y < SIZE; y++) {
+            for(int z = 0; z < SIZE; z++) {
+                System.arraycopy(stateIds, (y * SIZE + z) * SIZE, states, index(0, y, z), SIZE);
+            }
+        }
+
+        // Only the border blocks that touch a face of the section are ever read, the edges and corners aren't
+        for(int face = 0; face < 6; face++) {
+            ExtendedBlockStorage neighbour = neighbours[face];
+            int axis = face >> 1;
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+
+            // The layer of the neighbour that touches us, and where it goes in the border
+            int sourceLayer = (face & 1) == 0 ? SIZE - 1 : 0;
+            int borderLayer = (face & 1) == 0 ? -1 : SIZE;
+
+            for(int j = 0; j < SIZE; j++) {
+                for(int k = 0; k < SIZE; k++) {
+                    borderPos[axis] = borderLayer;
+                    borderPos[u] = k;
+                    borderPos[v] = j;
+
+                    int state = AIR;
+                    if(neighbour != null) {
+                        neighbourPos[axis] = sourceLayer;
+                        neighbourPos[u] = k;
+                        neighbourPos[v] = j;
+                        state = Block.getStateId(neighbour.get(neighbourPos[0], neighbourPos[1], neighbourPos[2]));
+                    }
+
+                    states[index(borderPos[0], borderPos[1], borderPos[2])] = state;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the visible faces that point one way, slice by slice, and merges each slice's faces into quads
+     *
+     * @param face Which way the faces point, in the order of {@link #NEIGHBOUR_OFFSETS}
+     */
+    private void meshFace(int face, BlockTextures textures) {
+        int axis = face >> 1;
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+        int toNeighbour = (face & 1) == 0 ? -STRIDES[axis] : STRIDES[axis];
+
+        for(int slice = 0; slice < SIZE; slice++) {
+            int n = 0;
+            for(int j = 0; j < SIZE; j++) {
+                int rowStart = index(0, 0, 0) + slice * STRIDES[axis] + j * STRIDES[v];
+                for(int k = 0; k < SIZE; k++) {
+                    int block = rowStart + k * STRIDES[u];
+                    int texture = textures.getTextureIndex(states[block]);
+                    if(texture >= 0 && textures.isOpaque(states[block + toNeighbour])) {
+                        texture = -1;
+                    }
+                    mask[n++] = texture;
+                }
+            }
+
+            mergeSlice(face, slice, textures.getAtlasLocations());
+        }
+    }
+
+    /**
+     * Greedily merges the faces in the mask into rectangles: grow each rectangle as far as it can go along u, then
+     * along v as long as every face in the next row matches
+     */
+    private void mergeSlice(int face, int slice, float[] atlasLocations) {
+        for(int j = 0; j < SIZE; j++) {
+            for(int k = 0; k < SIZE; ) {
+                int texture = mask[j * SIZE + k];
+                if(texture < 0) {
+                    k++;
+                    continue;
+                }
+
+                int width = 1;
+                while(k + width < SIZE && mask[j * SIZE + k + width] == texture) {
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while(j + height < SIZE) {
+                    int row = (j + height) * SIZE + k;
+                    for(int i = 0; i < width; i++) {
+                        if(mask[row + i] != texture) {
+                            break grow;
+                        }
+                    }
+                    height++;
+                }
+
+                for(int row = j; row < j + height; row++) {
+                    Arrays.fill(mask, row * SIZE + k, row * SIZE + k + width, -1);
+                }
+
+                addQuad(face, slice, k, j, width, height, atlasLocations, texture * 4);
+                k += width;
+            }
+        }
+    }
+
+    private void addQuad(int face, int slice, int k, int j, int width, int height, float[] atlasLocations, int location) {
+        int axis = face >> 1;
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+        boolean positive = (face & 1) == 1;
+
+        int neededFloats = numFloats + VERTICES_PER_QUAD * FLOATS_PER_VERTEX;
+        if(neededFloats > vertices.length) {
+            vertices = Arrays.copyOf(vertices, Math.max(neededFloats, vertices.length * 2));
+        }
+
+        // u cross v is the axis, so going around (u, v) -> (u + w, v) -> (u + w, v + h) -> (u, v + h) is
+        // counter-clockwise seen from the positive side. Faces on the negative side go around the other way
+        corner[axis] = positive ? slice + 1 : slice;
+        for(int i = 0; i < VERTICES_PER_QUAD; i++) {
+            int step = positive ? i : (VERTICES_PER_QUAD - i) % VERTICES_PER_QUAD;
+            corner[u] = k + (step == 1 || step == 2 ? width : 0);
+            corner[v] = j + (step >= 2 ? height : 0);
+
+            vertices[numFloats++] = corner[0];
+            vertices[numFloats++] = corner[1];
+            vertices[numFloats++] = corner[2];
+
+            // Side textures stand upright, and every face is seen from the front rather than mirrored
+            switch(face) {
+                case 0:
+                    vertices[numFloats++] = corner[2];
+                    vertices[numFloats++] = -corner[1];
+                    break;
+                case 1:
+                    vertices[numFloats++] = -corner[2];
+                    vertices[numFloats++] = -corner[1];
+                    break;
+                case 4:
+                    vertices[numFloats++] = -corner[0];
+                    vertices[numFloats++] = -corner[1];
+                    break;
+                case 5:
+                    vertices[numFloats++] = corner[0];
+                    vertices[numFloats++] = -corner[1];
+                    break;
+                default:
+                    vertices[numFloats++] = corner[0];
+                    vertices[numFloats++] = corner[2];
+                    break;
+            }
+
+            System.arraycopy(atlasLocations, location, vertices, numFloats, 4);
+            numFloats += 4;
+        }
+
+        numQuads++;
+    }
+
+    /**
+     * @return Where the block at the given position in the section is in the padded array. Positions from -1 to 16 are
+     * fine
+     */
+    private static int index(int x, int y, int z) {
+        return ((y + 1) * PADDED_SIZE + (z + 1)) * PADDED_SIZE + (x + 1);
+    }
+}
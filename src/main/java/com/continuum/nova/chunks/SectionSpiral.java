@@ -0,0 +1,161 @@
+package com.continuum.nova.chunks;
+
+/**
+ * Walks the chunk sections around a center section, nearest first, without allocating anything.
+ * <p>
+ * Columns are visited in square rings around the center column: the center column, then the eight columns around it,
+ * then the sixteen around those, and so on out to the radius. Within a column, the sections closest to the center's
+ * height come first. Each ring is further out than the last, so anything queued in walking order gets the sections
+ * around the camera first.
+ * <p>
+ * Usage:
+ * <pre>
+ *     spiral.reset(centerX, centerY, centerZ, radius);
+ *     while(spiral.next()) {
+ *         doSomething(spiral.getX(), spiral.getY(), spiral.getZ());
+ *     }
+ * </pre>
+ * A spiral can be reset and walked again as often as needed.
+ */
+public class SectionSpiral {
+    private static final int NUM_SECTIONS_PER_CHUNK = 16;
+
+    private int centerX;
+    private int centerY;
+    private int centerZ;
+    private int radius;
+
+    private int ring;
+
+    /**
+     * How far along the current ring's perimeter we are
+     */
+    private int step;
+
+    /**
+     * Which section of the current column we're on, in visiting order rather than height
+     */
+    private int columnStep;
+
+    private int x;
+    private int y;
+    private int z;
+
+    /**
+     * Starts a new walk
+     *
+     * @param centerX The x coordinate of the center, in sections
+     * @param centerY The y coordinate of the center, in sections. Can be outside the world, in which case the sections
+     *                nearest to it come first anyway
+     * @param centerZ The z coordinate of the center, in sections
+     * @param radius How many columns away from the center column to go
+     */
+    public void reset(int centerX, int centerY, int centerZ, int radius) {
+        this.centerX = centerX;
+        this.centerY = Math.min(Math.max(centerY, 0), NUM_SECTIONS_PER_CHUNK - 1);
+        this.centerZ = centerZ;
+        this.radius = radius;
+
+        ring = 0;
+        step = 0;
+        columnStep = -1;
+        x = centerX;
+        z = centerZ;
+    }
+
+    /**
+     * Moves to the next section
+     *
+     * @return False once every section in the radius has been visited
+     */
+    public boolean next() {
+        columnStep++;
+        if(columnStep == NUM_SECTIONS_PER_CHUNK) {
+            columnStep = 0;
+            if(!nextColumn()) {
+                return false;
+            }
+        }
+
+        y = columnY(columnStep);
+        return ring <= radius;
+    }
+
+    /**
+     * Skips the rest of the current column, so the next call to {@link #next()} moves to the next column. Handy when
+     * the whole column isn't loaded
+     */
+    public void skipColumn() {
+        columnStep = NUM_SECTIONS_PER_CHUNK - 1;
+    }
+
+    private boolean nextColumn() {
+        step++;
+        if(step >= ringLength(ring)) {
+            ring++;
+            step = 0;
+            if(ring > radius) {
+                return false;
+            }
+        }
+
+        // Walk each ring clockwise, starting from its top left corner
+        int side = ring * 2;
+        int edge = step / Math.max(side, 1);
+        int offset = step % Math.max(side, 1);
+        switch(edge) {
+            case 0:
+                x = centerX - ring + offset;
+                z = centerZ - ring;
+                break;
+            case 1:
+                x = centerX + ring;
+                z = centerZ - ring + offset;
+                break;
+            case 2:
+                x = centerX + ring - offset;
+                z = centerZ + ring;
+                break;
+            default:
+                x = centerX - ring;
+                z = centerZ + ring - offset;
+                break;
+        }
+
+        return true;
+    }
+
+    private static int ringLength(int ring) {
+        return ring == 0 ? 1 : ring * 8;
+    }
+
+    /**
+     * Goes up and down from the center's height in turn: centerY, centerY + 1, centerY - 1, centerY + 2... then
+     * whatever's left on the one side that hasn't hit the edge of the world
+     */
+    private int columnY(int columnStep) {
+        int below = centerY;
+        int above = NUM_SECTIONS_PER_CHUNK - 1 - centerY;
+        int alternating = Math.min(below, above) * 2;
+
+        if(columnStep <= alternating) {
+            int distance = (columnStep + 1) / 2;
+            return columnStep % 2 == 1 ? centerY + distance : centerY - distance;
+        }
+
+        int distance = columnStep - Math.min(below, above);
+        return above > below ? centerY + distance : centerY - distance;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+}
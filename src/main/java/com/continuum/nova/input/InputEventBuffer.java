@@ -0,0 +1,195 @@
+package com.continuum.nova.input;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A ring of fixed-size input events in a direct buffer, which the native code fills in batches.
+ * <p>
+ * {@link #poll()} asks the native code for as many queued events as fit in the free part of the ring, all at once,
+ * instead of making a native call for every event. {@link #next()} then steps through them without touching the native
+ * code at all.
+ * <p>
+ * Events are numbered in the order they arrive, starting from zero. An event's number stays the same until it's read,
+ * which is how {@link Mouse} and {@link Keyboard} look at the events a poll just added.
+ * <p>
+ * One thread may poll while another reads, without any locking: {@link #poll()} only ever moves the write position and
+ * {@link #next()} only ever moves the read position, and each publishes its position through a volatile field. That's
+ * how the {@link InputPump} works. With no pump, the client thread does both.
+ */
+final class InputEventBuffer {
+    /**
+     * Where the events come from, normally one of the drain functions in
+     * {@link com.continuum.nova.NovaNative}
+     */
+    interface Source {
+        /**
+         * @param events Where to put the events
+         * @param maxEvents How many events fit at that address
+         * @return How many events were written
+         */
+        int drain(Pointer events, int maxEvents);
+    }
+
+    private final int eventSize;
+    private final int capacity;
+    private final Source source;
+
+    private final ByteBuffer buffer;
+    private final Pointer pointer;
+
+    /**
+     * How many events have been written into the ring, ever. Only the polling thread changes this. The slot of event n
+     * is n % capacity
+     */
+    private volatile long written;
+
+    /**
+     * Every event before this one has been read and its slot can be written again. Only the reading thread changes
+     * this. It stays at the current event rather than moving past it, so a poll can't write over the event that's
+     * being read
+     */
+    private volatile long released;
+
+    /**
+     * Whether something other than the reader polls this buffer
+     */
+    private volatile boolean pumped;
+
+    /**
+     * The next event {@link #next()} will move to. Only used by the reading thread
+     */
+    private long read;
+
+    /**
+     * The event {@link #next()} last moved to
+     */
+    private long current = -1;
+
+    /**
+     * @param eventSize How many bytes each event takes up
+     * @param capacity How many events fit in the ring
+     * @param source Where to get events from
+     */
+    InputEventBuffer(int eventSize, int capacity, Source source) {
+        this.eventSize = eventSize;
+        this.capacity = capacity;
+        this.source = source;
+
+        buffer = ByteBuffer.allocateDirect(eventSize * capacity).order(ByteOrder.nativeOrder());
+        pointer = Native.getDirectBufferPointer(buffer);
+    }
+
+    /**
+     * Fills the free part of the ring with whatever events the source has. Events that don't fit stay in the source
+     * until the next poll
+     *
+     * @return How many events were added. They're numbered from {@link #getEnd()} minus this up to {@link #getEnd()}
+     */
+    int poll() {
+        int added = 0;
+        long end = written;
+        while(end - released < capacity) {
+            // The free space might wrap around the end of the ring, in which case it takes two drains to fill it
+            int slot = (int) (end % capacity);
+            int free = (int) Math.min(capacity - (end - released), capacity - slot);
+
+            int drained = source.drain(pointer.share((long) slot * eventSize), free);
+            end += drained;
+            added += drained;
+
+            // Publishes the new events to the reader
+            written = end;
+
+            if(drained < free) {
+                break;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * @return True if another thread is polling this buffer, in which case the reader shouldn't poll it too
+     */
+    boolean isPumped() {
+        return pumped;
+    }
+
+    void setPumped(boolean pumped) {
+        this.pumped = pumped;
+    }
+
+    /**
+     * @return True if there's an event that hasn't been read yet. Doesn't poll
+     */
+    boolean hasNext() {
+        return read < written;
+    }
+
+    /**
+     * Moves on to the next event. Its fields are then available from {@link #getInt(int)} until the next call to this
+     *
+     * @return False if every event has been read
+     */
+    boolean next() {
+        if(read == written) {
+            return false;
+        }
+
+        current = read++;
+        released = current;
+        return true;
+    }
+
+    /**
+     * @return The number of the oldest event that hasn't been read yet
+     */
+    long getStart() {
+        return read;
+    }
+
+    /**
+     * @return The number one past the newest event in the ring
+     */
+    long getEnd() {
+        return written;
+    }
+
+    /**
+     * @param offset The field's offset from the start of an event, in bytes
+     * @return A field of the event that {@link #next()} last moved to
+     */
+    int getInt(int offset) {
+        return getInt(current, offset);
+    }
+
+    /**
+     * @param event The event's number. It has to still be in the ring, see {@link #next()}
+     * @param offset The field's offset from the start of an event, in bytes
+     * @return A field of the given event
+     */
+    int getInt(long event, int offset) {
+        return buffer.getInt((int) (event % capacity) * eventSize + offset);
+    }
+
+    /**
+     * @param offset The field's offset from the start of an event, in bytes
+     * @return A field of the event that {@link #next()} last moved to
+     */
+    long getLong(int offset) {
+        return getLong(current, offset);
+    }
+
+    /**
+     * @param event The event's number. It has to still be in the ring, see {@link #next()}
+     * @param offset The field's offset from the start of an event, in bytes
+     * @return A field of the given event
+     */
+    long getLong(long event, int offset) {
+        return buffer.getLong((int) (event % capacity) * eventSize + offset);
+    }
+}
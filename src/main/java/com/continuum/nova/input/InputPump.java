@@ -0,0 +1,64 @@
+package com.continuum.nova.input;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread that keeps pulling input events out of the native code, so the client thread never has to.
+ * <p>
+ * Without the pump, {@link Mouse#next()} and {@link Keyboard#next()} call into the native code whenever they run out
+ * of events, on the client thread. With it, the pump fills the mouse and keyboard event buffers about once a
+ * millisecond, and the client thread only reads what's already there. Every event carries the time GLFW reported it,
+ * so being picked up a little later doesn't change how old an event looks.
+ * <p>
+ * Turn the pump on with the {@code nova.input.pump} system property. It has to be started after the native code is
+ * initialized.
+ */
+public final class InputPump {
+    public static final String PUMP_PROPERTY = "nova.input.pump";
+
+    private static final Logger LOG = LogManager.getLogger(InputPump.class);
+
+    private static final long PUMP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static Thread thread;
+
+    private InputPump() {
+    }
+
+    /**
+     * @return True if the {@code nova.input.pump} system property asks for the pump
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PUMP_PROPERTY);
+    }
+
+    /**
+     * Starts pumping. Does nothing if the pump is already running
+     */
+    public static synchronized void start() {
+        if(thread != null) {
+            return;
+        }
+
+        // The pump is the only thing that may poll the buffers from now on
+        Mouse.events.setPumped(true);
+        Keyboard.events.setPumped(true);
+
+        thread = new Thread(InputPump::pump, "Nova input pump");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Started the input pump");
+    }
+
+    private static void pump() {
+        while(true) {
+            Mouse.events.poll();
+            Keyboard.events.poll();
+            LockSupport.parkNanos(PUMP_INTERVAL_NANOS);
+        }
+    }
+}
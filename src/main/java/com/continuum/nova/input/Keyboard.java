@@ -4,17 +4,18 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.LWJGLException;
 import org.lwjgl.opengl.InputImplementation;
 
 import com.continuum.nova.NovaNative;
-import com.continuum.nova.NovaNative.key_press_event;
-import com.continuum.nova.NovaNative.key_char_event;
 public class Keyboard {
+    private static final Logger LOG = LogManager.getLogger(Keyboard.class);
+
     public static final int EVENT_SIZE = 18;
     public static final int CHAR_NONE = 0;
     public static final int KEY_NONE = 0;
@@ -156,11 +157,42 @@ public class Keyboard {
     public static final int KEY_APPS = 221;
     public static final int KEY_POWER = 222;
     public static final int KEY_SLEEP = 223;
+
+    /**
+     * The layout of each event in the buffer that drain_key_events fills, which is the key_event struct in
+     * mc_objects.h
+     */
+    private static final int NATIVE_EVENT_TYPE = 0;
+    private static final int NATIVE_EVENT_KEY = 4;
+    private static final int NATIVE_EVENT_ACTION = 12;
+    private static final int NATIVE_EVENT_CHAR = 20;
+    private static final int NATIVE_EVENT_NANOS = 24;
+    private static final int NATIVE_EVENT_SIZE = 32;
+
+    private static final int TYPE_PRESS = 0;
+    private static final int TYPE_CHAR = 1;
+
+    private static final int BUFFER_SIZE = 256;
+
+    static final InputEventBuffer events = new InputEventBuffer(NATIVE_EVENT_SIZE, BUFFER_SIZE,
+            (buffer, maxEvents) -> NovaNative.INSTANCE.drain_key_events(buffer, maxEvents));
+
     private static final String[] keyName = new String[256];
     private static final Map<String, Integer> keyMap = new HashMap(253);
     private static boolean created;
     private static boolean repeat_enabled;
-    private static final HashSet<Integer> keyDownBuffer = new HashSet<>();
+    private static final int KEYBOARD_SIZE = 256;
+
+    /**
+     * One bit per key code, set while the key is down
+     */
+    private static final long[] keyDownBits = new long[KEYBOARD_SIZE / Long.SIZE];
+
+    /**
+     * How many events {@link #poll()} has already taken into account
+     */
+    private static long appliedEvents;
+
     private static Keyboard.KeyEvent current_event;
     private static boolean initialized;
 
@@ -187,16 +219,37 @@ public class Keyboard {
 
     }
 
+    /**
+     * Fetches any new events from the native code, unless the {@link InputPump} is already doing that, and updates which
+     * keys are down to match. The events themselves are read with {@link #next()}
+     */
     public static void poll() {
+        if(!events.isPumped()) {
+            events.poll();
+        }
 
-    }
-
-    public static boolean isKeyDown(int key) {
-
+        long end = events.getEnd();
+        for(long event = appliedEvents; event < end; event++) {
+            if(events.getInt(event, NATIVE_EVENT_TYPE) != TYPE_PRESS) {
+                continue;
+            }
 
-            return keyDownBuffer.contains(key);
+            int key = events.getInt(event, NATIVE_EVENT_KEY);
+            int action = events.getInt(event, NATIVE_EVENT_ACTION);
+            if(key > KEY_NONE && key < KEYBOARD_SIZE && action != 2) {
+                if(action == 1) {
+                    keyDownBits[key >> 6] |= 1L << key;
 
+                } else {
+                    keyDownBits[key >> 6] &= ~(1L << key);
+                }
+            }
+        }
+        appliedEvents = end;
+    }
 
+    public static boolean isKeyDown(int key) {
+        return key >= 0 && key < KEYBOARD_SIZE && (keyDownBits[key >> 6] & 1L << key) != 0;
     }
 
     public static synchronized String getKeyName(int key) {
@@ -210,25 +263,41 @@ public class Keyboard {
 
 
     public static boolean next() {
-        key_press_event p = NovaNative.INSTANCE.get_next_key_press_event();
-        key_char_event c = NovaNative.INSTANCE.get_next_key_char_event();
-
-        if (p.filled==0 && c.filled==0){
+        if(events.isPumped() || !events.hasNext()) {
+            poll();
+        }
+        if(!events.next()) {
             return false;
         }
-        if (p.filled==1 && p.key !=0 &&p.action!=2){
-            if (p.action ==1){
-                keyDownBuffer.add(p.key);
 
-            } else{
-                keyDownBuffer.remove(p.key);
+        current_event.nanos = events.getLong(NATIVE_EVENT_NANOS);
+        if(events.getInt(NATIVE_EVENT_TYPE) == TYPE_PRESS) {
+            int action = events.getInt(NATIVE_EVENT_ACTION);
+            current_event.key = events.getInt(NATIVE_EVENT_KEY);
+            current_event.character = (char) CHAR_NONE;
+            current_event.state = action != 0;
+            current_event.repeat = action == 2;
+
+            // GLFW sends the character a key types right after the key itself, so hand them out together like LWJGL
+            if(action != 0) {
+                if(events.isPumped() || !events.hasNext()) {
+                    poll();
+                }
+                if(events.hasNext() && events.getInt(events.getStart(), NATIVE_EVENT_TYPE) == TYPE_CHAR) {
+                    events.next();
+                    current_event.character = (char) events.getInt(NATIVE_EVENT_CHAR);
+                }
             }
+
+        } else {
+            current_event.key = KEY_NONE;
+            current_event.character = (char) events.getInt(NATIVE_EVENT_CHAR);
+            current_event.state = false;
+            current_event.repeat = false;
+        }
+        if(LOG.isTraceEnabled()) {
+            LOG.trace("Key: " + getKeyName(current_event.key) + "; Char: " + current_event.character + "; state: " + current_event.state + "; repeat: " + current_event.repeat);
         }
-        current_event.key = p.key;
-        current_event.character = (char) c.unicode_char;
-        current_event.state = p.action!=0;
-        current_event.repeat = p.action == 2;
-        System.out.println("Key: "+getKeyName(p.key)+"; Char: "+current_event.character+"; state: "+p.action +"; repeat: "+current_event.repeat);
         return true;
     }
 
@@ -257,6 +326,10 @@ public class Keyboard {
 
     }
 
+    public static long getEventNanoseconds() {
+        return current_event.nanos;
+    }
+
     public static boolean isRepeatEvent() {
 
         return current_event.repeat;
@@ -290,6 +363,7 @@ public class Keyboard {
         private int key;
         private boolean state;
         private boolean repeat;
+        private long nanos;
 
         private KeyEvent() {
         }
@@ -4,11 +4,36 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.continuum.nova.NovaNative;
-import com.continuum.nova.NovaNative.mouse_button_event;
-import com.continuum.nova.NovaNative.mouse_position_event;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 
 public class Mouse {
+    private static final Logger LOG = LogManager.getLogger(Mouse.class);
+
+    /**
+     * The layout of each event in the buffer that drain_mouse_events fills, which is the mouse_event struct in
+     * mc_objects.h
+     */
+    private static final int EVENT_TYPE = 0;
+    private static final int EVENT_BUTTON = 4;
+    private static final int EVENT_ACTION = 8;
+    private static final int EVENT_MODS = 12;
+    private static final int EVENT_X = 16;
+    private static final int EVENT_Y = 20;
+    private static final int EVENT_NANOS = 24;
+    private static final int EVENT_SIZE = 32;
+
+    private static final int TYPE_BUTTON = 0;
+    private static final int TYPE_POSITION = 1;
+
+    private static final int BUFFER_SIZE = 1024;
+
+    static final String COALESCE_MOTION_PROPERTY = "nova.input.coalesceMouseMotion";
+
+    static final InputEventBuffer events = new InputEventBuffer(EVENT_SIZE, BUFFER_SIZE,
+            (buffer, maxEvents) -> NovaNative.INSTANCE.drain_mouse_events(buffer, maxEvents));
+
     private static boolean created;
     private static int x;
     private static int y;
@@ -35,6 +60,12 @@ public class Mouse {
     private static int last_event_raw_x;
     private static int last_event_raw_y;
     private static boolean isGrabbed;
+    private static boolean coalesceMotion = Boolean.getBoolean(COALESCE_MOTION_PROPERTY);
+
+    /**
+     * How many events {@link #poll()} has already taken into account
+     */
+    private static long appliedEvents;
 
     private Mouse() {
     }
@@ -47,6 +78,25 @@ public class Mouse {
 
     }
 
+    /**
+     * @return True if {@link #next()} merges runs of movement into one event
+     */
+    public static boolean isCoalesceMotion() {
+        return coalesceMotion;
+    }
+
+    /**
+     * Turns coalescing on or off. When it's on, {@link #next()} merges every movement it has between two button events
+     * into a single event, whose position is the last one and whose {@link #getEventDX()} and {@link #getEventDY()}
+     * add up all the movement. Button events still come out one at a time, in order. Camera code only cares about how
+     * far the mouse moved in total, and a 1000 Hz mouse sends a lot of movement.
+     * <p>
+     * Off unless the {@code nova.input.coalesceMouseMotion} system property is true
+     */
+    public static void setCoalesceMotion(boolean coalesce) {
+        coalesceMotion = coalesce;
+    }
+
     public static void setCursorPosition(int new_x, int new_y) {
 
     }
@@ -99,30 +149,85 @@ public class Mouse {
         return ret == null ? -1 : ret.intValue();
     }
 
+    /**
+     * Fetches any new events from the native code, unless the {@link InputPump} is already doing that, and moves the
+     * mouse to where the newest of them says it is. The events themselves are read with {@link #next()}
+     */
+    public static void poll() {
+        if(!events.isPumped()) {
+            events.poll();
+        }
+
+        long end = events.getEnd();
+        for(long event = appliedEvents; event < end; event++) {
+            if(events.getInt(event, EVENT_TYPE) == TYPE_POSITION) {
+                int newX = events.getInt(event, EVENT_X);
+                int newY = events.getInt(event, EVENT_Y);
+                dx += newX - x;
+                dy += newY - y;
+                x = newX;
+                y = newY;
+            }
+        }
+        appliedEvents = end;
+    }
+
     public static boolean next() {
-        mouse_button_event e = NovaNative.INSTANCE.get_next_mouse_button_event();
-        mouse_position_event p = NovaNative.INSTANCE.get_next_mouse_position_event();
-        if (e.filled == 0 && p.filled==0){
+        if(events.isPumped() || !events.hasNext()) {
+            poll();
+        }
+        if(!events.next()) {
             return false;
         }
-        if (e.filled == 1){
-            eventButton = e.button;
-            eventState = e.action == 1;
-            System.out.println("button: " +e.button +";action: "+e.action+ ";mods: "+e.mods +"; filled: "+e.filled);
 
-        }else{
+        event_nanos = events.getLong(EVENT_NANOS);
+        if(events.getInt(EVENT_TYPE) == TYPE_BUTTON) {
+            eventButton = events.getInt(EVENT_BUTTON);
+            eventState = events.getInt(EVENT_ACTION) == 1;
+            event_dx = 0;
+            event_dy = 0;
+            if(LOG.isTraceEnabled()) {
+                LOG.trace("button: " + eventButton + ";action: " + events.getInt(EVENT_ACTION) + ";mods: " + events.getInt(EVENT_MODS));
+            }
+
+        } else {
+            int lastX = event_x;
+            int lastY = event_y;
             eventButton = -1;
             eventState = false;
-        }
-        if(p.filled == 1 ){
-            dx += p.xpos - event_x;
-            dy += p.ypos -event_y;
-            event_x = p.xpos;
-            event_y = p.ypos;
+            event_x = events.getInt(EVENT_X);
+            event_y = events.getInt(EVENT_Y);
+
+            if(coalesceMotion) {
+                skipMotion();
+            }
+
+            event_dx = event_x - lastX;
+            event_dy = event_y - lastY;
         }
         return true;
     }
 
+    /**
+     * Moves past every movement right after the current one, stopping before the next button event, and leaves the
+     * current event's position and time at the last of them
+     */
+    private static void skipMotion() {
+        while(true) {
+            if(events.isPumped() || !events.hasNext()) {
+                poll();
+            }
+            if(!events.hasNext() || events.getInt(events.getStart(), EVENT_TYPE) != TYPE_POSITION) {
+                return;
+            }
+
+            events.next();
+            event_x = events.getInt(EVENT_X);
+            event_y = events.getInt(EVENT_Y);
+            event_nanos = events.getLong(EVENT_NANOS);
+        }
+    }
+
     public static int getEventButton() {
         return eventButton;
     }
@@ -140,6 +245,14 @@ public class Mouse {
         return event_y;
     }
 
+    public static int getEventDX() {
+        return event_dx;
+    }
+
+    public static int getEventDY() {
+        return event_dy;
+    }
+
     public static int getEventDWheel() {
         return event_dwheel;
     }
@@ -149,22 +262,24 @@ public class Mouse {
     }
 
     public static int getX() {
-        next();
-        return event_x;
+        poll();
+        return x;
     }
 
     public static int getY() {
-        next();
-        return event_y;
+        poll();
+        return y;
     }
 
     public static int getDX() {
+        poll();
         int result = dx;
         dx = 0;
         return result;
     }
 
     public static int getDY() {
+        poll();
         int result = dy;
         dy = 0;
         return result;
@@ -0,0 +1,350 @@
+package com.continuum.nova.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Keeps packed atlases on disk so a resource reload with the same textures doesn't have to decode and pack everything
+ * again.
+ * <p>
+ * Each set of atlases lives in its own directory, named after a hash of the texture names, the texture contents and the
+ * packing settings. The directory holds an index file with the size and rectangle map of each atlas, and one file of
+ * raw pixels per atlas. Pixel files are memory-mapped when loaded, so a warm start goes straight from disk to
+ * add_texture.
+ */
+public class AtlasCache {
+    private static final Logger LOG = LogManager.getLogger(AtlasCache.class);
+
+    private static final int FORMAT_VERSION = 3;
+    private static final String INDEX_FILE = "index.bin";
+
+    /**
+     * How many sets of atlases to keep around. Enough to switch between a few resource packs without a cold start
+     */
+    private static final int MAX_ENTRIES = 8;
+
+    private final File directory;
+
+    public AtlasCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * A single packed atlas, ready to be sent to the native code
+     */
+    public static class Entry {
+        public final int width;
+        public final int height;
+        public final int numComponents;
+        public final int numMipLevels;
+        public final BlockCompression.Format format;
+
+        /**
+         * Every mip level, biggest first, as laid out by {@link MipChain} and then compressed to the entry's format
+         */
+        public final ByteBuffer pixels;
+        public final Map<String, Rectangle> rectangles;
+
+        public Entry(int width, int height, int numComponents, ByteBuffer pixels, Map<String, Rectangle> rectangles) {
+            this(width, height, numComponents, 1, BlockCompression.Format.NONE, pixels, rectangles);
+        }
+
+        public Entry(int width, int height, int numComponents, int numMipLevels, BlockCompression.Format format, ByteBuffer pixels, Map<String, Rectangle> rectangles) {
+            this.width = width;
+            this.height = height;
+            this.numComponents = numComponents;
+            this.numMipLevels = numMipLevels;
+            this.format = format;
+            this.pixels = pixels;
+            this.rectangles = rectangles;
+        }
+    }
+
+    /**
+     * Computes the key for a set of textures
+     *
+     * @param settings Anything besides the textures that changes the packed atlases, like the atlas size
+     * @param names The names of the textures, in the order they're packed
+     * @param contents The raw file contents of each texture
+     * @return A key that's the same only if all of the above are the same
+     */
+    public static String computeKey(String settings, List<String> names, List<byte[]> contents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(intToBytes(FORMAT_VERSION));
+            digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+            for(int i = 0; i < names.size(); i++) {
+                byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+                digest.update(intToBytes(name.length));
+                digest.update(name);
+                digest.update(intToBytes(contents.get(i).length));
+                digest.update(contents.get(i));
+            }
+
+            StringBuilder key = new StringBuilder();
+            for(byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+
+        } catch(NoSuchAlgorithmException e) {
+            // Every JVM has to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads the atlases stored under the given key
+     *
+     * @param key The key from {@link #computeKey(String, List, List)}
+     * @return The atlases, or null if they aren't in the cache or couldn't be read. An entry that can't be read is
+     * deleted, so the next reload can store a good one in its place
+     */
+    public List<Entry> load(String key) {
+        File entryDir = new File(directory, key);
+        File indexFile = new File(entryDir, INDEX_FILE);
+        if(!indexFile.isFile()) {
+            return null;
+        }
+
+        try(DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(index.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            int numAtlases = readInt(index, "atlas count", 0, Integer.MAX_VALUE);
+            List<Entry> atlases = new ArrayList<>(numAtlases);
+            for(int i = 0; i < numAtlases; i++) {
+                int width = readInt(index, "width", 1, Integer.MAX_VALUE);
+                int height = readInt(index, "height", 1, Integer.MAX_VALUE);
+                int numComponents = readInt(index, "component count", 1, 4);
+                int numMipLevels = readInt(index, "mip level count", 1, 32);
+                BlockCompression.Format format = BlockCompression.Format.values()[readInt(index, "format", 0, BlockCompression.Format.values().length - 1)];
+
+                int numRectangles = readInt(index, "rectangle count", 0, Integer.MAX_VALUE);
+                Map<String, Rectangle> rectangles = new TreeMap<>();
+                for(int r = 0; r < numRectangles; r++) {
+                    String name = index.readUTF();
+                    rectangles.put(name, new Rectangle(index.readInt(), index.readInt(), index.readInt(), index.readInt()));
+                }
+
+                int size = BlockCompression.getChainSize(format, width, height, numComponents, numMipLevels);
+                ByteBuffer pixels = mapPixels(new File(entryDir, pixelFileName(i)), size);
+                atlases.add(new Entry(width, height, numComponents, numMipLevels, format, pixels, rectangles));
+            }
+
+            // Mark the entry as recently used so pruning keeps it
+            entryDir.setLastModified(System.currentTimeMillis());
+            LOG.info("Loaded " + numAtlases + " atlases from the cache");
+            return atlases;
+
+        } catch(IOException | RuntimeException e) {
+            // Anything from a truncated file to a bad value that slipped past the checks
+            LOG.warn("Could not read cached atlases " + key + ", deleting them", e);
+            deleteRecursively(entryDir);
+            return null;
+        }
+    }
+
+    /**
+     * Reads an int from the index and makes sure it's one we could have written
+     */
+    private static int readInt(DataInput index, String what, int min, int max) throws IOException {
+        int value = index.readInt();
+        if(value < min || value > max) {
+            throw new IOException("Corrupt index, " + what + " is " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Saves the given atlases under the given key. Failing to save isn't fatal, it just means the next start is a cold
+     * one
+     *
+     * @param key The key from {@link #computeKey(String, List, List)}
+     * @param atlases The atlases to save
+     */
+    public void store(String key, List<Entry> atlases) {
+        Writer writer = beginStore(key);
+        for(Entry atlas : atlases) {
+            writer.add(atlas);
+        }
+        writer.commit();
+    }
+
+    /**
+     * Starts saving a set of atlases one at a time, so each atlas's pixels can be let go as soon as it's written
+     *
+     * @param key The key from {@link #computeKey(String, List, List)}
+     * @return A writer to add the atlases to
+     */
+    public Writer beginStore(String key) {
+        return new Writer(key);
+    }
+
+    /**
+     * Saves atlases as they come in. Nothing shows up in the cache until {@link #commit()}. Like
+     * {@link #store(String, List)}, failures are logged and otherwise ignored
+     */
+    public class Writer {
+        private final String key;
+        private final File entryDir;
+        private final File tempDir;
+
+        /**
+         * Everything but the pixels, which are written right away
+         */
+        private final List<Entry> writtenAtlases = new ArrayList<>();
+        private boolean failed;
+
+        private Writer(String key) {
+            this.key = key;
+            entryDir = new File(directory, key);
+            tempDir = new File(directory, key + ".tmp");
+
+            deleteRecursively(tempDir);
+            if(!tempDir.mkdirs()) {
+                fail(new IOException("Could not create " + tempDir));
+            }
+        }
+
+        /**
+         * Writes the pixels of the given atlas. The atlas's pixel buffer isn't kept around afterwards
+         *
+         * @param atlas The next atlas
+         */
+        public void add(Entry atlas) {
+            if(failed) {
+                return;
+            }
+
+            try {
+                writePixels(new File(tempDir, pixelFileName(writtenAtlases.size())), atlas.pixels);
+                writtenAtlases.add(new Entry(atlas.width, atlas.height, atlas.numComponents, atlas.numMipLevels, atlas.format, null, atlas.rectangles));
+            } catch(IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Writes the index and makes the atlases visible to {@link #load(String)}
+         */
+        public void commit() {
+            if(failed) {
+                return;
+            }
+
+            try {
+                try(DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(tempDir, INDEX_FILE))))) {
+                    index.writeInt(FORMAT_VERSION);
+                    index.writeInt(writtenAtlases.size());
+
+                    for(Entry atlas : writtenAtlases) {
+                        index.writeInt(atlas.width);
+                        index.writeInt(atlas.height);
+                        index.writeInt(atlas.numComponents);
+                        index.writeInt(atlas.numMipLevels);
+                        index.writeInt(atlas.format.ordinal());
+
+                        index.writeInt(atlas.rectangles.size());
+                        for(Map.Entry<String, Rectangle> rect : atlas.rectangles.entrySet()) {
+                            index.writeUTF(rect.getKey());
+                            index.writeInt(rect.getValue().x);
+                            index.writeInt(rect.getValue().y);
+                            index.writeInt(rect.getValue().width);
+                            index.writeInt(rect.getValue().height);
+                        }
+                    }
+                }
+
+                deleteRecursively(entryDir);
+                if(!tempDir.renameTo(entryDir)) {
+                    throw new IOException("Could not move " + tempDir + " to " + entryDir);
+                }
+
+                prune();
+
+            } catch(IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Throws away everything written so far
+         */
+        public void abort() {
+            failed = true;
+            deleteRecursively(tempDir);
+        }
+
+        private void fail(IOException e) {
+            LOG.warn("Could not cache atlases " + key, e);
+            abort();
+        }
+    }
+
+    private static ByteBuffer mapPixels(File file, int size) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() != size) {
+                throw new IOException(file + " should have " + size + " bytes but has " + channel.size());
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static void writePixels(File file, ByteBuffer pixels) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = pixels.duplicate();
+            data.clear();
+            while(data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until there are at most MAX_ENTRIES left
+     */
+    private void prune() {
+        File[] entries = directory.listFiles(File::isDirectory);
+        if(entries == null || entries.length <= MAX_ENTRIES) {
+            return;
+        }
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+        for(int i = MAX_ENTRIES; i < entries.length; i++) {
+            LOG.debug("Removing old cached atlases " + entries[i].getName());
+            deleteRecursively(entries[i]);
+        }
+    }
+
+    private static String pixelFileName(int atlasIndex) {
+        return "atlas_" + atlasIndex + ".bin";
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static byte[] intToBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+}
@@ -5,52 +5,104 @@ import org.apache.logging.log4j.Logger;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
+/**
+ * Packs a bunch of images into as few atlases as it can. Where each image goes is up to an {@link AtlasPacker}
+ */
 public class AtlasGenerator {
     private static final Logger LOG = LogManager.getLogger(AtlasGenerator.class);
 
+    /**
+     * Set the {@code nova.atlas.dump} system property to true to write every atlas to a PNG in the working directory
+     * after it's packed
+     */
+    public static final boolean DUMP_ATLASES = Boolean.getBoolean("nova.atlas.dump");
+
+    /**
+     * Biggest images first. Packers do much better when the small images get to fill the gaps between the big ones than
+     * the other way around. Ties are broken by name so the same textures always pack the same way, which the atlas cache
+     * depends on
+     */
+    private static final Comparator<ImageName> BIGGEST_FIRST = Comparator
+            .comparingInt((ImageName imageName) -> Math.max(imageName.image.getWidth(), imageName.image.getHeight())).reversed()
+            .thenComparing(Comparator.comparingInt((ImageName imageName) -> imageName.image.getWidth() * imageName.image.getHeight()).reversed())
+            .thenComparing(imageName -> imageName.name);
+
+    private final AtlasPacker packer;
+
+    public AtlasGenerator() {
+        this(new MaxRectsPacker());
+    }
+
+    public AtlasGenerator(AtlasPacker packer) {
+        this.packer = packer;
+    }
+
+    public AtlasPacker getPacker() {
+        return packer;
+    }
+
     public List<Texture> Run(int width, int height, int padding, List<ImageName> images) {
         List<Texture> textures = new ArrayList<>();
-        textures.add(new Texture(width, height));
-
-        for(ImageName imageName : images) {
-            boolean added = false;
-
-            // Write the image so we can verify we're reading it in correctly
-            // From this code, I know that the data in the image is loaded, although it looks like the red and blue
-            // channels are swapped
-            /*try {
-                String[] splitPath = imageName.name.split("/");
-                File imageFile = new File(splitPath[splitPath.length - 1]);
-                ImageIO.write(imageName.image, "png", imageFile);
-            } catch(IOException e) {
-                LOG.warn("Could not write image " + imageName, e);
-            }*/
+        Run(width, height, padding, new ArrayList<>(images), textures::add);
+        return textures;
+    }
 
-            for(Texture texture : textures) {
-                if(texture.addImage(imageName.image, imageName.name, padding)) {
-                    added = true;
-                    break;
+    /**
+     * Packs the images one atlas at a time, handing each atlas off as soon as it's full. Nothing here holds on to an
+     * atlas after it's handed off, so once the consumer is done with it the atlas and the images in it can be
+     * collected.
+     * <p>
+     * Each atlas gets every image that fits in it, biggest first, before the next atlas is started. That's the same
+     * result as trying every image against every atlas, but it means no atlas has to stay open.
+     *
+     * @param images The images to pack. The list is emptied as images are placed, so it doesn't keep them alive
+     * @param onAtlasPacked Called with each atlas once nothing more will go in it
+     */
+    public void Run(int width, int height, int padding, List<ImageName> images, Consumer<Texture> onAtlasPacked) {
+        images.sort(BIGGEST_FIRST);
+
+        int atlasIndex = 0;
+        while(!images.isEmpty()) {
+            Texture texture = new Texture(packer, width, height, padding);
+            List<ImageName> leftovers = new ArrayList<>();
+
+            for(ImageName imageName : images) {
+                if(!texture.addImage(imageName.image, imageName.name)) {
+                    leftovers.add(imageName);
                 }
             }
 
-            if(!added) {
-                Texture texture = new Texture(width, height);
-                texture.addImage(imageName.image, imageName.name, padding);
-                textures.add(texture);
+            images.clear();
+            images.addAll(leftovers);
+
+            if(texture.getRectangleMap().isEmpty()) {
+                // Nothing fit in an empty atlas, so the biggest image left is bigger than an entire atlas
+                ImageName tooBig = images.remove(0);
+                LOG.error("Image " + tooBig.name + " is bigger than an entire atlas, skipping it");
+                continue;
             }
-        }
 
-        return textures;
+            LOG.info(String.format("Atlas %d (%s): %dx%d, %d images, %.1f%% occupied, %d pixels wasted", atlasIndex, packer.getName(),
+                    texture.getWidth(), texture.getHeight(), texture.getRectangleMap().size(), texture.getOccupancy() * 100,
+                    texture.getWastedPixels()));
+            atlasIndex++;
+
+            onAtlasPacked.accept(texture);
+        }
     }
 
     public static class ImageName {
@@ -64,192 +116,215 @@ public class AtlasGenerator {
     }
 
     public static class Texture {
-        public static class WrongNumComponentsException extends Exception {
-            WrongNumComponentsException(String msg) {
-                super(msg);
-            }
-        }
-
-        private class Node {
-            Rectangle rect;
-            public Node child[];
-            public BufferedImage image;
-
-            Node(int x, int y, int width, int height) {
-                rect = new Rectangle(x, y, width, height);
-                child = new Node[2];
-                child[0] = null;
-                child[1] = null;
-                image = null;
-            }
-
-            boolean isLeaf() {
-                return child[0] == null && child[1] == null;
-            }
-
-            Node insert(BufferedImage image, int padding) {
-                LOG.debug("Inserting an image with padding {}", padding);
-                if(!isLeaf()) {
-                    Node newNode = child[0].insert(image, padding);
-
-                    if(newNode != null) {
-                        return newNode;
-                    }
-
-                    return child[1].insert(image, padding);
-                } else {
-                    if(this.image != null) {
-                        return null;
-                    }
-
-                    if(image.getWidth() > rect.width || image.getHeight() > rect.height) {
-                        return null;
-                    }
-
-                    if(image.getWidth() == rect.width && image.getHeight() == rect.height) {
-                        this.image = image;
-                        return this;
-                    }
-
-                    int dw = rect.width - image.getWidth();
-                    int dh = rect.height - image.getHeight();
-
-                    // Prefer filling vertically before horizontally. MC has a number of textures that are much higher
-                    // than they are wide
-                    // TODO: Figure out how to make the atlas texture as square as possible
-                    if(dh > dw) {
-                        child[0] = new Node(rect.x, rect.y, rect.width, image.getHeight());
-                        child[1] = new Node(rect.x, padding + rect.y + image.getHeight(), rect.width, rect.height - image.getHeight() - padding);
-                    } else {
-                        child[0] = new Node(rect.x, rect.y, image.getWidth(), rect.height);
-                        child[1] = new Node(padding + rect.x + image.getWidth(), rect.y, rect.width - image.getWidth() - padding, rect.height);
-                    }
+        /**
+         * Atlases are always RGBA
+         */
+        public static final int NUM_COMPONENTS = 4;
 
-                    return child[0].insert(image, padding);
-                }
-            }
+        private static class Placement {
+            final BufferedImage image;
+            final Rectangle rect;
 
             /**
-             * Figures out the maximum bounds of this node or any of its children
-             *
-             * @param comparePoint The point to compare the bounds of this nide and its children to
-             * @return The maximum bounds of this node or any of its children
+             * The image's pixels, if they're in a layout we can read directly. Null otherwise
              */
-            Point2D getMaxBounds(Point2D comparePoint) {
-                // yes, there's duplicate logic. This code is simple. Bite me.
-                double maxX = comparePoint.getX();
-                double maxY = comparePoint.getY();
-
-                if(child[0] != null) {
-                    Point2D childPoint = child[0].getMaxBounds(comparePoint);
-                    if(childPoint.getX() > maxX) {
-                        maxX = childPoint.getX();
-                    }
-                    if(childPoint.getY() > maxY) {
-                        maxY = childPoint.getY();
-                    }
-                }
-
-                if(child[1] != null) {
-                    Point2D childPoint = child[1].getMaxBounds(comparePoint);
-                    if(childPoint.getX() > maxX) {
-                        maxX = childPoint.getX();
-                    }
-                    if(childPoint.getY() > maxY) {
-                        maxY = childPoint.getY();
-                    }
-                }
-
-                if(rect.getX() > maxX) {
-                    maxX = rect.getX();
-                }
-                if(rect.getY() > maxY) {
-                    maxY = rect.getY();
+            final byte[] data;
+            final int srcComponents;
+
+            Placement(BufferedImage image, Rectangle rect) {
+                this.image = image;
+                this.rect = rect;
+
+                int components = 0;
+                if(image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+                    components = 4;
+                } else if(image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                    components = 3;
                 }
 
-                return new Point2D.Double(maxX, maxY);
-            }
-
-            void drawAllImages(Graphics2D graphics) {
-                LOG.trace("Drawing image at position " + rect.x + ", " + rect.y);
-                graphics.drawImage(image, null, rect.x, rect.y);
-                if(child[0] != null) {
-                    child[0].drawAllImages(graphics);
-                }
-                if(child[1] != null) {
-                    child[1].drawAllImages(graphics);
+                DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+                // Images that share their raster with a bigger image need the slow path
+                if(components != 0 && dataBuffer.getSize() == rect.width * rect.height * components) {
+                    data = ((DataBufferByte) dataBuffer).getData();
+                    srcComponents = components;
+                } else {
+                    data = null;
+                    srcComponents = 0;
                 }
             }
         }
 
-        private Node root;
+        private final AtlasPacker.Page page;
+        private final int padding;
+        private final List<Placement> placements = new ArrayList<>();
         private Map<String, Rectangle> rectangleMap;
 
-        public Texture(int width, int height) {
-            root = new Node(0, 0, width, height);
+        private int width;
+        private int height;
+        private long usedPixels;
+
+        /**
+         * Creates an empty atlas
+         *
+         * @param packer Decides where the images go
+         * @param maxWidth The biggest the atlas is allowed to get horizontally
+         * @param maxHeight The biggest the atlas is allowed to get vertically
+         * @param padding How wide a gutter to leave around each image, on every side. Gutters are filled with copies of
+         *                the image's edge pixels, so filtering and mipmapping don't pull in the neighbouring images
+         */
+        public Texture(AtlasPacker packer, int maxWidth, int maxHeight, int padding) {
+            page = packer.newPage(maxWidth, maxHeight);
+            this.padding = padding;
             rectangleMap = new TreeMap<>();
         }
 
-        boolean addImage(BufferedImage image, String name, int padding) {
-            Node node = root.insert(image, padding);
+        boolean addImage(BufferedImage image, String name) {
+            Rectangle reserved = page.insert(image.getWidth() + padding * 2, image.getHeight() + padding * 2);
 
-            if(node == null) {
+            if(reserved == null) {
                 return false;
             }
 
-            rectangleMap.put(name, node.rect);
+            Rectangle rect = new Rectangle(reserved.x + padding, reserved.y + padding, image.getWidth(), image.getHeight());
+            placements.add(new Placement(image, rect));
+            rectangleMap.put(name, rect);
+
+            width = Math.max(width, reserved.x + reserved.width);
+            height = Math.max(height, reserved.y + reserved.height);
+            usedPixels += (long) rect.width * rect.height;
             return true;
         }
 
-        public BufferedImage getImage() throws WrongNumComponentsException {
-            Point2D biggestPos = root.getMaxBounds(new Point2D.Double(0, 0));
-            int imageWidth = (int) biggestPos.getX();
-            int imageHeight = (int) biggestPos.getY();
+        /**
+         * @return The width of the smallest image that holds everything in this atlas
+         */
+        public int getWidth() {
+            return width;
+        }
 
-            LOG.info("Image bounds: " + biggestPos);
-            LOG.info("Making an image of size " + imageWidth + ", " + imageHeight);
-            BufferedImage image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_4BYTE_ABGR);
-            int numComponents = image.getColorModel().getNumComponents();
+        /**
+         * @return The height of the smallest image that holds everything in this atlas
+         */
+        public int getHeight() {
+            return height;
+        }
 
-            if(numComponents != 3 && numComponents != 4) {
-                throw new WrongNumComponentsException("Texture should have three or four components, but it has " + numComponents);
-            }
+        /**
+         * @return How much of the atlas image is covered by images, from 0 to 1
+         */
+        public double getOccupancy() {
+            long area = (long) width * height;
+            return area == 0 ? 0 : (double) usedPixels / area;
+        }
 
-            renderAtlas(image);
+        /**
+         * @return How many pixels of the atlas image aren't covered by any image, including gutters
+         */
+        public long getWastedPixels() {
+            return (long) width * height - usedPixels;
+        }
 
-            byte[] imageData = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-            byte[] newData = new byte[imageWidth * imageHeight * numComponents];
+        /**
+         * Copies every image into a single RGBA buffer, the exact layout the native code wants, so the pixels can go
+         * straight to add_texture without any more conversion
+         *
+         * @return A direct buffer of getWidth() * getHeight() RGBA pixels
+         */
+        public ByteBuffer getPixels() {
+            return getPixels(1);
+        }
 
-            for(int y = 0; y < imageHeight; y++) {
-                System.arraycopy(imageData, y * image.getWidth() * numComponents, newData, y * imageWidth * numComponents, numComponents * imageWidth);
+        /**
+         * Copies every image into a single RGBA buffer, followed by the atlas's smaller mip levels
+         *
+         * @param numMipLevels How many mip levels to make, including the full size one. Keep it at or below
+         *                     {@link MipChain#getMaxLevels(int)} for this atlas's padding, or images will bleed into
+         *                     their neighbours at the smaller levels
+         * @return A direct buffer of all the mip levels, biggest first, as laid out by {@link MipChain}
+         */
+        public ByteBuffer getPixels(int numMipLevels) {
+            LOG.info("Making an image of size " + width + ", " + height);
+            ByteBuffer pixels = ByteBuffer.allocateDirect(MipChain.getSize(width, height, numMipLevels) * NUM_COMPONENTS);
+
+            int maxImageWidth = 0;
+            for(Placement placement : placements) {
+                maxImageWidth = Math.max(maxImageWidth, placement.rect.width);
             }
+            int scratchSize = Math.max(maxImageWidth, 1);
+
+            PixelSwizzle.forEachRowBand(width, height, (startRow, endRow) -> {
+                IntBuffer target = PixelSwizzle.target(pixels);
+                int[] scratch = new int[scratchSize];
+                for(Placement placement : placements) {
+                    Rectangle rect = placement.rect;
+                    int firstRow = Math.max(startRow, rect.y - padding);
+                    int lastRow = Math.min(endRow, rect.y + rect.height + padding);
+                    for(int y = firstRow; y < lastRow; y++) {
+                        // The gutter rows above and below the image repeat its first and last rows
+                        int imageRow = Math.min(Math.max(y - rect.y, 0), rect.height - 1);
+                        blitRow(placement, imageRow, y, target, scratch);
+                    }
+                }
+            });
 
-            BufferedImage newImage = new BufferedImage(imageWidth, imageHeight, numComponents == 4 ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
-            byte[] dst = ((DataBufferByte) newImage.getRaster().getDataBuffer()).getData();
-            System.arraycopy(newData, 0, dst, 0, newData.length);
-            //image = newImage;
+            MipChain.generate(pixels, width, height, numMipLevels);
+            return pixels;
+        }
 
-            try {
-                // When I print out the image here, the image is completely black
-                // This implies that I'm not properly drawing the incoming images on the texture atlas
-                File imageFile = new File("Image.jpg");
-                ImageIO.write(image, "jpg", imageFile);
-            } catch(IOException e) {
-                e.printStackTrace();
+        /**
+         * Copies one row of an image into the atlas, along with the gutters to its left and right
+         *
+         * @param row The row of the image to copy
+         * @param atlasRow The row of the atlas to copy it to
+         * @param scratch Scratch space for one row of pixels
+         */
+        private void blitRow(Placement placement, int row, int atlasRow, IntBuffer target, int[] scratch) {
+            Rectangle rect = placement.rect;
+            int dstOffset = atlasRow * width + rect.x;
+
+            if(placement.srcComponents == 4) {
+                PixelSwizzle.abgrToRgba(placement.data, row * rect.width * 4, target, dstOffset, rect.width, scratch);
+            } else if(placement.srcComponents == 3) {
+                PixelSwizzle.bgrToRgba(placement.data, row * rect.width * 3, target, dstOffset, rect.width, scratch);
+            } else {
+                // getRGB and the conversion can share the scratch array, the conversion reads each pixel before it
+                // writes it
+                placement.image.getRGB(0, row, rect.width, 1, scratch, 0, rect.width);
+                PixelSwizzle.argbToRgba(scratch, 0, target, dstOffset, rect.width, scratch);
             }
 
-            return image;
+            if(padding > 0) {
+                int left = target.get(dstOffset);
+                int right = target.get(dstOffset + rect.width - 1);
+                for(int i = 1; i <= padding; i++) {
+                    target.put(dstOffset - i, left);
+                    target.put(dstOffset + rect.width - 1 + i, right);
+                }
+            }
         }
 
         /**
-         * Renders the atlas into the provided image
+         * Writes this atlas to a PNG file, so you can see what the packer did. Slow, only meant for debugging
          *
-         * @param image The Image to render the atlas into
+         * @param pixels The pixels from {@link #getPixels()}. Only the full size mip level is written
+         * @param file The file to write to
          */
-        private void renderAtlas(BufferedImage image) {
-            Graphics2D graphics = image.createGraphics();
+        public void writeDebugImage(ByteBuffer pixels, File file) {
+            BufferedImage image = new BufferedImage(Math.max(width, 1), Math.max(height, 1), BufferedImage.TYPE_INT_ARGB);
+            for(int y = 0; y < height; y++) {
+                for(int x = 0; x < width; x++) {
+                    int i = (y * width + x) * NUM_COMPONENTS;
+                    int argb = (pixels.get(i + 3) & 0xFF) << 24 | (pixels.get(i) & 0xFF) << 16 | (pixels.get(i + 1) & 0xFF) << 8 | (pixels.get(i + 2) & 0xFF);
+                    image.setRGB(x, y, argb);
+                }
+            }
 
-            root.drawAllImages(graphics);
+            try {
+                ImageIO.write(image, "png", file);
+                LOG.info("Wrote atlas to " + file.getAbsolutePath());
+            } catch(IOException e) {
+                LOG.warn("Could not write atlas to " + file, e);
+            }
         }
 
         public Map<String, Rectangle> getRectangleMap() {
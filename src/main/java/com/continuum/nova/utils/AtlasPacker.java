@@ -0,0 +1,38 @@
+package com.continuum.nova.utils;
+
+import java.awt.*;
+
+/**
+ * Decides where in an atlas each texture goes. {@link AtlasGenerator} asks the packer for an empty page for every atlas
+ * it makes, then inserts textures into the page until one doesn't fit.
+ */
+public interface AtlasPacker {
+    /**
+     * A single atlas that's being packed
+     */
+    interface Page {
+        /**
+         * Finds a free spot for a rectangle of the given size and marks it as used
+         *
+         * @param width The width of the rectangle
+         * @param height The height of the rectangle
+         * @return Where the rectangle went, or null if it doesn't fit on this page
+         */
+        Rectangle insert(int width, int height);
+    }
+
+    /**
+     * Creates an empty page
+     *
+     * @param width The width of the page
+     * @param height The height of the page
+     * @return The new page
+     */
+    Page newPage(int width, int height);
+
+    /**
+     * @return A name for this packer. Different packers produce different atlases, so this goes into the atlas cache
+     * key
+     */
+    String getName();
+}
@@ -0,0 +1,75 @@
+package com.continuum.nova.utils;
+
+import java.awt.*;
+
+/**
+ * Packs rectangles by splitting the page into a binary tree, one split per rectangle. This is how Nova used to pack its
+ * atlases. It's simple, but it can't control the shape of the atlas and wastes a lot of space with mixed sizes
+ */
+public class BinaryTreePacker implements AtlasPacker {
+    @Override
+    public Page newPage(int width, int height) {
+        return new Node(0, 0, width, height);
+    }
+
+    @Override
+    public String getName() {
+        return "binary_tree";
+    }
+
+    private static class Node implements Page {
+        Rectangle rect;
+        Node child[];
+        boolean used;
+
+        Node(int x, int y, int width, int height) {
+            rect = new Rectangle(x, y, width, height);
+            child = new Node[2];
+        }
+
+        boolean isLeaf() {
+            return child[0] == null && child[1] == null;
+        }
+
+        @Override
+        public Rectangle insert(int width, int height) {
+            if(!isLeaf()) {
+                Rectangle newRect = child[0].insert(width, height);
+
+                if(newRect != null) {
+                    return newRect;
+                }
+
+                return child[1].insert(width, height);
+            } else {
+                if(used) {
+                    return null;
+                }
+
+                if(width > rect.width || height > rect.height) {
+                    return null;
+                }
+
+                if(width == rect.width && height == rect.height) {
+                    used = true;
+                    return rect;
+                }
+
+                int dw = rect.width - width;
+                int dh = rect.height - height;
+
+                // Prefer filling vertically before horizontally. MC has a number of textures that are much higher
+                // than they are wide
+                if(dh > dw) {
+                    child[0] = new Node(rect.x, rect.y, rect.width, height);
+                    child[1] = new Node(rect.x, rect.y + height, rect.width, rect.height - height);
+                } else {
+                    child[0] = new Node(rect.x, rect.y, width, rect.height);
+                    child[1] = new Node(rect.x + width, rect.y, rect.width - width, rect.height);
+                }
+
+                return child[0].insert(width, height);
+            }
+        }
+    }
+}
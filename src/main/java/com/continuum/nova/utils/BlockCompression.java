@@ -0,0 +1,399 @@
+package com.continuum.nova.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Compresses RGBA atlases into GPU block compression formats, so they take a quarter to an eighth of the memory and
+ * upload bandwidth.
+ * <p>
+ * Every format splits the image into 4x4 blocks and stores each block in a fixed number of bytes. The encoders here
+ * are the fast kind: each block's endpoints come from its bounding box and each pixel picks the closest color between
+ * them. Block rows are encoded in parallel bands. Blocks that hang off the right or bottom edge repeat the edge pixels.
+ */
+public final class BlockCompression {
+    /**
+     * How an atlas's pixels are stored. The ordinal is what the native code gets in mc_atlas_texture's format field
+     */
+    public enum Format {
+        /**
+         * Plain RGBA, one byte per channel
+         */
+        NONE(0),
+
+        /**
+         * Also known as DXT1. RGB only, 8 bytes per block
+         */
+        BC1(8),
+
+        /**
+         * Also known as DXT5. BC1 color plus a separate alpha block, 16 bytes per block
+         */
+        BC3(16),
+
+        /**
+         * RGBA with better quality than BC3, 16 bytes per block. Only mode 6 is used, one pair of RGBA endpoints per
+         * block
+         */
+        BC7(16);
+
+        private final int blockSize;
+
+        Format(int blockSize) {
+            this.blockSize = blockSize;
+        }
+    }
+
+    /**
+     * The weights BC7 uses to interpolate between its endpoints with 4-bit indices, out of 64
+     */
+    private static final int[] BC7_WEIGHTS = {0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64};
+
+    private BlockCompression() {
+    }
+
+    /**
+     * Picks the format an atlas should actually use. BC1 can't store alpha, so atlases with any transparency get BC3
+     * instead
+     *
+     * @param requested The format that was asked for
+     * @param pixels The atlas's RGBA pixels
+     * @param numPixels How many pixels to look at, usually just the full size mip level
+     * @return The format to use
+     */
+    public static Format chooseFormat(Format requested, ByteBuffer pixels, int numPixels) {
+        if(requested != Format.BC1) {
+            return requested;
+        }
+
+        IntBuffer words = PixelSwizzle.target(pixels);
+        for(int i = 0; i < numPixels; i++) {
+            if(words.get(i) >>> 24 != 0xFF) {
+                return Format.BC3;
+            }
+        }
+        return Format.BC1;
+    }
+
+    /**
+     * @return How many bytes one mip level takes in the given format
+     */
+    public static int getLevelSize(Format format, int width, int height, int numComponents) {
+        if(format == Format.NONE) {
+            return width * height * numComponents;
+        }
+        return ((width + 3) / 4) * ((height + 3) / 4) * format.blockSize;
+    }
+
+    /**
+     * @return How many bytes a whole mip chain, laid out like {@link MipChain} does, takes in the given format
+     */
+    public static int getChainSize(Format format, int width, int height, int numComponents, int numMipLevels) {
+        int size = 0;
+        for(int level = 0; level < numMipLevels; level++) {
+            size += getLevelSize(format, MipChain.getLevelWidth(width, level), MipChain.getLevelHeight(height, level), numComponents);
+        }
+        return size;
+    }
+
+    /**
+     * Compresses every level of an RGBA mip chain
+     *
+     * @param pixels The RGBA mip chain, laid out like {@link MipChain} does
+     * @param width The width of the full size level
+     * @param height The height of the full size level
+     * @param numMipLevels How many levels the chain has
+     * @param format The format to compress to. Must not be {@link Format#NONE}
+     * @return A direct buffer with the compressed levels, biggest first, with no space between them
+     */
+    public static ByteBuffer compress(ByteBuffer pixels, int width, int height, int numMipLevels, Format format) {
+        ByteBuffer compressed = ByteBuffer.allocateDirect(getChainSize(format, width, height, 4, numMipLevels));
+
+        int srcOffset = 0;
+        int dstOffset = 0;
+        for(int level = 0; level < numMipLevels; level++) {
+            int levelWidth = MipChain.getLevelWidth(width, level);
+            int levelHeight = MipChain.getLevelHeight(height, level);
+            compressLevel(pixels, srcOffset, levelWidth, levelHeight, compressed, dstOffset, format);
+
+            srcOffset += levelWidth * levelHeight;
+            dstOffset += getLevelSize(format, levelWidth, levelHeight, 4);
+        }
+
+        return compressed;
+    }
+
+    private static void compressLevel(ByteBuffer pixels, int srcOffset, int width, int height, ByteBuffer compressed, int dstOffset, Format format) {
+        int blocksWide = (width + 3) / 4;
+        int blocksHigh = (height + 3) / 4;
+
+        PixelSwizzle.forEachRowBand(blocksWide * 16, blocksHigh, (startRow, endRow) -> {
+            IntBuffer src = PixelSwizzle.target(pixels);
+            ByteBuffer dst = compressed.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int[] texels = new int[16];
+            long[] bc7Block = new long[2];
+
+            for(int blockY = startRow; blockY < endRow; blockY++) {
+                for(int blockX = 0; blockX < blocksWide; blockX++) {
+                    readBlock(src, srcOffset, width, height, blockX * 4, blockY * 4, texels);
+                    int blockOffset = dstOffset + (blockY * blocksWide + blockX) * format.blockSize;
+
+                    switch(format) {
+                        case BC1:
+                            dst.putLong(blockOffset, encodeColorBlock(texels));
+                            break;
+                        case BC3:
+                            dst.putLong(blockOffset, encodeAlphaBlock(texels));
+                            dst.putLong(blockOffset + 8, encodeColorBlock(texels));
+                            break;
+                        case BC7:
+                            encodeBc7Block(texels, bc7Block);
+                            dst.putLong(blockOffset, bc7Block[0]);
+                            dst.putLong(blockOffset + 8, bc7Block[1]);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Can't compress to " + format);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void readBlock(IntBuffer src, int srcOffset, int width, int height, int startX, int startY, int[] texels) {
+        for(int y = 0; y < 4; y++) {
+            int row = srcOffset + Math.min(startY + y, height - 1) * width;
+            for(int x = 0; x < 4; x++) {
+                texels[y * 4 + x] = src.get(row + Math.min(startX + x, width - 1));
+            }
+        }
+    }
+
+    /**
+     * Encodes a BC1 block: two RGB565 endpoints and a 2-bit index per pixel
+     */
+    private static long encodeColorBlock(int[] texels) {
+        int[] min = {255, 255, 255};
+        int[] max = {0, 0, 0};
+        for(int texel : texels) {
+            for(int c = 0; c < 3; c++) {
+                int value = (texel >>> (c * 8)) & 0xFF;
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+
+        // Pulling the endpoints in a little spends the palette where most of the pixels are
+        for(int c = 0; c < 3; c++) {
+            int inset = (max[c] - min[c]) >> 4;
+            max[c] -= inset;
+            min[c] += inset;
+        }
+        int color0 = to565(max[0], max[1], max[2]);
+        int color1 = to565(min[0], min[1], min[2]);
+
+        if(color0 == color1) {
+            return color0 | (long) color1 << 16;
+        }
+
+        // Every channel of the max endpoint is at least the min endpoint's, so color0 > color1, which is the
+        // four-color mode we want
+        int[] palette = new int[4];
+        palette[0] = from565(color0);
+        palette[1] = from565(color1);
+        palette[2] = blend(palette[0], palette[1], 2, 1, 3);
+        palette[3] = blend(palette[0], palette[1], 1, 2, 3);
+
+        long indices = 0;
+        for(int i = 0; i < 16; i++) {
+            indices |= (long) closest(texels[i], palette, 4, false) << (i * 2);
+        }
+
+        return color0 | (long) color1 << 16 | indices << 32;
+    }
+
+    /**
+     * Encodes a BC3 alpha block: two 8-bit endpoints and a 3-bit index per pixel
+     */
+    private static long encodeAlphaBlock(int[] texels) {
+        int minA = 255;
+        int maxA = 0;
+        for(int texel : texels) {
+            minA = Math.min(minA, texel >>> 24);
+            maxA = Math.max(maxA, texel >>> 24);
+        }
+
+        long block = maxA | minA << 8;
+        if(maxA == minA) {
+            return block;
+        }
+
+        // With alpha0 > alpha1 there are six values between the endpoints
+        int[] palette = new int[8];
+        palette[0] = maxA;
+        palette[1] = minA;
+        for(int i = 2; i < 8; i++) {
+            palette[i] = ((8 - i) * maxA + (i - 1) * minA + 3) / 7;
+        }
+
+        for(int i = 0; i < 16; i++) {
+            int alpha = texels[i] >>> 24;
+            int best = 0;
+            int bestError = Integer.MAX_VALUE;
+            for(int p = 0; p < 8; p++) {
+                int error = Math.abs(palette[p] - alpha);
+                if(error < bestError) {
+                    best = p;
+                    bestError = error;
+                }
+            }
+            block |= (long) best << (16 + i * 3);
+        }
+
+        return block;
+    }
+
+    /**
+     * Encodes a BC7 mode 6 block: two RGBA endpoints of seven bits per channel plus a shared low bit each, and a 4-bit
+     * index per pixel
+     */
+    private static void encodeBc7Block(int[] texels, long[] block) {
+        int[] min = {255, 255, 255, 255};
+        int[] max = {0, 0, 0, 0};
+        for(int texel : texels) {
+            for(int c = 0; c < 4; c++) {
+                int value = (texel >>> (c * 8)) & 0xFF;
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+
+        int[] endpoint0 = new int[4];
+        int[] endpoint1 = new int[4];
+        int pBit0 = quantizeBc7Endpoint(min, endpoint0);
+        int pBit1 = quantizeBc7Endpoint(max, endpoint1);
+
+        int[] palette = new int[16];
+        for(int i = 0; i < 16; i++) {
+            int color = 0;
+            for(int c = 0; c < 4; c++) {
+                int e0 = endpoint0[c] << 1 | pBit0;
+                int e1 = endpoint1[c] << 1 | pBit1;
+                color |= (((64 - BC7_WEIGHTS[i]) * e0 + BC7_WEIGHTS[i] * e1 + 32) >> 6) << (c * 8);
+            }
+            palette[i] = color;
+        }
+
+        int[] indices = new int[16];
+        for(int i = 0; i < 16; i++) {
+            indices[i] = closest(texels[i], palette, 16, true);
+        }
+
+        // The first pixel's index only gets three bits, so its top bit has to be zero. Swapping the endpoints flips
+        // every index around
+        if(indices[0] >= 8) {
+            int[] endpoint = endpoint0;
+            endpoint0 = endpoint1;
+            endpoint1 = endpoint;
+            int pBit = pBit0;
+            pBit0 = pBit1;
+            pBit1 = pBit;
+            for(int i = 0; i < 16; i++) {
+                indices[i] = 15 - indices[i];
+            }
+        }
+
+        block[0] = 0;
+        block[1] = 0;
+        int bit = putBits(block, 0, 7, 1 << 6);
+        for(int c = 0; c < 4; c++) {
+            bit = putBits(block, bit, 7, endpoint0[c]);
+            bit = putBits(block, bit, 7, endpoint1[c]);
+        }
+        bit = putBits(block, bit, 1, pBit0);
+        bit = putBits(block, bit, 1, pBit1);
+        bit = putBits(block, bit, 3, indices[0]);
+        for(int i = 1; i < 16; i++) {
+            bit = putBits(block, bit, 4, indices[i]);
+        }
+    }
+
+    /**
+     * Turns an 8-bit RGBA color into seven bits per channel plus the shared low bit that gets closest to it
+     *
+     * @param color The color to quantize
+     * @param quantized Receives the seven bit channels
+     * @return The low bit
+     */
+    private static int quantizeBc7Endpoint(int[] color, int[] quantized) {
+        int bestPBit = 0;
+        int bestError = Integer.MAX_VALUE;
+        for(int pBit = 0; pBit < 2; pBit++) {
+            int error = 0;
+            for(int c = 0; c < 4; c++) {
+                int value = Math.min(127, Math.max(0, (color[c] - pBit + 1) >> 1));
+                int diff = (value << 1 | pBit) - color[c];
+                error += diff * diff;
+            }
+            if(error < bestError) {
+                bestError = error;
+                bestPBit = pBit;
+            }
+        }
+
+        for(int c = 0; c < 4; c++) {
+            quantized[c] = Math.min(127, Math.max(0, (color[c] - bestPBit + 1) >> 1));
+        }
+        return bestPBit;
+    }
+
+    private static int putBits(long[] block, int bit, int count, int value) {
+        for(int i = 0; i < count; i++, bit++) {
+            if(((value >> i) & 1) != 0) {
+                block[bit >> 6] |= 1L << (bit & 63);
+            }
+        }
+        return bit;
+    }
+
+    private static int closest(int texel, int[] palette, int paletteSize, boolean withAlpha) {
+        int best = 0;
+        int bestError = Integer.MAX_VALUE;
+        int channels = withAlpha ? 4 : 3;
+        for(int p = 0; p < paletteSize; p++) {
+            int error = 0;
+            for(int c = 0; c < channels; c++) {
+                int diff = ((texel >>> (c * 8)) & 0xFF) - ((palette[p] >>> (c * 8)) & 0xFF);
+                error += diff * diff;
+            }
+            if(error < bestError) {
+                best = p;
+                bestError = error;
+            }
+        }
+        return best;
+    }
+
+    private static int to565(int r, int g, int b) {
+        return ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+    }
+
+    /**
+     * @return The 565 color as an RGBA word, the same layout as the texels
+     */
+    private static int from565(int color) {
+        int r = (color >> 11) & 0x1F;
+        int g = (color >> 5) & 0x3F;
+        int b = color & 0x1F;
+        return (r << 3 | r >> 2) | (g << 2 | g >> 4) << 8 | (b << 3 | b >> 2) << 16;
+    }
+
+    private static int blend(int color0, int color1, int weight0, int weight1, int total) {
+        int result = 0;
+        for(int c = 0; c < 3; c++) {
+            int value = (((color0 >>> (c * 8)) & 0xFF) * weight0 + ((color1 >>> (c * 8)) & 0xFF) * weight1) / total;
+            result |= value << (c * 8);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,184 @@
+package com.continuum.nova.utils;
+
+import com.continuum.nova.NovaNative;
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The blocks of one 16x16x16 chunk section, stored the way the native code wants them.
+ * <p>
+ * Instead of one structure per block, a section has a palette of the distinct block states in it and a packed array
+ * with one palette index per block. Most sections only have a handful of different blocks, so the indices are a few
+ * bits each. The palette and the indices share a single direct buffer, which the native code copies in one go:
+ * <ul>
+ *     <li>The palette, {@code palette_size} ints holding block state IDs</li>
+ *     <li>Padding up to a multiple of eight bytes</li>
+ *     <li>The indices, packed into 64-bit words from the lowest bit up. {@code bits_per_block} is always 1, 2, 4, 8 or
+ *     16, so no index straddles two words. Block (x, y, z) is index {@code (y * 16 + z) * 16 + x}</li>
+ * </ul>
+ * A section with only one block state has {@code bits_per_block} 0 and no indices at all.
+ * <p>
+ * A section can also carry its mesh, in a second direct buffer. See {@link com.continuum.nova.chunks.GreedyMesher} for
+ * the vertex layout.
+ * <p>
+ * A ChunkSection is meant to be reused: every call to {@link #pack(int[])} overwrites the buffer, so send the command
+ * from {@link #getCommand()} to the native code before packing the next section.
+ */
+public class ChunkSection {
+    public static final int SIZE = 16;
+    public static final int NUM_BLOCKS = SIZE * SIZE * SIZE;
+
+    private int[] palette = new int[16];
+    private int paletteSize;
+    private int bitsPerBlock;
+
+    /**
+     * Maps a block state ID to its index in the palette. Only valid where paletteStamps matches the current stamp, which
+     * saves clearing the whole table for every section
+     */
+    private int[] paletteIndices = new int[0];
+    private int[] paletteStamps = new int[0];
+    private int stamp;
+
+    private final long[] words = new long[NUM_BLOCKS * 16 / 64];
+    private ByteBuffer data = ByteBuffer.allocateDirect(0);
+    private ByteBuffer vertexData = ByteBuffer.allocateDirect(0);
+
+    private final NovaNative.mc_chunk_section command = new NovaNative.mc_chunk_section();
+
+    /**
+     * Packs the given blocks into this section, replacing whatever was there
+     *
+     * @param stateIds The block state ID of every block in the section, in (y * 16 + z) * 16 + x order
+     */
+    public void pack(int[] stateIds) {
+        buildPalette(stateIds);
+
+        bitsPerBlock = 0;
+        if(paletteSize > 1) {
+            bitsPerBlock = 1;
+            while((1 << bitsPerBlock) < paletteSize) {
+                bitsPerBlock *= 2;
+            }
+        }
+
+        int paletteBytes = (paletteSize * 4 + 7) & ~7;
+        int numWords = NUM_BLOCKS * bitsPerBlock / 64;
+        int dataSize = paletteBytes + numWords * 8;
+        if(data.capacity() < dataSize) {
+            data = ByteBuffer.allocateDirect(dataSize).order(ByteOrder.nativeOrder());
+        }
+
+        data.clear();
+        data.asIntBuffer().put(palette, 0, paletteSize);
+
+        if(bitsPerBlock > 0) {
+            packIndices(stateIds, numWords);
+            data.position(paletteBytes);
+            data.asLongBuffer().put(words, 0, numWords);
+            data.clear();
+        }
+
+        command.bits_per_block = bitsPerBlock;
+        command.palette_size = paletteSize;
+        command.data_size = dataSize;
+        command.data = Native.getDirectBufferPointer(data);
+
+        // The old mesh is for the old blocks
+        command.vertex_buffer_size = 0;
+        command.vertex_buffer = null;
+    }
+
+    /**
+     * Sets the section's mesh. Call after {@link #pack(int[])}, which clears it
+     *
+     * @param vertices The vertices, as laid out by {@link com.continuum.nova.chunks.GreedyMesher}
+     * @param numFloats How many floats of the array to use
+     */
+    public void setVertices(float[] vertices, int numFloats) {
+        if(numFloats == 0) {
+            command.vertex_buffer_size = 0;
+            command.vertex_buffer = null;
+            return;
+        }
+
+        if(vertexData.capacity() < numFloats * 4) {
+            // Leave some room, meshes grow and shrink a little with every block change
+            vertexData = ByteBuffer.allocateDirect(numFloats * 4 + numFloats).order(ByteOrder.nativeOrder());
+        }
+
+        vertexData.clear();
+        vertexData.asFloatBuffer().put(vertices, 0, numFloats);
+
+        command.vertex_buffer_size = numFloats;
+        command.vertex_buffer = Native.getDirectBufferPointer(vertexData);
+    }
+
+    private void buildPalette(int[] stateIds) {
+        stamp++;
+        if(stamp == 0) {
+            // Wrapped around, so old stamps could look current
+            Arrays.fill(paletteStamps, 0);
+            stamp = 1;
+        }
+
+        paletteSize = 0;
+        int lastState = -1;
+        for(int stateId : stateIds) {
+            // Runs of the same block are the common case
+            if(stateId == lastState) {
+                continue;
+            }
+            lastState = stateId;
+
+            if(stateId >= paletteStamps.length) {
+                int newSize = Math.max(stateId + 1, paletteStamps.length * 2);
+                paletteStamps = Arrays.copyOf(paletteStamps, newSize);
+                paletteIndices = Arrays.copyOf(paletteIndices, newSize);
+            }
+
+            if(paletteStamps[stateId] != stamp) {
+                paletteStamps[stateId] = stamp;
+                paletteIndices[stateId] = paletteSize;
+
+                if(paletteSize == palette.length) {
+                    palette = Arrays.copyOf(palette, palette.length * 2);
+                }
+                palette[paletteSize++] = stateId;
+            }
+        }
+    }
+
+    private void packIndices(int[] stateIds, int numWords) {
+        int blocksPerWord = 64 / bitsPerBlock;
+        for(int word = 0, block = 0; word < numWords; word++) {
+            long packed = 0;
+            for(int i = 0; i < blocksPerWord; i++, block++) {
+                packed |= (long) paletteIndices[stateIds[block]] << (i * bitsPerBlock);
+            }
+            words[word] = packed;
+        }
+    }
+
+    /**
+     * @return How many different block states are in the section
+     */
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public int getBitsPerBlock() {
+        return bitsPerBlock;
+    }
+
+    /**
+     * @return The command that sends this section to the native code. It points at this section's buffer, so it's only
+     * good until the next call to {@link #pack(int[])}
+     */
+    public NovaNative.mc_chunk_section getCommand() {
+        return command;
+    }
+}
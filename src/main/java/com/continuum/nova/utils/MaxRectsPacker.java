@@ -0,0 +1,118 @@
+package com.continuum.nova.utils;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles with the MaxRects algorithm, using the best short side fit heuristic.
+ * <p>
+ * The page keeps a list of maximal free rectangles, which may overlap. A new rectangle goes into the free rectangle
+ * where it leaves the smallest leftover on its shorter side, then every free rectangle it overlaps is split around it.
+ * This packs mixed sizes much more tightly than a binary tree.
+ */
+public class MaxRectsPacker implements AtlasPacker {
+    @Override
+    public Page newPage(int width, int height) {
+        return new MaxRectsPage(width, height);
+    }
+
+    @Override
+    public String getName() {
+        return "max_rects";
+    }
+
+    private static class MaxRectsPage implements Page {
+        private List<Rectangle> freeRects = new ArrayList<>();
+
+        MaxRectsPage(int width, int height) {
+            freeRects.add(new Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public Rectangle insert(int width, int height) {
+            Rectangle best = null;
+            int bestShortSide = Integer.MAX_VALUE;
+            int bestLongSide = Integer.MAX_VALUE;
+
+            for(Rectangle free : freeRects) {
+                if(free.width < width || free.height < height) {
+                    continue;
+                }
+
+                int leftoverX = free.width - width;
+                int leftoverY = free.height - height;
+                int shortSide = Math.min(leftoverX, leftoverY);
+                int longSide = Math.max(leftoverX, leftoverY);
+
+                if(shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+                    best = new Rectangle(free.x, free.y, width, height);
+                    bestShortSide = shortSide;
+                    bestLongSide = longSide;
+                }
+            }
+
+            if(best != null) {
+                place(best);
+            }
+            return best;
+        }
+
+        private void place(Rectangle used) {
+            List<Rectangle> newFreeRects = new ArrayList<>(freeRects.size() + 4);
+            for(Rectangle free : freeRects) {
+                if(free.intersects(used)) {
+                    splitAround(free, used, newFreeRects);
+                } else {
+                    newFreeRects.add(free);
+                }
+            }
+
+            freeRects = removeContained(newFreeRects);
+        }
+
+        /**
+         * Adds the up to four maximal rectangles of free that don't overlap used
+         */
+        private static void splitAround(Rectangle free, Rectangle used, List<Rectangle> out) {
+            if(used.x > free.x) {
+                out.add(new Rectangle(free.x, free.y, used.x - free.x, free.height));
+            }
+            if(used.x + used.width < free.x + free.width) {
+                out.add(new Rectangle(used.x + used.width, free.y, free.x + free.width - (used.x + used.width), free.height));
+            }
+            if(used.y > free.y) {
+                out.add(new Rectangle(free.x, free.y, free.width, used.y - free.y));
+            }
+            if(used.y + used.height < free.y + free.height) {
+                out.add(new Rectangle(free.x, used.y + used.height, free.width, free.y + free.height - (used.y + used.height)));
+            }
+        }
+
+        /**
+         * Drops every free rectangle that's inside another one, since it can never be the better choice
+         */
+        private static List<Rectangle> removeContained(List<Rectangle> rects) {
+            List<Rectangle> result = new ArrayList<>(rects.size());
+            for(int i = 0; i < rects.size(); i++) {
+                Rectangle rect = rects.get(i);
+                boolean contained = false;
+
+                for(int j = 0; j < rects.size() && !contained; j++) {
+                    if(i == j) {
+                        continue;
+                    }
+
+                    Rectangle other = rects.get(j);
+                    // If two rectangles are identical, keep only the first one
+                    contained = other.contains(rect) && (!rect.equals(other) || j < i);
+                }
+
+                if(!contained) {
+                    result.add(rect);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.continuum.nova.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Builds the smaller mip levels of an RGBA atlas.
+ * <p>
+ * All the levels live in one buffer, biggest first, with no space between them. Level n is
+ * {@code max(1, width >> n)} by {@code max(1, height >> n)} pixels. Each level is made from the one before it with a
+ * 2x2 box filter, in bands of rows that run in parallel.
+ * <p>
+ * A texel at level n covers 2^n pixels of the full size atlas in each direction. For it to never mix two different
+ * textures, every texture needs a gutter of at least 2^n - 1 pixels that repeats its edges, which is what the padding
+ * in {@link AtlasGenerator} gives it.
+ */
+public final class MipChain {
+    private MipChain() {
+    }
+
+    /**
+     * @param padding The width of the gutter around each texture
+     * @return How many mip levels, including the full size one, can be built without textures bleeding into each other
+     */
+    public static int getMaxLevels(int padding) {
+        // 2^(levels - 1) - 1 <= padding
+        return 32 - Integer.numberOfLeadingZeros(padding + 1);
+    }
+
+    /**
+     * @param numMipLevels How many mip levels, including the full size one, should be bleed-free
+     * @return The narrowest gutter that gives that many levels
+     */
+    public static int getRequiredPadding(int numMipLevels) {
+        return (1 << (numMipLevels - 1)) - 1;
+    }
+
+    /**
+     * @return How many levels it takes to get an image of the given size down to a single pixel
+     */
+    public static int getFullChainLength(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(Math.max(width, height), 1));
+    }
+
+    /**
+     * @return How many pixels all the given mip levels take up together
+     */
+    public static int getSize(int width, int height, int numMipLevels) {
+        int size = 0;
+        for(int level = 0; level < numMipLevels; level++) {
+            size += getLevelWidth(width, level) * getLevelHeight(height, level);
+        }
+        return size;
+    }
+
+    public static int getLevelWidth(int width, int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public static int getLevelHeight(int height, int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * Fills in every mip level after the first one
+     *
+     * @param pixels A buffer big enough for all the levels, with the full size level already at the start
+     * @param width The width of the full size level
+     * @param height The height of the full size level
+     * @param numMipLevels How many levels the buffer holds, including the full size one
+     */
+    public static void generate(ByteBuffer pixels, int width, int height, int numMipLevels) {
+        int srcOffset = 0;
+        for(int level = 1; level < numMipLevels; level++) {
+            int srcWidth = getLevelWidth(width, level - 1);
+            int srcHeight = getLevelHeight(height, level - 1);
+            int dstWidth = getLevelWidth(width, level);
+            int dstHeight = getLevelHeight(height, level);
+            int dstOffset = srcOffset + srcWidth * srcHeight;
+
+            int levelSrcOffset = srcOffset;
+            PixelSwizzle.forEachRowBand(dstWidth, dstHeight, (startRow, endRow) -> {
+                IntBuffer words = PixelSwizzle.target(pixels);
+                for(int y = startRow; y < endRow; y++) {
+                    downsampleRow(words, levelSrcOffset, srcWidth, srcHeight, dstOffset, dstWidth, y);
+                }
+            });
+
+            srcOffset = dstOffset;
+        }
+    }
+
+    private static void downsampleRow(IntBuffer words, int srcOffset, int srcWidth, int srcHeight, int dstOffset, int dstWidth, int y) {
+        // Odd sizes just repeat the last row or column
+        int row0 = srcOffset + Math.min(y * 2, srcHeight - 1) * srcWidth;
+        int row1 = srcOffset + Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+
+        for(int x = 0; x < dstWidth; x++) {
+            int x0 = Math.min(x * 2, srcWidth - 1);
+            int x1 = Math.min(x * 2 + 1, srcWidth - 1);
+            int pixel = average(words.get(row0 + x0), words.get(row0 + x1), words.get(row1 + x0), words.get(row1 + x1));
+            words.put(dstOffset + y * dstWidth + x, pixel);
+        }
+    }
+
+    /**
+     * Averages four RGBA pixels. The colors are weighted by alpha, so the invisible pixels around the edge of a cutout
+     * texture don't darken it
+     */
+    private static int average(int p0, int p1, int p2, int p3) {
+        int a0 = p0 >>> 24;
+        int a1 = p1 >>> 24;
+        int a2 = p2 >>> 24;
+        int a3 = p3 >>> 24;
+        int totalAlpha = a0 + a1 + a2 + a3;
+
+        if(totalAlpha == 0) {
+            return averageChannel(p0, p1, p2, p3, 0, 1, 1, 1, 1, 4)
+                    | averageChannel(p0, p1, p2, p3, 8, 1, 1, 1, 1, 4) << 8
+                    | averageChannel(p0, p1, p2, p3, 16, 1, 1, 1, 1, 4) << 16;
+        }
+
+        return averageChannel(p0, p1, p2, p3, 0, a0, a1, a2, a3, totalAlpha)
+                | averageChannel(p0, p1, p2, p3, 8, a0, a1, a2, a3, totalAlpha) << 8
+                | averageChannel(p0, p1, p2, p3, 16, a0, a1, a2, a3, totalAlpha) << 16
+                | ((totalAlpha + 2) >> 2) << 24;
+    }
+
+    private static int averageChannel(int p0, int p1, int p2, int p3, int shift, int w0, int w1, int w2, int w3, int totalWeight) {
+        int sum = ((p0 >>> shift) & 0xFF) * w0
+                + ((p1 >>> shift) & 0xFF) * w1
+                + ((p2 >>> shift) & 0xFF) * w2
+                + ((p3 >>> shift) & 0xFF) * w3;
+        return (sum + totalWeight / 2) / totalWeight;
+    }
+}
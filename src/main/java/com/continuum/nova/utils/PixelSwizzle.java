@@ -0,0 +1,146 @@
+package com.continuum.nova.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Converts pixels from the layouts Java hands us into the RGBA byte order the native code wants.
+ * <p>
+ * Instead of shuffling one byte at a time, every conversion works on whole pixels as int words: it moves the channels
+ * around with a couple of shifts and masks into a scratch array, then hands the scratch array to a little endian
+ * {@link IntBuffer} in one bulk put. Seen through a little endian view an RGBA pixel is just the int
+ * {@code A << 24 | B << 16 | G << 8 | R}, and ABGR bytes read big endian are exactly that int, so that conversion is
+ * nothing but two bulk copies.
+ * <p>
+ * The int views keep a position, so each thread needs its own view from {@link #target(ByteBuffer)}. As long as the
+ * threads write different parts of the buffer they can share it, which is what
+ * {@link #forEachRowBand(int, int, RowBand)} is for.
+ */
+public final class PixelSwizzle {
+    /**
+     * Images smaller than this many pixels aren't worth splitting up, the threads cost more than they save
+     */
+    private static final int MIN_BAND_PIXELS = 1 << 16;
+
+    /**
+     * Processes some rows of an image
+     */
+    public interface RowBand {
+        /**
+         * @param startRow The first row to process
+         * @param endRow One past the last row to process
+         */
+        void process(int startRow, int endRow);
+    }
+
+    private PixelSwizzle() {
+    }
+
+    /**
+     * Makes a view of the given buffer that the conversions can write to
+     *
+     * @param pixels The buffer that will hold the RGBA pixels
+     * @return A little endian int view of the whole buffer, sharing its contents
+     */
+    public static IntBuffer target(ByteBuffer pixels) {
+        ByteBuffer target = pixels.duplicate();
+        target.clear();
+        return target.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Converts packed ARGB ints, like the ones from {@link java.awt.image.BufferedImage#getRGB(int, int)} and
+     * Minecraft's sprite frames, to RGBA bytes
+     *
+     * @param src The ARGB pixels
+     * @param srcOffset The index of the first pixel to convert
+     * @param dst The buffer to write to, from {@link #target(ByteBuffer)}
+     * @param dstOffset The pixel in dst to start writing at
+     * @param count How many pixels to convert
+     * @param scratch Scratch space, any size. A row's worth saves a few bulk puts
+     */
+    public static void argbToRgba(int[] src, int srcOffset, IntBuffer dst, int dstOffset, int count, int[] scratch) {
+        for(int done = 0; done < count; done += scratch.length) {
+            int n = Math.min(scratch.length, count - done);
+            for(int i = 0, s = srcOffset + done; i < n; i++, s++) {
+                int pixel = src[s];
+                // Alpha and green stay put, red and blue trade places
+                scratch[i] = (pixel & 0xFF00FF00) | ((pixel >>> 16) & 0xFF) | ((pixel & 0xFF) << 16);
+            }
+
+            dst.position(dstOffset + done);
+            dst.put(scratch, 0, n);
+        }
+    }
+
+    /**
+     * Converts ABGR bytes, the layout of {@link java.awt.image.BufferedImage#TYPE_4BYTE_ABGR}, to RGBA bytes
+     *
+     * @param src The ABGR pixels
+     * @param srcOffset The byte in src to start reading at
+     * @param dst The buffer to write to, from {@link #target(ByteBuffer)}
+     * @param dstOffset The pixel in dst to start writing at
+     * @param count How many pixels to convert
+     * @param scratch Scratch space, any size. A row's worth saves a few bulk copies
+     */
+    public static void abgrToRgba(byte[] src, int srcOffset, IntBuffer dst, int dstOffset, int count, int[] scratch) {
+        // ABGR is RGBA backwards, so reading big endian and writing little endian does the whole job
+        IntBuffer in = ByteBuffer.wrap(src, srcOffset, count * 4).asIntBuffer();
+        dst.position(dstOffset);
+        while(in.hasRemaining()) {
+            int n = Math.min(scratch.length, in.remaining());
+            in.get(scratch, 0, n);
+            dst.put(scratch, 0, n);
+        }
+    }
+
+    /**
+     * Converts BGR bytes, the layout of {@link java.awt.image.BufferedImage#TYPE_3BYTE_BGR}, to opaque RGBA bytes
+     *
+     * @param src The BGR pixels
+     * @param srcOffset The byte in src to start reading at
+     * @param dst The buffer to write to, from {@link #target(ByteBuffer)}
+     * @param dstOffset The pixel in dst to start writing at
+     * @param count How many pixels to convert
+     * @param scratch Scratch space, any size. A row's worth saves a few bulk puts
+     */
+    public static void bgrToRgba(byte[] src, int srcOffset, IntBuffer dst, int dstOffset, int count, int[] scratch) {
+        for(int done = 0; done < count; done += scratch.length) {
+            int n = Math.min(scratch.length, count - done);
+            for(int i = 0, s = srcOffset + done * 3; i < n; i++, s += 3) {
+                scratch[i] = 0xFF000000 | (src[s] & 0xFF) << 16 | (src[s + 1] & 0xFF) << 8 | (src[s + 2] & 0xFF);
+            }
+
+            dst.position(dstOffset + done);
+            dst.put(scratch, 0, n);
+        }
+    }
+
+    /**
+     * Splits an image into bands of rows and processes the bands in parallel. Small images are processed on the
+     * calling thread. When called from a task on a {@link java.util.concurrent.ForkJoinPool} the bands run on that pool
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param band What to do with each band
+     */
+    public static void forEachRowBand(int width, int height, RowBand band) {
+        long numPixels = (long) width * height;
+        int numBands = (int) Math.min(Runtime.getRuntime().availableProcessors() * 2L, numPixels / MIN_BAND_PIXELS);
+        if(numBands <= 1) {
+            band.process(0, height);
+            return;
+        }
+
+        int rowsPerBand = (height + numBands - 1) / numBands;
+        IntStream.range(0, numBands).parallel().forEach(i -> {
+            int startRow = i * rowsPerBand;
+            int endRow = Math.min(height, startRow + rowsPerBand);
+            if(startRow < endRow) {
+                band.process(startRow, endRow);
+            }
+        });
+    }
+}
@@ -12,11 +12,11 @@ import net.minecraft.init.MobEffects;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
-import java.util.List;
 
 public class RenderCommandBuilder {
     private static final Logger LOG = LogManager.getLogger(RenderCommandBuilder.class);
@@ -41,27 +41,71 @@ public class RenderCommandBuilder {
         return set_gui_screen_command;
     }
 
-    private static NovaNative.mc_chunk makeChunk(World world, BlockPos chunkCoordinates) {
-        NovaNative.mc_chunk chunk = new NovaNative.mc_chunk();
-        NovaNative.mc_block[] blocks = new NovaNative.mc_block[16 * 16 * 16];
-        return chunk;
+    /**
+     * Reads a chunk section out of the world and packs it for the native code
+     *
+     * @param world The world to read from
+     * @param sectionX The x coordinate of the section, in sections
+     * @param sectionY The y coordinate of the section, in sections. 0 is the bottom of the world
+     * @param sectionZ The z coordinate of the section, in sections
+     * @param section The section to pack the blocks into. Its previous contents are overwritten
+     * @param stateIds Scratch space for ChunkSection.NUM_BLOCKS block state IDs
+     * @return The command to send the section, or null if the section has no blocks
+     */
+    public static NovaNative.mc_chunk_section makeChunkSection(World world, int sectionX, int sectionY, int sectionZ, ChunkSection section, int[] stateIds) {
+        ExtendedBlockStorage storage = getSectionStorage(world, sectionX, sectionY, sectionZ);
+        if(storage == null) {
+            return null;
+        }
+
+        return makeChunkSection(storage, sectionX, sectionY, sectionZ, section, stateIds);
     }
 
-    private static List<NovaNative.mc_chunk> getAllChunks(World world, int renderChunkDistance) {
-        List<NovaNative.mc_chunk> renderableChunks = new ArrayList<>();
-        int chunkCountX = renderChunkDistance;
-        int chunkCountY = 16;
-        int chunkCountZ = renderChunkDistance;
+    /**
+     * Finds the blocks of a chunk section. Looking up the chunk isn't thread safe, so this has to happen on the client
+     * thread. Reading the blocks out of the storage can happen anywhere, the same as for Minecraft's own chunk
+     * rendering
+     *
+     * @return The section's blocks, or null if the section has no blocks
+     */
+    public static ExtendedBlockStorage getSectionStorage(World world, int sectionX, int sectionY, int sectionZ) {
+        if(sectionY < 0 || sectionY >= 16) {
+            return null;
+        }
+
+        Chunk chunk = world.getChunkFromChunkCoords(sectionX, sectionZ);
+        ExtendedBlockStorage storage = chunk.getBlockStorageArray()[sectionY];
+        if(storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+            return null;
+        }
+
+        return storage;
+    }
 
-        for (int x = 0; x < chunkCountX; x++) {
-            for (int y = 0; y < chunkCountY; y++) {
-                for (int z = 0; z < chunkCountZ; z++) {
-                    BlockPos pos = new BlockPos(x * 16, y * 16, z * 16);
-                    renderableChunks.add(makeChunk(world, pos));
+    /**
+     * Packs the blocks of a chunk section for the native code
+     *
+     * @param storage The section's blocks, from {@link #getSectionStorage(World, int, int, int)}
+     * @param section The section to pack the blocks into. Its previous contents are overwritten
+     * @param stateIds Scratch space for ChunkSection.NUM_BLOCKS block state IDs
+     * @return The command to send the section
+     */
+    public static NovaNative.mc_chunk_section makeChunkSection(ExtendedBlockStorage storage, int sectionX, int sectionY, int sectionZ, ChunkSection section, int[] stateIds) {
+        int i = 0;
+        for(int y = 0; y < ChunkSection.SIZE; y++) {
+            for(int z = 0; z < ChunkSection.SIZE; z++) {
+                for(int x = 0; x < ChunkSection.SIZE; x++) {
+                    stateIds[i++] = Block.getStateId(storage.get(x, y, z));
                 }
             }
         }
 
-        return renderableChunks;
+        section.pack(stateIds);
+
+        NovaNative.mc_chunk_section command = section.getCommand();
+        command.section_x = sectionX;
+        command.section_y = sectionY;
+        command.section_z = sectionZ;
+        return command;
     }
 }
@@ -0,0 +1,145 @@
+package com.continuum.nova.utils;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles against a skyline, using the bottom-left heuristic.
+ * <p>
+ * The page only remembers the top edge of everything placed so far, as a list of horizontal segments. A new rectangle
+ * goes wherever its top edge ends up lowest, so the atlas fills up row by row and stays compact. It's cheaper than
+ * MaxRects and works well when the textures are sorted by height.
+ */
+public class SkylinePacker implements AtlasPacker {
+    @Override
+    public Page newPage(int width, int height) {
+        return new SkylinePage(width, height);
+    }
+
+    @Override
+    public String getName() {
+        return "skyline";
+    }
+
+    private static class SkylinePage implements Page {
+        /**
+         * A horizontal piece of the skyline. Everything below y between x and x + width is used
+         */
+        private static class Segment {
+            int x;
+            int y;
+            int width;
+
+            Segment(int x, int y, int width) {
+                this.x = x;
+                this.y = y;
+                this.width = width;
+            }
+        }
+
+        private final int width;
+        private final int height;
+        private final List<Segment> skyline = new ArrayList<>();
+
+        SkylinePage(int width, int height) {
+            this.width = width;
+            this.height = height;
+            skyline.add(new Segment(0, 0, width));
+        }
+
+        @Override
+        public Rectangle insert(int rectWidth, int rectHeight) {
+            int bestIndex = -1;
+            int bestTop = Integer.MAX_VALUE;
+            int bestX = Integer.MAX_VALUE;
+            int bestY = 0;
+
+            for(int i = 0; i < skyline.size(); i++) {
+                int y = fitAt(i, rectWidth, rectHeight);
+                if(y < 0) {
+                    continue;
+                }
+
+                int x = skyline.get(i).x;
+                int top = y + rectHeight;
+                if(top < bestTop || (top == bestTop && x < bestX)) {
+                    bestIndex = i;
+                    bestTop = top;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+
+            if(bestIndex < 0) {
+                return null;
+            }
+
+            addSegment(bestIndex, bestX, bestTop, rectWidth);
+            return new Rectangle(bestX, bestY, rectWidth, rectHeight);
+        }
+
+        /**
+         * Figures out how low a rectangle can sit if its left edge is at the start of the given segment
+         *
+         * @return The y position of the rectangle, or -1 if it doesn't fit there
+         */
+        private int fitAt(int index, int rectWidth, int rectHeight) {
+            int x = skyline.get(index).x;
+            if(x + rectWidth > width) {
+                return -1;
+            }
+
+            int y = 0;
+            int widthLeft = rectWidth;
+            for(int i = index; widthLeft > 0; i++) {
+                Segment segment = skyline.get(i);
+                y = Math.max(y, segment.y);
+                if(y + rectHeight > height) {
+                    return -1;
+                }
+                widthLeft -= segment.width;
+            }
+
+            return y;
+        }
+
+        /**
+         * Raises the skyline over the placed rectangle
+         */
+        private void addSegment(int index, int x, int y, int segmentWidth) {
+            skyline.add(index, new Segment(x, y, segmentWidth));
+
+            // Cut away whatever the new segment now covers
+            int end = x + segmentWidth;
+            int i = index + 1;
+            while(i < skyline.size()) {
+                Segment segment = skyline.get(i);
+                if(segment.x >= end) {
+                    break;
+                }
+
+                int shrink = end - segment.x;
+                if(shrink >= segment.width) {
+                    skyline.remove(i);
+                } else {
+                    segment.x += shrink;
+                    segment.width -= shrink;
+                    break;
+                }
+            }
+
+            // Merge neighbours at the same height
+            for(i = 0; i < skyline.size() - 1; ) {
+                Segment segment = skyline.get(i);
+                Segment next = skyline.get(i + 1);
+                if(segment.y == next.y) {
+                    segment.width += next.width;
+                    skyline.remove(i + 1);
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.continuum.nova;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how much garbage a piece of code makes, for tests of code that's supposed to make none
+ */
+final class Allocations {
+    private Allocations() {
+    }
+
+    /**
+     * @return how many bytes the given work allocated on this thread, or 0 if the JVM can't tell
+     */
+    static long bytesAllocatedBy(Runnable work) {
+        long start = allocatedBytes();
+        if(start < 0) {
+            return 0;
+        }
+
+        // Asking for the allocated bytes can allocate too
+        long measuringCost = allocatedBytes() - start;
+
+        long before = allocatedBytes();
+        work.run();
+        return allocatedBytes() - before - measuringCost;
+    }
+
+    /**
+     * @return how many bytes this thread has allocated so far, or -1 if the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+            if(hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+package com.continuum.nova;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times getting a 4096x4096 RGBA atlas's pixels to where add_texture can read them, which is what building an
+ * {@link NovaNative.mc_atlas_texture} does. Run the main method, it isn't part of the test suite.
+ * <p>
+ * Three ways are compared: the old byte[] constructor, which filled a Memory with one setByte call per byte; the
+ * byte[] constructor now, which copies the whole array with one Memory.write; and the ByteBuffer constructor with a
+ * direct buffer, which hands the buffer's address over without copying anything. Each includes allocating the native
+ * memory, like the constructors do. add_texture itself isn't part of it, since that needs the native code.
+ */
+public class AtlasUploadBenchmark {
+    private static final int ATLAS_SIZE = 4096;
+    private static final int NUM_COMPONENTS = 4;
+    private static final int RUNS = 10;
+
+    /**
+     * 67 million JNA calls per run, so it gets fewer runs
+     */
+    private static final int PER_BYTE_RUNS = 3;
+
+    private static final double MEGAPIXELS = ATLAS_SIZE * (double) ATLAS_SIZE / 1e6;
+
+    public static void main(String[] args) {
+        byte[] pixels = new byte[ATLAS_SIZE * ATLAS_SIZE * NUM_COMPONENTS];
+        new Random(1).nextBytes(pixels);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(pixels.length).order(ByteOrder.nativeOrder());
+        direct.put(pixels);
+        direct.clear();
+
+        check("per byte", perByte(pixels), pixels);
+        check("bulk copy", new NovaNative.mc_atlas_texture(ATLAS_SIZE, ATLAS_SIZE, NUM_COMPONENTS, pixels).texture_data, pixels);
+        check("direct buffer", new NovaNative.mc_atlas_texture(ATLAS_SIZE, ATLAS_SIZE, NUM_COMPONENTS, direct).texture_data, pixels);
+
+        System.out.println("Setting up a " + ATLAS_SIZE + "x" + ATLAS_SIZE + " RGBA atlas (" + String.format("%.1f", MEGAPIXELS)
+                + " megapixels), best of " + RUNS + " runs, " + PER_BYTE_RUNS + " for the per byte fill");
+        for(int round = 0; round < 2; round++) {
+            time("per byte setByte", PER_BYTE_RUNS, () -> perByte(pixels));
+            time("bulk Memory.write", RUNS, () -> new NovaNative.mc_atlas_texture(ATLAS_SIZE, ATLAS_SIZE, NUM_COMPONENTS, pixels));
+            time("direct buffer", RUNS, () -> new NovaNative.mc_atlas_texture(ATLAS_SIZE, ATLAS_SIZE, NUM_COMPONENTS, direct));
+        }
+    }
+
+    /**
+     * What the byte[] constructor of mc_atlas_texture did before it copied in bulk
+     */
+    private static Pointer perByte(byte[] pixels) {
+        Memory memory = new Memory(pixels.length * Native.getNativeSize(Byte.TYPE));
+        for(int i = 0; i < pixels.length; i++) {
+            memory.setByte(i, pixels[i]);
+        }
+        return memory;
+    }
+
+    private static void check(String name, Pointer actual, byte[] expected) {
+        byte[] copy = actual.getByteArray(0, expected.length);
+        if(!Arrays.equals(copy, expected)) {
+            throw new AssertionError(name + " doesn't hold the atlas's pixels");
+        }
+    }
+
+    private static void time(String name, int runs, Runnable setup) {
+        long best = Long.MAX_VALUE;
+        for(int run = 0; run < runs; run++) {
+            // Lets go of the last run's native memory
+            System.gc();
+
+            long start = System.nanoTime();
+            setup.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double millis = best / 1e6;
+        System.out.println(String.format("%-20s %8.2f ms  %8.3f ms per megapixel", name, millis, millis / MEGAPIXELS));
+    }
+}
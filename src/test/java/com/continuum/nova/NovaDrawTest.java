@@ -0,0 +1,237 @@
+package com.continuum.nova;
+
+import net.minecraft.client.gui.GuiScreen;
+import net.minecraft.util.ResourceLocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NovaDrawTest {
+    private static final ResourceLocation WIDGETS = new ResourceLocation("textures/gui/widgets.png");
+    private static final ResourceLocation ICONS = new ResourceLocation("textures/gui/icons.png");
+    private static final ResourceLocation BACKGROUND = new ResourceLocation("textures/gui/options_background.png");
+
+    private static final int REBUILDS = 1000;
+
+    private RecordingNatives natives;
+
+    /**
+     * A screen that changes every frame, so every drawScreen is a full rebuild
+     */
+    private static class BusyScreen extends GuiScreen {
+        @Override
+        public boolean checkStateChanged() {
+            return true;
+        }
+
+        @Override
+        public void drawNova() {
+            NovaDraw.drawRectangle(BACKGROUND, 0, 0, 400, 300, 0, 0, 1, 1);
+            for(int i = 0; i < 100; i++) {
+                NovaDraw.drawRectangle(WIDGETS, 10, i * 20, 200, 20, 0, 66 / 256f, 200 / 256f, 20 / 256f);
+                NovaDraw.drawQuad(ICONS, 220, i * 20, 0, 9, 9, 16 / 256f, 0, 9 / 256f, 9 / 256f);
+            }
+        }
+    }
+
+    /**
+     * Looks like a button: one quad whose texture coordinates depend on whether it's hovered
+     */
+    private static class TestButton implements NovaDraw.Element {
+        final int y;
+        boolean hovered;
+        ResourceLocation texture = WIDGETS;
+
+        TestButton(int y) {
+            this.y = y;
+        }
+
+        @Override
+        public void drawNova() {
+            NovaDraw.drawRectangle(texture, 10, y, 200, 20, 0, (hovered ? 86 : 66) / 256f, 200 / 256f, 20 / 256f);
+        }
+
+        @Override
+        public int getNovaDrawState() {
+            return hovered ? 1 : 0;
+        }
+    }
+
+    /**
+     * A background and some buttons. Only changes as a whole when told to
+     */
+    private static class ButtonScreen extends GuiScreen {
+        final TestButton[] buttons = new TestButton[]{new TestButton(0), new TestButton(20), new TestButton(40)};
+        boolean changed;
+
+        @Override
+        public boolean checkStateChanged() {
+            boolean wasChanged = changed;
+            changed = false;
+            return wasChanged;
+        }
+
+        @Override
+        public void drawNova() {
+            NovaDraw.drawRectangle(BACKGROUND, 0, 0, 400, 300, 0, 0, 1, 1);
+            for(TestButton button : buttons) {
+                NovaDraw.drawElement(button);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        natives = new RecordingNatives();
+        NovaDraw.natives = natives;
+    }
+
+    @After
+    public void tearDown() {
+        NovaDraw.natives = null;
+    }
+
+    @Test
+    public void rebuildSendsOneBatchPerTexture() {
+        NovaDraw.drawScreen(new BusyScreen());
+
+        assertEquals(1, natives.buffersCommands);
+        assertEquals(3, natives.lastNumBatches);
+    }
+
+    @Test
+    public void steadyStateRebuildDoesNotAllocate() {
+        BusyScreen screen = new BusyScreen();
+        for(int i = 0; i < 100; i++) {
+            NovaDraw.drawScreen(screen);
+        }
+
+        long allocations = NovaDraw.getAllocationCount();
+        long bytes = Allocations.bytesAllocatedBy(() -> {
+            for(int i = 0; i < REBUILDS; i++) {
+                NovaDraw.drawScreen(screen);
+            }
+        });
+
+        assertEquals(allocations, NovaDraw.getAllocationCount());
+        assertEquals(100 + REBUILDS, natives.buffersCommands);
+        // Anything allocated on every rebuild would add up to at least REBUILDS bytes
+        assertTrue("Rebuilding allocated " + bytes + " bytes", bytes < REBUILDS);
+    }
+
+    @Test
+    public void unchangedScreenSendsNothing() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+        NovaDraw.drawScreen(screen);
+        NovaDraw.drawScreen(screen);
+
+        assertEquals(1, natives.buffersCommands);
+        assertEquals(0, natives.rangeUpdates);
+    }
+
+    @Test
+    public void hoverFlipOnlySendsThatButtonsRange() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+
+        screen.buttons[1].hovered = true;
+        NovaDraw.drawScreen(screen);
+
+        assertEquals(1, natives.buffersCommands);
+        assertEquals(1, natives.rangeUpdates);
+        assertEquals(TextureRegistry.getId(WIDGETS), natives.lastRangeTextureId);
+        assertEquals(6, natives.lastRangeIndexOffset);
+        assertEquals(6, natives.lastRangeIndexCount);
+        assertEquals(4 * 5, natives.lastRangeVertexOffset);
+        assertEquals(4 * 5, natives.lastRangeVertexCount);
+
+        NovaDraw.drawScreen(screen);
+        assertEquals(1, natives.rangeUpdates);
+    }
+
+    @Test
+    public void markDirtyRedrawsTheElement() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+
+        NovaDraw.markDirty(screen.buttons[2]);
+        NovaDraw.drawScreen(screen);
+
+        assertEquals(1, natives.buffersCommands);
+        assertEquals(1, natives.rangeUpdates);
+        assertEquals(12, natives.lastRangeIndexOffset);
+    }
+
+    @Test
+    public void markingAnUntrackedElementRebuilds() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+
+        NovaDraw.markDirty(new TestButton(60));
+        NovaDraw.drawScreen(screen);
+
+        assertEquals(2, natives.buffersCommands);
+        assertEquals(0, natives.rangeUpdates);
+    }
+
+    @Test
+    public void elementThatSwitchesTextureRebuilds() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+
+        screen.buttons[0].texture = ICONS;
+        screen.buttons[0].hovered = true;
+        NovaDraw.drawScreen(screen);
+
+        assertEquals(2, natives.buffersCommands);
+        assertEquals(0, natives.rangeUpdates);
+
+        // The rebuild tracked the new texture, so the next flip is a ranged update again
+        screen.buttons[0].hovered = false;
+        NovaDraw.drawScreen(screen);
+        assertEquals(2, natives.buffersCommands);
+        assertEquals(1, natives.rangeUpdates);
+        assertEquals(TextureRegistry.getId(ICONS), natives.lastRangeTextureId);
+    }
+
+    @Test
+    public void newScreenRebuilds() {
+        NovaDraw.drawScreen(new ButtonScreen());
+        NovaDraw.drawScreen(new ButtonScreen());
+
+        assertEquals(2, natives.buffersCommands);
+    }
+
+    @Test
+    public void steadyStateHoverAndRebuildDoNotAllocate() {
+        ButtonScreen screen = new ButtonScreen();
+        NovaDraw.drawScreen(screen);
+        for(int i = 0; i < 100; i++) {
+            hoverAndRebuild(screen);
+        }
+
+        long allocations = NovaDraw.getAllocationCount();
+        long bytes = Allocations.bytesAllocatedBy(() -> {
+            for(int i = 0; i < REBUILDS; i++) {
+                hoverAndRebuild(screen);
+            }
+        });
+
+        assertEquals(allocations, NovaDraw.getAllocationCount());
+        assertTrue("Redrawing allocated " + bytes + " bytes", bytes < REBUILDS);
+        assertEquals(1 + 100 + REBUILDS, natives.buffersCommands);
+        assertEquals(100 + REBUILDS, natives.rangeUpdates);
+    }
+
+    private static void hoverAndRebuild(ButtonScreen screen) {
+        screen.buttons[0].hovered = !screen.buttons[0].hovered;
+        NovaDraw.drawScreen(screen);
+
+        screen.changed = true;
+        NovaDraw.drawScreen(screen);
+    }
+}
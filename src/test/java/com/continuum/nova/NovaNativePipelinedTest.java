@@ -0,0 +1,163 @@
+package com.continuum.nova;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NovaNativePipelinedTest {
+    /**
+     * Remembers which calls reached the native code, in order, and fails execute_frame however the test wants
+     */
+    private static class FailingNatives extends RecordingNatives {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch frameStarted = new CountDownLatch(1);
+        volatile CountDownLatch holdFrame;
+        volatile Throwable frameFailure;
+
+        @Override
+        public void initialize() {
+            calls.add("initialize");
+        }
+
+        @Override
+        public void execute_frame() {
+            calls.add("execute_frame");
+            frameStarted.countDown();
+            if(holdFrame != null) {
+                try {
+                    holdFrame.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            Throwable failure = frameFailure;
+            if(failure instanceof RuntimeException) {
+                frameFailure = null;
+                throw (RuntimeException) failure;
+            } else if(failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+
+        @Override
+        public int get_max_texture_size() {
+            calls.add("get_max_texture_size");
+            return super.get_max_texture_size();
+        }
+
+        @Override
+        public void clear_gui_buffers() {
+            calls.add("clear_gui_buffers");
+        }
+    }
+
+    private final FailingNatives natives = new FailingNatives();
+    private final NovaNativePipelined pipeline = new NovaNativePipelined(natives);
+
+    @Test(timeout = 10000)
+    public void callsRunInOrderOnTheRenderThread() {
+        pipeline.initialize();
+        pipeline.clear_gui_buffers();
+        pipeline.execute_frame();
+        pipeline.clear_gui_buffers();
+
+        assertEquals(16384, pipeline.get_max_texture_size());
+        assertEquals(Arrays.asList("initialize", "clear_gui_buffers", "execute_frame", "clear_gui_buffers", "get_max_texture_size"),
+                natives.calls);
+    }
+
+    @Test(timeout = 10000)
+    public void exceptionInAFrameOnlyLosesThatFrame() {
+        pipeline.initialize();
+        natives.frameFailure = new IllegalArgumentException("Bad frame");
+        pipeline.execute_frame();
+        pipeline.execute_frame();
+
+        assertEquals(16384, pipeline.get_max_texture_size());
+        assertEquals(2, pipeline.getFramesRendered());
+    }
+
+    @Test(timeout = 10000)
+    public void errorInAFrameFailsCallsInsteadOfHanging() {
+        Error error = new Error("Invalid memory access");
+        pipeline.initialize();
+        natives.frameFailure = error;
+        pipeline.execute_frame();
+
+        assertRenderThreadDied(error, pipeline::get_max_texture_size);
+
+        // More frames than can be in flight, so none of them may take a slot and keep it
+        for(int i = 0; i < pipeline.getMaxFramesInFlight() + 2; i++) {
+            assertRenderThreadDied(error, pipeline::execute_frame);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void errorWakesUpABlockedFrame() throws InterruptedException {
+        Error error = new Error("Invalid memory access");
+        pipeline.initialize();
+        natives.holdFrame = new CountDownLatch(1);
+        natives.frameFailure = error;
+
+        // Fill every slot while the first frame is stuck rendering
+        for(int i = 0; i < pipeline.getMaxFramesInFlight(); i++) {
+            pipeline.execute_frame();
+        }
+        natives.frameStarted.await();
+
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread client = new Thread(() -> {
+            try {
+                pipeline.execute_frame();
+            } catch(Throwable t) {
+                thrown.set(t);
+            }
+        });
+        client.start();
+
+        // Give it time to block, then let the render thread die
+        client.join(200);
+        assertTrue("execute_frame should be waiting for a slot", client.isAlive());
+        natives.holdFrame.countDown();
+        client.join(5000);
+
+        assertFalse("execute_frame is still waiting", client.isAlive());
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof IllegalStateException);
+        assertSame(error, thrown.get().getCause());
+    }
+
+    @Test
+    public void notSupportedOnMacOs() {
+        String os = System.getProperty("os.name");
+        try {
+            System.setProperty("os.name", "Mac OS X");
+            assertFalse(NovaNativePipelined.isSupported());
+
+            System.setProperty("os.name", "Linux");
+            assertTrue(NovaNativePipelined.isSupported());
+        } finally {
+            System.setProperty("os.name", os);
+        }
+    }
+
+    private static void assertRenderThreadDied(Error cause, Runnable call) {
+        try {
+            call.run();
+            fail("Expected the call to fail");
+        } catch(IllegalStateException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+}
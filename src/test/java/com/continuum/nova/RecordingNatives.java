@@ -0,0 +1,95 @@
+package com.continuum.nova;
+
+import com.sun.jna.Pointer;
+
+/**
+ * Stands in for the native code in tests. Counts the GUI calls and remembers the last ranged update, everything else
+ * does nothing
+ */
+class RecordingNatives implements NovaNative {
+    int buffersCommands;
+    int lastNumBatches;
+
+    int rangeUpdates;
+    int lastRangeTextureId;
+    int lastRangeIndexOffset;
+    int lastRangeIndexCount;
+    int lastRangeVertexOffset;
+    int lastRangeVertexCount;
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void execute_frame() {
+    }
+
+    @Override
+    public void add_texture(mc_atlas_texture texture, int texture_type) {
+    }
+
+    @Override
+    public void add_texture_location(mc_texture_atlas_location location) {
+    }
+
+    @Override
+    public int get_max_texture_size() {
+        return 16384;
+    }
+
+    @Override
+    public void reset_texture_manager() {
+    }
+
+    @Override
+    public boolean should_close() {
+        return false;
+    }
+
+    @Override
+    public void send_change_gui_screen_command(mc_set_gui_screen_command set_gui_screen) {
+    }
+
+    @Override
+    public void send_gui_buffer_command(mc_gui_send_buffer_command command) {
+    }
+
+    @Override
+    public void send_gui_buffers_command(mc_gui_send_buffers_command command) {
+        buffersCommands++;
+        lastNumBatches = command.num_batches;
+    }
+
+    @Override
+    public void update_gui_buffer_range(mc_gui_update_buffer_range_command command) {
+        rangeUpdates++;
+        lastRangeTextureId = command.texture_id;
+        lastRangeIndexOffset = command.index_offset;
+        lastRangeIndexCount = command.index_count;
+        lastRangeVertexOffset = command.vertex_offset;
+        lastRangeVertexCount = command.vertex_count;
+    }
+
+    @Override
+    public void add_chunk_section(mc_chunk_section section) {
+    }
+
+    @Override
+    public void remove_chunk_section(int section_x, int section_y, int section_z) {
+    }
+
+    @Override
+    public int drain_mouse_events(Pointer events, int max_events) {
+        return 0;
+    }
+
+    @Override
+    public int drain_key_events(Pointer events, int max_events) {
+        return 0;
+    }
+
+    @Override
+    public void clear_gui_buffers() {
+    }
+}
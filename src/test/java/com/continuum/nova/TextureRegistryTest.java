@@ -0,0 +1,49 @@
+package com.continuum.nova;
+
+import net.minecraft.util.ResourceLocation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextureRegistryTest {
+    @Test
+    public void everyFormOfANameGetsTheSameId() {
+        int id = TextureRegistry.intern("minecraft:gui/container/anvil");
+
+        assertEquals(id, TextureRegistry.intern("gui/container/anvil"));
+        assertEquals(id, TextureRegistry.intern("minecraft:textures/gui/container/anvil.png"));
+        assertEquals(id, TextureRegistry.getId(new ResourceLocation("textures/gui/container/anvil.png")));
+        assertNotEquals(id, TextureRegistry.intern("minecraft:gui/container/beacon"));
+    }
+
+    @Test
+    public void equalLocationsShareAnId() {
+        int id = TextureRegistry.getId(new ResourceLocation("textures/gui/container/creative_inventory/tab_items.png"));
+
+        assertEquals(id, TextureRegistry.getId(new ResourceLocation("textures/gui/container/creative_inventory/tab_items.png")));
+        assertEquals(id, TextureRegistry.getId(new ResourceLocation("minecraft", "textures/gui/container/creative_inventory/tab_items.png")));
+    }
+
+    @Test
+    public void newEqualLocationsDoNotGrowTheRegistry() {
+        // Like the creative tabs, which make a new ResourceLocation for their background every time they draw
+        ResourceLocation[] locations = new ResourceLocation[1000];
+        for(int i = 0; i < locations.length; i++) {
+            locations[i] = new ResourceLocation("textures/gui/container/creative_inventory/tab_search.png");
+        }
+
+        int size = TextureRegistry.size();
+        int id = TextureRegistry.getId(locations[0]);
+        long bytes = Allocations.bytesAllocatedBy(() -> {
+            for(ResourceLocation location : locations) {
+                TextureRegistry.getId(location);
+            }
+        });
+
+        assertEquals(id, TextureRegistry.getId(locations[locations.length - 1]));
+        assertTrue(TextureRegistry.size() <= size + 1);
+        assertTrue("Looking up equal locations allocated " + bytes + " bytes", bytes < locations.length);
+    }
+}
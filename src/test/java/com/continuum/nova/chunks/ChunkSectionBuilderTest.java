@@ -0,0 +1,88 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.NovaNative;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkSectionBuilderTest {
+    private static class RecordingHandler implements ChunkSectionBuilder.BuiltSectionHandler {
+        final List<Long> built = new ArrayList<>();
+        final List<Long> failed = new ArrayList<>();
+
+        @Override
+        public void onSectionBuilt(long key, NovaNative.mc_chunk_section command) {
+            built.add(key);
+        }
+
+        @Override
+        public void onSectionFailed(long key) {
+            failed.add(key);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failedSectionsAreReported() throws InterruptedException {
+        ChunkSectionBuilder builder = new ChunkSectionBuilder();
+        RecordingHandler handler = new RecordingHandler();
+
+        // No blocks to read, so packing throws
+        builder.submit(42, null, new ExtendedBlockStorage[6], 1, 2, 3);
+        while(builder.getNumPending() > 0) {
+            builder.drainFinished(handler);
+            Thread.sleep(1);
+        }
+
+        assertTrue(handler.built.isEmpty());
+        assertEquals(1, handler.failed.size());
+        assertEquals(42L, (long) handler.failed.get(0));
+    }
+
+    @Test(timeout = 10000)
+    public void cancelledFailuresAreNotReported() throws InterruptedException {
+        ChunkSectionBuilder builder = new ChunkSectionBuilder();
+        RecordingHandler handler = new RecordingHandler();
+
+        builder.submit(7, null, new ExtendedBlockStorage[6], 0, 0, 0);
+        builder.cancel(7);
+
+        // Give the worker time to fail it, if it got to it before the cancel
+        Thread.sleep(50);
+        builder.drainFinished(handler);
+
+        assertTrue(handler.built.isEmpty());
+        assertTrue(handler.failed.isEmpty());
+        assertEquals(0, builder.getNumPending());
+    }
+
+    @Test
+    public void everythingIsInViewUntilTheViewIsSet() {
+        ChunkSectionBuilder builder = new ChunkSectionBuilder();
+        builder.setCamera(8, 8, 8);
+
+        // Centers 32 blocks away, in front of the default view direction, behind it and off to the side
+        assertEquals(32 * 32, builder.getPriority(0, 0, 2), 0);
+        assertEquals(32 * 32, builder.getPriority(0, 0, -2), 0);
+        assertEquals(32 * 32, builder.getPriority(2, 0, 0), 0);
+    }
+
+    @Test
+    public void sectionsOutsideTheViewComeLater() {
+        ChunkSectionBuilder builder = new ChunkSectionBuilder();
+        builder.setCamera(8, 8, 8);
+        builder.setView(0, 0, 1, Math.toRadians(45));
+
+        double inFront = builder.getPriority(0, 0, 2);
+        double behind = builder.getPriority(0, 0, -2);
+        assertEquals(32 * 32, inFront, 0);
+        assertTrue(behind > inFront);
+
+        // Nearby sections behind the camera still beat faraway ones in front
+        assertTrue(behind < builder.getPriority(0, 0, 5));
+    }
+}
@@ -0,0 +1,168 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.utils.ChunkSection;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times {@link GreedyMesher} on a few kinds of section and counts the quads it makes, next to the one quad per visible
+ * face a mesher without merging would make. Run the main method, it isn't part of the test suite.
+ * <p>
+ * The builder threads log the same two numbers for real sections, see ChunkSectionBuilder. This is the repeatable
+ * version, with fixed sections and no Minecraft.
+ */
+public class GreedyMesherBenchmark {
+    private static final int AIR = 0;
+    private static final int STONE = 1;
+    private static final int DIRT = 2;
+    private static final int GRASS = 3;
+    private static final int GLASS = 4;
+
+    private static final BlockTextures TEXTURES = new BlockTextures(
+            new int[]{-1, 0, 1, 2, 3},
+            new boolean[]{false, true, true, true, false},
+            new float[16]);
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int SECTIONS_PER_RUN = 500;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        String[] names = {"heightmap", "solid", "caves", "glass pillars", "checkerboard"};
+        int[][] sections = {heightmap(), solid(), caves(), glassPillars(), checkerboard()};
+
+        GreedyMesher mesher = new GreedyMesher();
+        ExtendedBlockStorage[] neighbours = new ExtendedBlockStorage[6];
+
+        System.out.println("Meshing sections with no neighbours, best of " + RUNS + " runs of " + SECTIONS_PER_RUN);
+        for(int i = 0; i < sections.length; i++) {
+            int[] stateIds = sections[i];
+            int quads = mesher.mesh(stateIds, neighbours, TEXTURES);
+
+            long best = Long.MAX_VALUE;
+            for(int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                for(int s = 0; s < SECTIONS_PER_RUN; s++) {
+                    mesher.mesh(stateIds, neighbours, TEXTURES);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.println(String.format("%-14s %5d quads (%5d faces) %.3f ms per section",
+                    names[i], quads, countFaces(stateIds), best / 1e6 / SECTIONS_PER_RUN));
+        }
+    }
+
+    /**
+     * Rolling terrain: stone, a few layers of dirt and a grass top, at a height that changes slowly across the section
+     */
+    private static int[] heightmap() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int z = 0; z < SIZE; z++) {
+            for(int x = 0; x < SIZE; x++) {
+                int height = 8 + (int) Math.round(3 * Math.sin(x * 0.4) * Math.cos(z * 0.3));
+                for(int y = 0; y <= height; y++) {
+                    set(stateIds, x, y, z, y == height ? GRASS : y > height - 3 ? DIRT : STONE);
+                }
+            }
+        }
+        return stateIds;
+    }
+
+    private static int[] solid() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        Arrays.fill(stateIds, STONE);
+        return stateIds;
+    }
+
+    /**
+     * Stone with random blobs of air and dirt, roughly what underground sections look like
+     */
+    private static int[] caves() {
+        int[] stateIds = solid();
+        Random random = new Random(1);
+        for(int blob = 0; blob < 12; blob++) {
+            int cx = random.nextInt(SIZE);
+            int cy = random.nextInt(SIZE);
+            int cz = random.nextInt(SIZE);
+            int radius = 1 + random.nextInt(3);
+            int state = blob % 3 == 0 ? DIRT : AIR;
+            for(int y = Math.max(cy - radius, 0); y <= Math.min(cy + radius, SIZE - 1); y++) {
+                for(int z = Math.max(cz - radius, 0); z <= Math.min(cz + radius, SIZE - 1); z++) {
+                    for(int x = Math.max(cx - radius, 0); x <= Math.min(cx + radius, SIZE - 1); x++) {
+                        if((x - cx) * (x - cx) + (y - cy) * (y - cy) + (z - cz) * (z - cz) <= radius * radius) {
+                            set(stateIds, x, y, z, state);
+                        }
+                    }
+                }
+            }
+        }
+        return stateIds;
+    }
+
+    /**
+     * See-through blocks keep the faces between them, so nothing inside a column is hidden
+     */
+    private static int[] glassPillars() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int z = 0; z < SIZE; z += 2) {
+            for(int x = 0; x < SIZE; x += 2) {
+                for(int y = 0; y < SIZE; y++) {
+                    set(stateIds, x, y, z, GLASS);
+                }
+            }
+        }
+        return stateIds;
+    }
+
+    /**
+     * The worst case, where no two faces can merge
+     */
+    private static int[] checkerboard() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int y = 0; y < SIZE; y++) {
+            for(int z = 0; z < SIZE; z++) {
+                for(int x = 0; x < SIZE; x++) {
+                    set(stateIds, x, y, z, (x + y + z) % 2 == 0 ? STONE : AIR);
+                }
+            }
+        }
+        return stateIds;
+    }
+
+    /**
+     * @return How many block faces are visible, which is how many quads there'd be without merging
+     */
+    private static int countFaces(int[] stateIds) {
+        int faces = 0;
+        for(int y = 0; y < SIZE; y++) {
+            for(int z = 0; z < SIZE; z++) {
+                for(int x = 0; x < SIZE; x++) {
+                    if(TEXTURES.getTextureIndex(get(stateIds, x, y, z)) < 0) {
+                        continue;
+                    }
+
+                    for(int[] offset : GreedyMesher.NEIGHBOUR_OFFSETS) {
+                        if(!TEXTURES.isOpaque(get(stateIds, x + offset[0], y + offset[1], z + offset[2]))) {
+                            faces++;
+                        }
+                    }
+                }
+            }
+        }
+        return faces;
+    }
+
+    private static int get(int[] stateIds, int x, int y, int z) {
+        if(x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE) {
+            return AIR;
+        }
+        return stateIds[(y * SIZE + z) * SIZE + x];
+    }
+
+    private static void set(int[] stateIds, int x, int y, int z, int state) {
+        stateIds[(y * SIZE + z) * SIZE + x] = state;
+    }
+}
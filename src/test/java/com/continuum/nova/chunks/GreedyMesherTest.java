@@ -0,0 +1,217 @@
+package com.continuum.nova.chunks;
+
+import com.continuum.nova.utils.ChunkSection;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GreedyMesherTest {
+    static final int AIR = 0;
+    static final int STONE = 1;
+    static final int DIRT = 2;
+    static final int GLASS = 3;
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int FLOATS_PER_QUAD = GreedyMesher.VERTICES_PER_QUAD * GreedyMesher.FLOATS_PER_VERTEX;
+
+    /**
+     * Stone and dirt are opaque, glass isn't. Each texture has its own spot in the atlas
+     */
+    static final BlockTextures TEXTURES = new BlockTextures(
+            new int[]{-1, 0, 1, 2},
+            new boolean[]{false, true, true, false},
+            new float[]{0, 0.5f, 0.25f, 0.125f, 0.25f, 0.5f, 0.25f, 0.125f, 0.5f, 0.5f, 0.25f, 0.125f});
+
+    /**
+     * No neighbours, so everything around the section counts as air
+     */
+    static final ExtendedBlockStorage[] NO_NEIGHBOURS = new ExtendedBlockStorage[6];
+
+    private final GreedyMesher mesher = new GreedyMesher();
+
+    @Test
+    public void emptySectionHasNoQuads() {
+        assertEquals(0, mesher.mesh(new int[ChunkSection.NUM_BLOCKS], NO_NEIGHBOURS, TEXTURES));
+        assertEquals(0, mesher.getNumFloats());
+    }
+
+    @Test
+    public void oneBlockHasSixFaces() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        set(stateIds, 3, 4, 5, STONE);
+
+        assertEquals(6, mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES));
+        assertEquals(6, checkQuads(stateIds));
+    }
+
+    @Test
+    public void solidSectionIsOneQuadPerSide() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        Arrays.fill(stateIds, STONE);
+
+        assertEquals(6, mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES));
+        assertEquals(6 * SIZE * SIZE, checkQuads(stateIds));
+    }
+
+    @Test
+    public void differentTexturesAreNotMerged() {
+        // A one block thick floor, stone on the low x half and dirt on the high x half
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int z = 0; z < SIZE; z++) {
+            for(int x = 0; x < SIZE; x++) {
+                set(stateIds, x, 0, z, x < SIZE / 2 ? STONE : DIRT);
+            }
+        }
+
+        // Two each on top, bottom, -z and +z, one each on -x and +x. The faces between the halves are hidden
+        assertEquals(10, mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES));
+        assertEquals(2 * SIZE * SIZE + 4 * SIZE, checkQuads(stateIds));
+    }
+
+    @Test
+    public void facesBetweenSeeThroughBlocksStay() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        set(stateIds, 7, 7, 7, GLASS);
+        set(stateIds, 8, 7, 7, GLASS);
+
+        // Four merged 2x1 sides, the two ends, and both faces between the blocks
+        assertEquals(8, mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES));
+        assertEquals(12, checkQuads(stateIds));
+    }
+
+    @Test
+    public void checkerboardCannotMergeAnything() {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int i = 0; i < stateIds.length; i++) {
+            int x = i % SIZE;
+            int z = i / SIZE % SIZE;
+            int y = i / (SIZE * SIZE);
+            stateIds[i] = (x + y + z) % 2 == 0 ? STONE : AIR;
+        }
+
+        int quads = mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES);
+        assertEquals(ChunkSection.NUM_BLOCKS / 2 * 6, quads);
+        assertEquals(quads, checkQuads(stateIds));
+    }
+
+    @Test
+    public void meshingAgainStartsOver() {
+        int[] solid = new int[ChunkSection.NUM_BLOCKS];
+        Arrays.fill(solid, DIRT);
+        mesher.mesh(solid, NO_NEIGHBOURS, TEXTURES);
+
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        set(stateIds, 0, 0, 0, GLASS);
+        assertEquals(6, mesher.mesh(stateIds, NO_NEIGHBOURS, TEXTURES));
+        assertEquals(6 * FLOATS_PER_QUAD, mesher.getNumFloats());
+        assertEquals(6, checkQuads(stateIds));
+    }
+
+    /**
+     * Checks every quad of the last mesh: it lies flat against a block face, winds counter-clockwise seen from the
+     * front, has a meshed block behind it and no opaque block in front, and carries its texture's atlas rectangle and
+     * texture coordinates that repeat once per block
+     *
+     * @return The total area of the quads, in block faces
+     */
+    private int checkQuads(int[] stateIds) {
+        float[] vertices = mesher.getVertices();
+        assertEquals(0, mesher.getNumFloats() % FLOATS_PER_QUAD);
+
+        int area = 0;
+        for(int quad = 0; quad < mesher.getNumFloats(); quad += FLOATS_PER_QUAD) {
+            float[][] corners = new float[4][];
+            for(int i = 0; i < 4; i++) {
+                int vertex = quad + i * GreedyMesher.FLOATS_PER_VERTEX;
+                corners[i] = new float[]{vertices[vertex], vertices[vertex + 1], vertices[vertex + 2]};
+            }
+
+            float[] normal = cross(subtract(corners[1], corners[0]), subtract(corners[2], corners[1]));
+            int axis = Math.abs(normal[0]) > 0 ? 0 : Math.abs(normal[1]) > 0 ? 1 : 2;
+            String what = "quad " + quad / FLOATS_PER_QUAD + " at " + corners[0][0] + " " + corners[0][1] + " " + corners[0][2];
+            for(int i = 0; i < 3; i++) {
+                assertTrue(what + " is not axis aligned", i == axis || normal[i] == 0);
+            }
+            for(float[] corner : corners) {
+                assertEquals(what + " is not flat", corners[0][axis], corner[axis], 0);
+            }
+            assertEquals(what + " is not a rectangle", 0, length(add(subtract(corners[1], corners[0]), subtract(corners[3], corners[2]))), 0);
+
+            // The cross product's length is the quad's area, and its sign says which way the quad faces
+            int sign = normal[axis] > 0 ? 1 : -1;
+            float[] center = new float[3];
+            for(float[] corner : corners) {
+                center = add(center, corner);
+            }
+            for(int i = 0; i < 3; i++) {
+                center[i] /= 4;
+            }
+            float[] behind = center.clone();
+            float[] front = center.clone();
+            behind[axis] -= sign * 0.5f;
+            front[axis] += sign * 0.5f;
+
+            int behindState = stateAt(stateIds, behind);
+            int frontState = stateAt(stateIds, front);
+            int texture = TEXTURES.getTextureIndex(behindState);
+            assertTrue(what + " faces the wrong way or has nothing behind it", texture >= 0);
+            assertTrue(what + " is hidden", !TEXTURES.isOpaque(frontState));
+
+            // Texture coordinates count blocks along the quad's edges
+            int width = (int) length(subtract(corners[1], corners[0]));
+            int height = (int) length(subtract(corners[3], corners[0]));
+            assertEquals(what, width * height, (int) Math.abs(normal[axis]));
+            float du = Math.abs(vertices[quad + GreedyMesher.FLOATS_PER_VERTEX * 2 + 3] - vertices[quad + 3]);
+            float dv = Math.abs(vertices[quad + GreedyMesher.FLOATS_PER_VERTEX * 2 + 4] - vertices[quad + 4]);
+            assertTrue(what + " texture coordinates " + du + " by " + dv,
+                    du == width && dv == height || du == height && dv == width);
+
+            for(int i = 0; i < 4; i++) {
+                for(int f = 0; f < 4; f++) {
+                    assertEquals(what, TEXTURES.getAtlasLocations()[texture * 4 + f], vertices[quad + i * GreedyMesher.FLOATS_PER_VERTEX + 5 + f], 0);
+                }
+            }
+
+            area += width * height;
+        }
+
+        return area;
+    }
+
+    /**
+     * @return The block at the given point, or air if it's outside the section
+     */
+    private static int stateAt(int[] stateIds, float[] point) {
+        int x = (int) Math.floor(point[0]);
+        int y = (int) Math.floor(point[1]);
+        int z = (int) Math.floor(point[2]);
+        if(x < 0 || y < 0 || z < 0 || x >= SIZE || y >= SIZE || z >= SIZE) {
+            return AIR;
+        }
+        return stateIds[(y * SIZE + z) * SIZE + x];
+    }
+
+    static void set(int[] stateIds, int x, int y, int z, int state) {
+        stateIds[(y * SIZE + z) * SIZE + x] = state;
+    }
+
+    private static float[] subtract(float[] a, float[] b) {
+        return new float[]{a[0] - b[0], a[1] - b[1], a[2] - b[2]};
+    }
+
+    private static float[] add(float[] a, float[] b) {
+        return new float[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]};
+    }
+
+    private static float[] cross(float[] a, float[] b) {
+        return new float[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+    }
+
+    private static float length(float[] a) {
+        return (float) Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]);
+    }
+}
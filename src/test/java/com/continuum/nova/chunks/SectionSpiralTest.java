@@ -0,0 +1,123 @@
+package com.continuum.nova.chunks;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SectionSpiralTest {
+    private static final int NUM_SECTIONS_PER_CHUNK = 16;
+
+    @Test
+    public void visitsEverySectionOnceNearestRingFirst() {
+        SectionSpiral spiral = new SectionSpiral();
+        for(int radius = 0; radius <= 2; radius++) {
+            for(int centerY : new int[]{0, 5, 8, 15}) {
+                String what = "radius " + radius + ", center y " + centerY;
+                spiral.reset(10, centerY, -3, radius);
+
+                Set<String> visited = new HashSet<>();
+                Set<String> finishedColumns = new HashSet<>();
+                int lastRing = 0;
+                int lastColumnX = Integer.MIN_VALUE;
+                int lastColumnZ = Integer.MIN_VALUE;
+                int lastHeight = 0;
+
+                while(spiral.next()) {
+                    int x = spiral.getX();
+                    int y = spiral.getY();
+                    int z = spiral.getZ();
+                    assertTrue(what + ", visited " + x + " " + y + " " + z + " twice", visited.add(x + " " + y + " " + z));
+                    assertTrue(what, y >= 0 && y < NUM_SECTIONS_PER_CHUNK);
+
+                    int ring = Math.max(Math.abs(x - 10), Math.abs(z + 3));
+                    assertTrue(what + ", column " + x + " " + z + " is outside the radius", ring <= radius);
+                    assertTrue(what + ", ring " + ring + " came after ring " + lastRing, ring >= lastRing);
+                    lastRing = ring;
+
+                    int height = Math.abs(y - centerY);
+                    if(x != lastColumnX || z != lastColumnZ) {
+                        // A column is walked all at once
+                        assertTrue(what + ", came back to column " + x + " " + z, finishedColumns.add(x + " " + z));
+                        assertEquals(what + ", column " + x + " " + z + " should start at the center", centerY, y);
+                        lastColumnX = x;
+                        lastColumnZ = z;
+                    } else {
+                        assertTrue(what + ", " + y + " came after a nearer section", height >= lastHeight);
+                    }
+                    lastHeight = height;
+                }
+
+                int side = radius * 2 + 1;
+                assertEquals(what, side * side * NUM_SECTIONS_PER_CHUNK, visited.size());
+                assertFalse(what + ", next() after the end", spiral.next());
+            }
+        }
+    }
+
+    @Test
+    public void ringOneGoesClockwiseFromTheTopLeft() {
+        SectionSpiral spiral = new SectionSpiral();
+        spiral.reset(0, 0, 0, 1);
+
+        int[][] columns = {{0, 0}, {-1, -1}, {0, -1}, {1, -1}, {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}};
+        for(int[] column : columns) {
+            assertTrue(spiral.next());
+            assertEquals(column[0], spiral.getX());
+            assertEquals(column[1], spiral.getZ());
+            spiral.skipColumn();
+        }
+        assertFalse(spiral.next());
+    }
+
+    @Test
+    public void heightsAlternateAroundTheCenter() {
+        SectionSpiral spiral = new SectionSpiral();
+        spiral.reset(0, 13, 0, 0);
+
+        int[] heights = {13, 14, 12, 15, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
+        for(int height : heights) {
+            assertTrue(spiral.next());
+            assertEquals(height, spiral.getY());
+        }
+        assertFalse(spiral.next());
+    }
+
+    @Test
+    public void centerOutsideTheWorldStartsAtTheNearestSection() {
+        SectionSpiral spiral = new SectionSpiral();
+
+        spiral.reset(0, -4, 0, 0);
+        assertTrue(spiral.next());
+        assertEquals(0, spiral.getY());
+        assertTrue(spiral.next());
+        assertEquals(1, spiral.getY());
+
+        spiral.reset(0, 40, 0, 0);
+        assertTrue(spiral.next());
+        assertEquals(15, spiral.getY());
+        assertTrue(spiral.next());
+        assertEquals(14, spiral.getY());
+    }
+
+    @Test
+    public void skippedColumnsAreLeftOut() {
+        SectionSpiral spiral = new SectionSpiral();
+        spiral.reset(0, 8, 0, 1);
+
+        int visited = 0;
+        while(spiral.next()) {
+            visited++;
+            if(spiral.getX() == 1) {
+                spiral.skipColumn();
+            }
+        }
+
+        // The three columns at x = 1 each give up after their first section
+        assertEquals(6 * NUM_SECTIONS_PER_CHUNK + 3, visited);
+    }
+}
@@ -0,0 +1,131 @@
+package com.continuum.nova.input;
+
+import com.sun.jna.Pointer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InputEventBufferTest {
+    private static final int EVENT_SIZE = 16;
+    private static final int CAPACITY = 4;
+
+    /**
+     * Hands out events numbered from zero, each an int holding its number and a long holding ten times that
+     */
+    private static class CountingSource implements InputEventBuffer.Source {
+        int available;
+        int next;
+        final List<Integer> drainSizes = new ArrayList<>();
+
+        @Override
+        public int drain(Pointer events, int maxEvents) {
+            drainSizes.add(maxEvents);
+            int count = Math.min(available, maxEvents);
+            for(int i = 0; i < count; i++) {
+                events.setInt(i * EVENT_SIZE, next);
+                events.setLong(i * EVENT_SIZE + 8, next * 10L);
+                next++;
+            }
+            available -= count;
+            return count;
+        }
+    }
+
+    private final CountingSource source = new CountingSource();
+    private final InputEventBuffer events = new InputEventBuffer(EVENT_SIZE, CAPACITY, source);
+
+    @Test
+    public void pollStopsWhenTheRingIsFull() {
+        source.available = 10;
+        assertEquals(CAPACITY, events.poll());
+        assertEquals(6, source.available);
+        assertEquals(0, events.getStart());
+        assertEquals(CAPACITY, events.getEnd());
+
+        // Nothing has been read, so there's no room
+        assertEquals(0, events.poll());
+        assertEquals(6, source.available);
+    }
+
+    @Test
+    public void pollStopsWhenTheSourceRunsDry() {
+        source.available = 2;
+        assertEquals(2, events.poll());
+        assertEquals(1, source.drainSizes.size());
+
+        assertEquals(0, events.poll());
+        assertEquals(2, events.getEnd());
+    }
+
+    @Test
+    public void pollWrapsAroundTheEndOfTheRing() {
+        source.available = 3;
+        events.poll();
+        assertNext(0);
+        assertNext(1);
+
+        // Event 1 is still being read, so only slots 3 and 0 are free. That takes one drain on each side of the end
+        source.available = 10;
+        source.drainSizes.clear();
+        assertEquals(2, events.poll());
+        assertEquals(2, source.drainSizes.size());
+        assertEquals(1, (int) source.drainSizes.get(0));
+        assertEquals(1, (int) source.drainSizes.get(1));
+        assertEquals(5, events.getEnd());
+
+        // The event being read wasn't written over
+        assertEquals(1, events.getInt(0));
+        assertEquals(10, events.getLong(8));
+
+        for(int event = 2; event < 5; event++) {
+            assertNext(event);
+        }
+        assertFalse(events.next());
+    }
+
+    @Test
+    public void eventsKeepTheirNumbersAcrossManyWraps() {
+        source.available = 1000;
+        int expected = 0;
+        while(expected < 1000) {
+            long start = events.getEnd();
+            int added = events.poll();
+            assertTrue(events.hasNext());
+
+            // Events can be looked at by number before they're read
+            for(long event = start; event < start + added; event++) {
+                assertEquals(event, events.getInt(event, 0));
+            }
+
+            // Read about half of them, so the free space starts somewhere new every time
+            int toRead = (int) (events.getEnd() - events.getStart() + 1) / 2;
+            for(int i = 0; i < toRead; i++) {
+                assertNext(expected++);
+            }
+        }
+    }
+
+    @Test
+    public void hasNextDoesNotPoll() {
+        source.available = 5;
+        assertFalse(events.hasNext());
+        assertFalse(events.next());
+        assertTrue(source.drainSizes.isEmpty());
+
+        events.poll();
+        assertTrue(events.hasNext());
+    }
+
+    private void assertNext(int event) {
+        assertTrue(events.hasNext());
+        assertEquals(event, events.getStart());
+        assertTrue(events.next());
+        assertEquals(event, events.getInt(0));
+        assertEquals(event * 10L, events.getLong(8));
+    }
+}
@@ -0,0 +1,138 @@
+package com.continuum.nova.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AtlasCacheTest {
+    private static final String KEY = AtlasCache.computeKey("test", Collections.singletonList("minecraft:gui/widgets"),
+            Collections.singletonList(new byte[]{1, 2, 3}));
+
+    /**
+     * Where things are in the index of a single atlas
+     */
+    private static final int NUM_ATLASES_OFFSET = 4;
+    private static final int NUM_MIP_LEVELS_OFFSET = 20;
+    private static final int FORMAT_OFFSET = 24;
+    private static final int NUM_RECTANGLES_OFFSET = 28;
+
+    private File directory;
+    private AtlasCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("nova-atlas-cache").toFile();
+        cache = new AtlasCache(directory);
+
+        ByteBuffer pixels = ByteBuffer.allocateDirect(4 * 4 * 4);
+        for(int i = 0; i < pixels.capacity(); i++) {
+            pixels.put(i, (byte) i);
+        }
+        Map<String, Rectangle> rectangles = new TreeMap<>();
+        rectangles.put("minecraft:gui/widgets", new Rectangle(0, 0, 4, 4));
+        cache.store(KEY, Collections.singletonList(new AtlasCache.Entry(4, 4, 4, pixels, rectangles)));
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void storedAtlasesLoadBack() {
+        List<AtlasCache.Entry> atlases = cache.load(KEY);
+
+        assertNotNull(atlases);
+        assertEquals(1, atlases.size());
+        AtlasCache.Entry atlas = atlases.get(0);
+        assertEquals(4, atlas.width);
+        assertEquals(4, atlas.height);
+        assertEquals(BlockCompression.Format.NONE, atlas.format);
+        assertEquals(new Rectangle(0, 0, 4, 4), atlas.rectangles.get("minecraft:gui/widgets"));
+        assertEquals(4 * 4 * 4, atlas.pixels.capacity());
+        assertEquals(63, atlas.pixels.get(63));
+    }
+
+    @Test
+    public void unknownKeyMisses() {
+        assertNull(cache.load(AtlasCache.computeKey("other", Collections.emptyList(), Collections.emptyList())));
+    }
+
+    @Test
+    public void unknownFormatIsDiscarded() throws IOException {
+        corruptIndex(FORMAT_OFFSET, 99);
+        assertDiscarded();
+    }
+
+    @Test
+    public void negativeAtlasCountIsDiscarded() throws IOException {
+        corruptIndex(NUM_ATLASES_OFFSET, -1);
+        assertDiscarded();
+    }
+
+    @Test
+    public void negativeRectangleCountIsDiscarded() throws IOException {
+        corruptIndex(NUM_RECTANGLES_OFFSET, -5);
+        assertDiscarded();
+    }
+
+    @Test
+    public void absurdMipLevelCountIsDiscarded() throws IOException {
+        corruptIndex(NUM_MIP_LEVELS_OFFSET, Integer.MAX_VALUE);
+        assertDiscarded();
+    }
+
+    @Test
+    public void truncatedIndexIsDiscarded() throws IOException {
+        try(RandomAccessFile index = new RandomAccessFile(indexFile(), "rw")) {
+            index.setLength(NUM_RECTANGLES_OFFSET + 2);
+        }
+        assertDiscarded();
+    }
+
+    private void assertDiscarded() {
+        assertNull(cache.load(KEY));
+        assertFalse(indexFile().exists());
+
+        // The next reload can store a good entry in its place
+        cache.store(KEY, Collections.singletonList(new AtlasCache.Entry(1, 1, 4, ByteBuffer.allocateDirect(4), new TreeMap<>())));
+        assertNotNull(cache.load(KEY));
+    }
+
+    private void corruptIndex(int offset, int value) throws IOException {
+        try(RandomAccessFile index = new RandomAccessFile(indexFile(), "rw")) {
+            index.seek(offset);
+            index.writeInt(value);
+        }
+    }
+
+    private File indexFile() {
+        return new File(new File(directory, KEY), "index.bin");
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,106 @@
+package com.continuum.nova.utils;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AtlasPackerTest {
+    private static final AtlasPacker[] PACKERS = {new MaxRectsPacker(), new SkylinePacker(), new BinaryTreePacker()};
+
+    @Test
+    public void mixedSizesStayInBoundsAndNeverOverlap() {
+        for(AtlasPacker packer : PACKERS) {
+            for(int seed = 0; seed < 5; seed++) {
+                Random random = new Random(seed);
+                AtlasPacker.Page page = packer.newPage(512, 256);
+                List<Rectangle> placed = new ArrayList<>();
+
+                for(int i = 0; i < 400; i++) {
+                    int width = 1 + random.nextInt(64);
+                    int height = 1 + random.nextInt(64);
+                    Rectangle rect = page.insert(width, height);
+                    if(rect != null) {
+                        assertEquals(packer.getName(), width, rect.width);
+                        assertEquals(packer.getName(), height, rect.height);
+                        placed.add(rect);
+                    }
+                }
+
+                assertFalse(packer.getName(), placed.isEmpty());
+                assertInBoundsAndDisjoint(packer.getName(), placed, 512, 256);
+            }
+        }
+    }
+
+    @Test
+    public void equalSquaresFillThePage() {
+        for(AtlasPacker packer : PACKERS) {
+            AtlasPacker.Page page = packer.newPage(64, 64);
+            List<Rectangle> placed = new ArrayList<>();
+            for(int i = 0; i < 16; i++) {
+                Rectangle rect = page.insert(16, 16);
+                assertNotNull(packer.getName() + " square " + i, rect);
+                placed.add(rect);
+            }
+
+            assertNull(packer.getName(), page.insert(16, 16));
+            assertNull(packer.getName(), page.insert(1, 1));
+            assertInBoundsAndDisjoint(packer.getName(), placed, 64, 64);
+        }
+    }
+
+    @Test
+    public void tooBigDoesNotFit() {
+        for(AtlasPacker packer : PACKERS) {
+            AtlasPacker.Page page = packer.newPage(64, 32);
+            assertNull(packer.getName(), page.insert(65, 1));
+            assertNull(packer.getName(), page.insert(1, 33));
+
+            // A miss doesn't use up any space
+            Rectangle whole = page.insert(64, 32);
+            assertEquals(packer.getName(), new Rectangle(0, 0, 64, 32), whole);
+        }
+    }
+
+    @Test
+    public void smallerRectanglesStillFitAfterAMiss() {
+        for(AtlasPacker packer : PACKERS) {
+            AtlasPacker.Page page = packer.newPage(64, 64);
+            assertNotNull(page.insert(48, 48));
+            assertNull(packer.getName(), page.insert(32, 32));
+
+            Rectangle strip = page.insert(16, 16);
+            assertNotNull(packer.getName(), strip);
+            assertFalse(packer.getName(), strip.intersects(new Rectangle(0, 0, 48, 48)));
+        }
+    }
+
+    @Test
+    public void namesAreDistinct() {
+        for(int i = 0; i < PACKERS.length; i++) {
+            for(int j = i + 1; j < PACKERS.length; j++) {
+                assertFalse(PACKERS[i].getName().equals(PACKERS[j].getName()));
+            }
+        }
+    }
+
+    private static void assertInBoundsAndDisjoint(String packer, List<Rectangle> placed, int width, int height) {
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        for(int i = 0; i < placed.size(); i++) {
+            Rectangle rect = placed.get(i);
+            assertTrue(packer + " put " + rect + " outside the page", bounds.contains(rect));
+            for(int j = i + 1; j < placed.size(); j++) {
+                assertFalse(packer + " overlapped " + rect + " and " + placed.get(j), rect.intersects(placed.get(j)));
+            }
+        }
+    }
+}
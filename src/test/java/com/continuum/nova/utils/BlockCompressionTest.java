@@ -0,0 +1,407 @@
+package com.continuum.nova.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips images through the encoders and a straightforward decoder written from the format specs, so a slip in
+ * the bit layout shows up as garbage instead of a slightly worse picture.
+ * <p>
+ * The encoders fit each block with its bounding box, which suits blocks whose channels rise and fall together. The
+ * noisy textures here don't, so their thresholds are only a few dB under what the encoders get today.
+ */
+public class BlockCompressionTest {
+    @Test
+    public void bc1RoundTrip() {
+        int[] image = texture(64, 64, false);
+        int[] decoded = roundTrip(image, 64, 64, BlockCompression.Format.BC1);
+
+        assertTrue(psnr(image, decoded, 3) > 32);
+    }
+
+    @Test
+    public void bc3RoundTrip() {
+        int[] image = texture(64, 64, true);
+        int[] decoded = roundTrip(image, 64, 64, BlockCompression.Format.BC3);
+
+        assertTrue(psnr(image, decoded, 3) > 32);
+        assertTrue(alphaPsnr(image, decoded) > 40);
+    }
+
+    @Test
+    public void bc3AlphaRampUsesEveryStep() {
+        int[] image = new int[16];
+        for(int i = 0; i < 16; i++) {
+            image[i] = rgba(128, 128, 128, i * 17);
+        }
+
+        int[] decoded = roundTrip(image, 4, 4, BlockCompression.Format.BC3);
+        for(int i = 0; i < 16; i++) {
+            // Eight evenly spaced steps from 0 to 255 are never more than half a step away
+            assertTrue("pixel " + i, Math.abs(channel(image[i], 3) - channel(decoded[i], 3)) <= 19);
+        }
+        assertEquals(0, channel(decoded[0], 3));
+        assertEquals(255, channel(decoded[15], 3));
+    }
+
+    @Test
+    public void bc7RoundTrip() {
+        int[] image = texture(64, 64, true);
+        int[] decoded = roundTrip(image, 64, 64, BlockCompression.Format.BC7);
+
+        assertTrue(psnr(image, decoded, 4) > 33);
+    }
+
+    @Test
+    public void bc7BeatsBc3OnSmoothGradients() {
+        int[] image = gradient(64, 64);
+
+        double bc3 = psnr(image, roundTrip(image, 64, 64, BlockCompression.Format.BC3), 4);
+        double bc7 = psnr(image, roundTrip(image, 64, 64, BlockCompression.Format.BC7), 4);
+        assertTrue(bc7 > 42);
+        assertTrue(bc7 > bc3 + 3);
+    }
+
+    @Test
+    public void bc7UsesMode6() {
+        ByteBuffer compressed = compress(texture(8, 8, true), 8, 8, 1, BlockCompression.Format.BC7);
+        for(int block = 0; block < 4; block++) {
+            // Six zero bits and then a one, starting from the lowest bit
+            assertEquals(0x40, compressed.get(block * 16) & 0x7F);
+        }
+    }
+
+    @Test
+    public void bc7PBitsKeepOddAndEvenEndpointsExact() {
+        // All odd channels need a low bit of 1, all even ones a low bit of 0
+        int odd = rgba(1, 129, 255, 33);
+        int even = rgba(0, 128, 254, 32);
+        int[] image = new int[16];
+        for(int i = 0; i < 16; i++) {
+            image[i] = i < 8 ? odd : even;
+        }
+
+        int[] decoded = roundTrip(image, 4, 4, BlockCompression.Format.BC7);
+        for(int i = 0; i < 16; i++) {
+            assertEquals(image[i], decoded[i]);
+        }
+    }
+
+    @Test
+    public void bc7SwapsEndpointsWhenTheAnchorIndexIsTooBig() {
+        // The first pixel is the brightest, so without the swap its index would need four bits
+        int[] image = new int[16];
+        for(int i = 0; i < 16; i++) {
+            int value = 255 - i * 16;
+            image[i] = rgba(value, value, value, 255);
+        }
+
+        ByteBuffer compressed = compress(image, 4, 4, 1, BlockCompression.Format.BC7);
+        int[] decoded = decode(compressed, 0, 4, 4, BlockCompression.Format.BC7);
+        assertTrue(psnr(image, decoded, 4) > 40);
+        assertEquals(255, decoded[0] & 0xFF);
+    }
+
+    @Test
+    public void solidBlocksStayCloseToTheirColor() {
+        int color = rgba(200, 100, 50, 255);
+        int[] image = new int[16];
+        java.util.Arrays.fill(image, color);
+
+        assertTrue(maxChannelError(image, roundTrip(image, 4, 4, BlockCompression.Format.BC1), 3) <= 4);
+        assertTrue(maxChannelError(image, roundTrip(image, 4, 4, BlockCompression.Format.BC3), 4) <= 4);
+        assertTrue(maxChannelError(image, roundTrip(image, 4, 4, BlockCompression.Format.BC7), 4) <= 1);
+    }
+
+    @Test
+    public void edgeBlocksRepeatTheEdgePixels() {
+        int width = 18;
+        int height = 13;
+        int[] image = gradient(width, height);
+
+        for(BlockCompression.Format format : new BlockCompression.Format[]{BlockCompression.Format.BC3, BlockCompression.Format.BC7}) {
+            int[] decoded = roundTrip(image, width, height, format);
+            assertTrue(format + " edges", maxChannelError(image, decoded, 4) <= 16);
+        }
+    }
+
+    @Test
+    public void mipChainsAreCompressedLevelByLevel() {
+        int width = 16;
+        int height = 8;
+        int numMipLevels = MipChain.getFullChainLength(width, height);
+        // Every level is a different even color, which BC7 stores exactly
+        int[] chain = new int[MipChain.getSize(width, height, numMipLevels)];
+        int offset = 0;
+        for(int level = 0; level < numMipLevels; level++) {
+            int levelSize = MipChain.getLevelWidth(width, level) * MipChain.getLevelHeight(height, level);
+            java.util.Arrays.fill(chain, offset, offset + levelSize, rgba(level * 40, 200 - level * 30, 100, 254));
+            offset += levelSize;
+        }
+
+        ByteBuffer compressed = compress(chain, width, height, numMipLevels, BlockCompression.Format.BC7);
+        assertEquals(BlockCompression.getChainSize(BlockCompression.Format.BC7, width, height, 4, numMipLevels), compressed.capacity());
+        // 8 blocks, 2, 1, 1 and 1
+        assertEquals((8 + 2 + 1 + 1 + 1) * 16, compressed.capacity());
+
+        int srcOffset = 0;
+        int dstOffset = 0;
+        for(int level = 0; level < numMipLevels; level++) {
+            int levelWidth = MipChain.getLevelWidth(width, level);
+            int levelHeight = MipChain.getLevelHeight(height, level);
+            int[] levelPixels = new int[levelWidth * levelHeight];
+            System.arraycopy(chain, srcOffset, levelPixels, 0, levelPixels.length);
+
+            int[] decoded = decode(compressed, dstOffset, levelWidth, levelHeight, BlockCompression.Format.BC7);
+            assertEquals("level " + level, 0, maxChannelError(levelPixels, decoded, 4));
+
+            srcOffset += levelPixels.length;
+            dstOffset += BlockCompression.getLevelSize(BlockCompression.Format.BC7, levelWidth, levelHeight, 4);
+        }
+    }
+
+    @Test
+    public void opaqueAtlasesKeepBc1AndTransparentOnesGetBc3() {
+        assertEquals(BlockCompression.Format.BC1, BlockCompression.chooseFormat(BlockCompression.Format.BC1, toBuffer(texture(8, 8, false)), 64));
+        assertEquals(BlockCompression.Format.BC3, BlockCompression.chooseFormat(BlockCompression.Format.BC1, toBuffer(texture(8, 8, true)), 64));
+        assertEquals(BlockCompression.Format.BC7, BlockCompression.chooseFormat(BlockCompression.Format.BC7, toBuffer(texture(8, 8, true)), 64));
+    }
+
+    /**
+     * Something like a block texture: smooth gradients with some noise on top
+     */
+    private static int[] texture(int width, int height, boolean withAlpha) {
+        Random random = new Random(width * 31 + height);
+        int[] pixels = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int r = clamp(40 + x * 160 / width + random.nextInt(17) - 8);
+                int g = clamp(90 + y * 120 / height + random.nextInt(17) - 8);
+                int b = clamp(200 - (x + y) * 80 / (width + height) + random.nextInt(17) - 8);
+                int a = withAlpha ? clamp(255 - x * 200 / width) : 255;
+                pixels[y * width + x] = rgba(r, g, b, a);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * A smooth diagonal gradient whose channels all rise together, the best case for the encoders
+     */
+    private static int[] gradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int value = 30 + 180 * (x + y) / (width + height);
+                pixels[y * width + x] = rgba(value, (value + 60) * 3 / 4, value / 2 + 20, 100 + value / 2);
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] roundTrip(int[] image, int width, int height, BlockCompression.Format format) {
+        return decode(compress(image, width, height, 1, format), 0, width, height, format);
+    }
+
+    private static ByteBuffer compress(int[] pixels, int width, int height, int numMipLevels, BlockCompression.Format format) {
+        return BlockCompression.compress(toBuffer(pixels), width, height, numMipLevels, format);
+    }
+
+    private static ByteBuffer toBuffer(int[] pixels) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(pixels.length * 4);
+        PixelSwizzle.target(buffer).put(pixels);
+        return buffer;
+    }
+
+    private static int[] decode(ByteBuffer compressed, int offset, int width, int height, BlockCompression.Format format) {
+        ByteBuffer data = compressed.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int blockSize = BlockCompression.getLevelSize(format, 4, 4, 4);
+        int blocksWide = (width + 3) / 4;
+        int[] pixels = new int[width * height];
+        int[] block = new int[16];
+
+        for(int blockY = 0; blockY < (height + 3) / 4; blockY++) {
+            for(int blockX = 0; blockX < blocksWide; blockX++) {
+                int blockOffset = offset + (blockY * blocksWide + blockX) * blockSize;
+                switch(format) {
+                    case BC1:
+                        decodeColor(data.getLong(blockOffset), block);
+                        break;
+                    case BC3:
+                        decodeColor(data.getLong(blockOffset + 8), block);
+                        decodeAlpha(data.getLong(blockOffset), block);
+                        break;
+                    case BC7:
+                        decodeBc7Mode6(data.getLong(blockOffset), data.getLong(blockOffset + 8), block);
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+
+                for(int y = 0; y < 4; y++) {
+                    for(int x = 0; x < 4; x++) {
+                        int px = blockX * 4 + x;
+                        int py = blockY * 4 + y;
+                        if(px < width && py < height) {
+                            pixels[py * width + px] = block[y * 4 + x];
+                        }
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static void decodeColor(long bits, int[] block) {
+        int color0 = (int) (bits & 0xFFFF);
+        int color1 = (int) ((bits >>> 16) & 0xFFFF);
+        int[][] palette = new int[4][];
+        palette[0] = expand565(color0);
+        palette[1] = expand565(color1);
+        palette[2] = new int[3];
+        palette[3] = new int[3];
+        for(int c = 0; c < 3; c++) {
+            if(color0 > color1) {
+                palette[2][c] = (2 * palette[0][c] + palette[1][c]) / 3;
+                palette[3][c] = (palette[0][c] + 2 * palette[1][c]) / 3;
+            } else {
+                palette[2][c] = (palette[0][c] + palette[1][c]) / 2;
+                palette[3][c] = 0;
+            }
+        }
+
+        for(int i = 0; i < 16; i++) {
+            int[] color = palette[(int) ((bits >>> (32 + i * 2)) & 3)];
+            block[i] = rgba(color[0], color[1], color[2], 255);
+        }
+    }
+
+    private static int[] expand565(int color) {
+        int r = (color >> 11) & 0x1F;
+        int g = (color >> 5) & 0x3F;
+        int b = color & 0x1F;
+        return new int[]{r << 3 | r >> 2, g << 2 | g >> 4, b << 3 | b >> 2};
+    }
+
+    private static void decodeAlpha(long bits, int[] block) {
+        int alpha0 = (int) (bits & 0xFF);
+        int alpha1 = (int) ((bits >>> 8) & 0xFF);
+        int[] palette = new int[8];
+        palette[0] = alpha0;
+        palette[1] = alpha1;
+        if(alpha0 > alpha1) {
+            for(int i = 2; i < 8; i++) {
+                palette[i] = ((8 - i) * alpha0 + (i - 1) * alpha1) / 7;
+            }
+        } else {
+            for(int i = 2; i < 6; i++) {
+                palette[i] = ((6 - i) * alpha0 + (i - 1) * alpha1) / 5;
+            }
+            palette[6] = 0;
+            palette[7] = 255;
+        }
+
+        for(int i = 0; i < 16; i++) {
+            int alpha = palette[(int) ((bits >>> (16 + i * 3)) & 7)];
+            block[i] = (block[i] & 0x00FFFFFF) | alpha << 24;
+        }
+    }
+
+    private static final int[] BC7_WEIGHTS = {0, 4, 9, 13, 17, 21, 26, 30, 34, 38, 43, 47, 51, 55, 60, 64};
+
+    private static void decodeBc7Mode6(long low, long high, int[] block) {
+        BitReader in = new BitReader(low, high);
+        assertEquals("mode 6", 1 << 6, in.read(7));
+
+        int[] endpoint0 = new int[4];
+        int[] endpoint1 = new int[4];
+        for(int c = 0; c < 4; c++) {
+            endpoint0[c] = in.read(7);
+            endpoint1[c] = in.read(7);
+        }
+        int pBit0 = in.read(1);
+        int pBit1 = in.read(1);
+
+        for(int i = 0; i < 16; i++) {
+            int index = in.read(i == 0 ? 3 : 4);
+            int color = 0;
+            for(int c = 0; c < 4; c++) {
+                int e0 = endpoint0[c] << 1 | pBit0;
+                int e1 = endpoint1[c] << 1 | pBit1;
+                color |= (((64 - BC7_WEIGHTS[index]) * e0 + BC7_WEIGHTS[index] * e1 + 32) >> 6) << (c * 8);
+            }
+            block[i] = color;
+        }
+        assertEquals(128, in.bit);
+    }
+
+    private static class BitReader {
+        final long low;
+        final long high;
+        int bit;
+
+        BitReader(long low, long high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        int read(int count) {
+            int value = 0;
+            for(int i = 0; i < count; i++, bit++) {
+                long word = bit < 64 ? low : high;
+                value |= (int) ((word >>> (bit & 63)) & 1) << i;
+            }
+            return value;
+        }
+    }
+
+    private static double psnr(int[] expected, int[] actual, int channels) {
+        double squaredError = 0;
+        for(int i = 0; i < expected.length; i++) {
+            for(int c = 0; c < channels; c++) {
+                int diff = channel(expected[i], c) - channel(actual[i], c);
+                squaredError += diff * diff;
+            }
+        }
+        double mse = squaredError / (expected.length * channels);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static double alphaPsnr(int[] expected, int[] actual) {
+        double squaredError = 0;
+        for(int i = 0; i < expected.length; i++) {
+            int diff = channel(expected[i], 3) - channel(actual[i], 3);
+            squaredError += diff * diff;
+        }
+        double mse = squaredError / expected.length;
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static int maxChannelError(int[] expected, int[] actual, int channels) {
+        int max = 0;
+        for(int i = 0; i < expected.length; i++) {
+            for(int c = 0; c < channels; c++) {
+                max = Math.max(max, Math.abs(channel(expected[i], c) - channel(actual[i], c)));
+            }
+        }
+        return max;
+    }
+
+    private static int channel(int pixel, int channel) {
+        return (pixel >>> (channel * 8)) & 0xFF;
+    }
+
+    private static int rgba(int r, int g, int b, int a) {
+        return r | g << 8 | b << 16 | a << 24;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,107 @@
+package com.continuum.nova.utils;
+
+import com.continuum.nova.NovaNative;
+import com.sun.jna.Pointer;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkSectionTest {
+    @Test
+    public void oneStateNeedsNoIndices() {
+        ChunkSection section = new ChunkSection();
+        section.pack(blocks(1, 0, 7));
+
+        NovaNative.mc_chunk_section command = section.getCommand();
+        assertEquals(0, command.bits_per_block);
+        assertEquals(1, command.palette_size);
+        assertEquals(8, command.data_size);
+        assertEquals(7, command.data.getInt(0));
+    }
+
+    @Test
+    public void everyBitWidthRoundTrips() {
+        // The smallest and largest palette for each width
+        int[][] paletteSizes = {{2, 2}, {3, 4}, {5, 16}, {17, 256}, {257, ChunkSection.NUM_BLOCKS}};
+        int[] bitWidths = {1, 2, 4, 8, 16};
+
+        ChunkSection section = new ChunkSection();
+        for(int i = 0; i < bitWidths.length; i++) {
+            for(int paletteSize : paletteSizes[i]) {
+                int[] stateIds = blocks(paletteSize, i, 1000);
+                section.pack(stateIds);
+
+                String what = paletteSize + " states";
+                assertEquals(what, bitWidths[i], section.getBitsPerBlock());
+                assertEquals(what, paletteSize, section.getPaletteSize());
+                assertUnpacksTo(what, section.getCommand(), stateIds);
+            }
+        }
+    }
+
+    @Test
+    public void repackingASmallerSectionOverwritesTheOldOne() {
+        ChunkSection section = new ChunkSection();
+        section.pack(blocks(300, 1, 0));
+
+        int[] stateIds = blocks(3, 2, 50);
+        section.pack(stateIds);
+
+        assertEquals(2, section.getBitsPerBlock());
+        assertUnpacksTo("after repacking", section.getCommand(), stateIds);
+    }
+
+    @Test
+    public void packingClearsTheMesh() {
+        ChunkSection section = new ChunkSection();
+        section.pack(blocks(2, 0, 0));
+        section.setVertices(new float[]{1, 2, 3}, 3);
+        assertEquals(3, section.getCommand().vertex_buffer_size);
+
+        section.pack(blocks(2, 0, 0));
+        assertEquals(0, section.getCommand().vertex_buffer_size);
+        assertNull(section.getCommand().vertex_buffer);
+    }
+
+    /**
+     * Makes a section with exactly the given number of distinct states, shuffled so every index position gets used
+     */
+    private static int[] blocks(int numStates, long seed, int firstState) {
+        int[] stateIds = new int[ChunkSection.NUM_BLOCKS];
+        for(int i = 0; i < stateIds.length; i++) {
+            stateIds[i] = firstState + i % numStates;
+        }
+
+        Random random = new Random(seed);
+        for(int i = stateIds.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = stateIds[i];
+            stateIds[i] = stateIds[j];
+            stateIds[j] = swap;
+        }
+        return stateIds;
+    }
+
+    /**
+     * Reads the section back the way the native code does, following the layout in ChunkSection's Javadoc
+     */
+    private static void assertUnpacksTo(String what, NovaNative.mc_chunk_section command, int[] stateIds) {
+        Pointer data = command.data;
+        int bits = command.bits_per_block;
+        int paletteBytes = (command.palette_size * 4 + 7) & ~7;
+        assertEquals(what, paletteBytes + ChunkSection.NUM_BLOCKS * bits / 8, command.data_size);
+
+        int blocksPerWord = 64 / bits;
+        long mask = (1L << bits) - 1;
+        for(int block = 0; block < ChunkSection.NUM_BLOCKS; block++) {
+            long word = data.getLong(paletteBytes + (block / blocksPerWord) * 8L);
+            int index = (int) ((word >>> ((block % blocksPerWord) * bits)) & mask);
+            assertTrue(what + ", block " + block, index < command.palette_size);
+            assertEquals(what + ", block " + block, stateIds[block], data.getInt(index * 4L));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.continuum.nova.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Random;
+
+/**
+ * Times the ways of turning a terrain atlas's sprites (packed ARGB ints, like TextureAtlasSprite frames) into the
+ * direct RGBA buffer the native code reads. Run the main method, it isn't part of the test suite.
+ * <p>
+ * Every variant has to end up with the pixels in a direct buffer, since that's what goes to the native code. The old
+ * byte loop filled a heap array that mc_atlas_texture then copied to native memory, so that copy is part of its time.
+ * The buffers are allocated once up front, so the times are just the conversions and copies.
+ */
+public class PixelSwizzleBenchmark {
+    private static final int ATLAS_SIZE = 4096;
+    private static final int SPRITE_SIZE = 16;
+    private static final int RUNS = 20;
+
+    private static final int SPRITES_PER_ROW = ATLAS_SIZE / SPRITE_SIZE;
+
+    public static void main(String[] args) {
+        int[][] sprites = new int[SPRITES_PER_ROW * SPRITES_PER_ROW][];
+        Random random = new Random(1);
+        for(int i = 0; i < sprites.length; i++) {
+            sprites[i] = new int[SPRITE_SIZE * SPRITE_SIZE];
+            for(int p = 0; p < sprites[i].length; p++) {
+                sprites[i][p] = random.nextInt();
+            }
+        }
+
+        byte[] heapData = new byte[ATLAS_SIZE * ATLAS_SIZE * 4];
+        ByteBuffer expected = ByteBuffer.allocateDirect(heapData.length);
+        ByteBuffer actual = ByteBuffer.allocateDirect(heapData.length);
+
+        byteLoop(sprites, heapData, expected);
+        intWords(sprites, actual, false);
+        check("int words", expected, actual);
+        intWords(sprites, actual, true);
+        check("int words in bands", expected, actual);
+        longWords(sprites, actual);
+        check("long words", expected, actual);
+
+        System.out.println("Converting a " + ATLAS_SIZE + "x" + ATLAS_SIZE + " atlas of " + SPRITE_SIZE + "x" + SPRITE_SIZE
+                + " sprites on " + Runtime.getRuntime().availableProcessors() + " cores, best of " + RUNS);
+        for(int round = 0; round < 3; round++) {
+            time("byte loop and copy", () -> byteLoop(sprites, heapData, actual));
+            time("int words", () -> intWords(sprites, actual, false));
+            time("int words in bands", () -> intWords(sprites, actual, true));
+            time("long words", () -> longWords(sprites, actual));
+        }
+    }
+
+    /**
+     * What getFullImage did before PixelSwizzle, plus the copy to native memory that mc_atlas_texture made of it
+     */
+    private static void byteLoop(int[][] sprites, byte[] imageData, ByteBuffer direct) {
+        for(int s = 0; s < sprites.length; s++) {
+            int startPos = (s % SPRITES_PER_ROW) * SPRITE_SIZE * 4 + (s / SPRITES_PER_ROW) * SPRITE_SIZE * ATLAS_SIZE * 4;
+            int[] data = sprites[s];
+            for(int y = 0; y < SPRITE_SIZE; y++) {
+                for(int x = 0; x < SPRITE_SIZE; x++) {
+                    int pixel = data[y * SPRITE_SIZE + x];
+                    int pos = startPos + x * 4 + y * ATLAS_SIZE * 4;
+                    imageData[pos] = (byte) ((pixel >> 16) & 0xFF);
+                    imageData[pos + 1] = (byte) ((pixel >> 8) & 0xFF);
+                    imageData[pos + 2] = (byte) (pixel & 0xFF);
+                    imageData[pos + 3] = (byte) ((pixel >> 24) & 0xFF);
+                }
+            }
+        }
+
+        direct.clear();
+        direct.put(imageData);
+    }
+
+    /**
+     * What getFullImage does now, with or without splitting the atlas into bands
+     */
+    private static void intWords(int[][] sprites, ByteBuffer imageData, boolean inBands) {
+        PixelSwizzle.RowBand band = (startRow, endRow) -> {
+            IntBuffer target = PixelSwizzle.target(imageData);
+            int[] scratch = new int[ATLAS_SIZE];
+            for(int s = 0; s < sprites.length; s++) {
+                int originX = (s % SPRITES_PER_ROW) * SPRITE_SIZE;
+                int originY = (s / SPRITES_PER_ROW) * SPRITE_SIZE;
+                int firstRow = Math.max(startRow, originY);
+                int lastRow = Math.min(endRow, originY + SPRITE_SIZE);
+                for(int y = firstRow; y < lastRow; y++) {
+                    PixelSwizzle.argbToRgba(sprites[s], (y - originY) * SPRITE_SIZE, target, y * ATLAS_SIZE + originX, SPRITE_SIZE, scratch);
+                }
+            }
+        };
+
+        if(inBands) {
+            PixelSwizzle.forEachRowBand(ATLAS_SIZE, ATLAS_SIZE, band);
+        } else {
+            band.process(0, ATLAS_SIZE);
+        }
+    }
+
+    /**
+     * The same conversion two pixels at a time, through a long view of the buffer
+     */
+    private static void longWords(int[][] sprites, ByteBuffer imageData) {
+        ByteBuffer whole = imageData.duplicate();
+        whole.clear();
+        LongBuffer target = whole.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        long[] scratch = new long[SPRITE_SIZE / 2];
+        for(int s = 0; s < sprites.length; s++) {
+            int originX = (s % SPRITES_PER_ROW) * SPRITE_SIZE;
+            int originY = (s / SPRITES_PER_ROW) * SPRITE_SIZE;
+            int[] data = sprites[s];
+            for(int y = 0; y < SPRITE_SIZE; y++) {
+                for(int i = 0, p = y * SPRITE_SIZE; i < scratch.length; i++, p += 2) {
+                    long pixels = (data[p] & 0xFFFFFFFFL) | (long) data[p + 1] << 32;
+                    scratch[i] = (pixels & 0xFF00FF00FF00FF00L) | ((pixels >>> 16) & 0x000000FF000000FFL) | ((pixels & 0x000000FF000000FFL) << 16);
+                }
+                target.position(((originY + y) * ATLAS_SIZE + originX) / 2);
+                target.put(scratch);
+            }
+        }
+    }
+
+    private static void check(String name, ByteBuffer expected, ByteBuffer actual) {
+        if(!expected.duplicate().clear().equals(actual.duplicate().clear())) {
+            throw new AssertionError(name + " doesn't match the byte loop");
+        }
+    }
+
+    private static void time(String name, Runnable conversion) {
+        long best = Long.MAX_VALUE;
+        for(int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            conversion.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format("%-20s %6.1f ms", name, best / 1e6));
+    }
+}
@@ -0,0 +1,74 @@
+package com.continuum.nova.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+public class PixelSwizzleTest {
+    private static final byte R = 0x11;
+    private static final byte G = 0x22;
+    private static final byte B = 0x33;
+    private static final byte A = 0x44;
+
+    @Test
+    public void argbBecomesRgba() {
+        int[] src = new int[]{0, 0x44112233, 0x44112233};
+        ByteBuffer dst = ByteBuffer.allocateDirect(4 * 4);
+
+        PixelSwizzle.argbToRgba(src, 1, PixelSwizzle.target(dst), 1, 2, new int[1]);
+
+        assertPixel(dst, 0, 0, 0, 0, 0);
+        assertPixel(dst, 1, R, G, B, A);
+        assertPixel(dst, 2, R, G, B, A);
+        assertPixel(dst, 3, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void abgrBecomesRgba() {
+        byte[] src = new byte[]{A, B, G, R, A, B, G, R};
+        ByteBuffer dst = ByteBuffer.allocateDirect(3 * 4);
+
+        PixelSwizzle.abgrToRgba(src, 4, PixelSwizzle.target(dst), 2, 1, new int[4]);
+
+        assertPixel(dst, 1, 0, 0, 0, 0);
+        assertPixel(dst, 2, R, G, B, A);
+    }
+
+    @Test
+    public void bgrBecomesOpaqueRgba() {
+        byte[] src = new byte[]{B, G, R, B, G, R, B, G, R};
+        ByteBuffer dst = ByteBuffer.allocateDirect(3 * 4);
+
+        PixelSwizzle.bgrToRgba(src, 0, PixelSwizzle.target(dst), 0, 3, new int[2]);
+
+        for(int i = 0; i < 3; i++) {
+            assertPixel(dst, i, R, G, B, (byte) 0xFF);
+        }
+    }
+
+    @Test
+    public void rowBandsCoverEveryRowOnce() {
+        for(int height : new int[]{1, 7, 64, 1000, 4097}) {
+            AtomicIntegerArray visits = new AtomicIntegerArray(height);
+            PixelSwizzle.forEachRowBand(4096, height, (startRow, endRow) -> {
+                for(int row = startRow; row < endRow; row++) {
+                    visits.incrementAndGet(row);
+                }
+            });
+
+            for(int row = 0; row < height; row++) {
+                assertEquals("row " + row + " of " + height, 1, visits.get(row));
+            }
+        }
+    }
+
+    private static void assertPixel(ByteBuffer buffer, int pixel, int r, int g, int b, int a) {
+        assertEquals(r, buffer.get(pixel * 4));
+        assertEquals(g, buffer.get(pixel * 4 + 1));
+        assertEquals(b, buffer.get(pixel * 4 + 2));
+        assertEquals(a, buffer.get(pixel * 4 + 3));
+    }
+}